@@ -0,0 +1,60 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Camino de un golpe en el servidor para bench.HitPathBenchmark: parseo de la línea o
+ * trama, validación contra el LiveMonsterIndex y puntuación en el ScoreBoard.
+ */
+public class HitPathTarget implements bench.HitPathBenchmark.Target {
+
+    private final ScoreBoard scoreBoard = new ScoreBoard(1024);
+    // Vida corta para que la rueda se vacíe sola y no crezca durante la medición
+    private final LiveMonsterIndex liveMonsters = new LiveMonsterIndex(10);
+    private final WireProtocol.Frame frame = new WireProtocol.Frame();
+    private final ByteBuffer binaryHit = ByteBuffer.allocate(WireProtocol.FRAME_SIZE);
+    private String legacyHit;
+    private String textHit;
+    private int slot;
+
+    public HitPathTarget() {
+        slot = scoreBoard.register("Player_1");
+        legacyHit = "hit 4 " + System.currentTimeMillis();
+        textHit = WireProtocol.hitText(4, System.currentTimeMillis(), 7, 12345, 0);
+        WireProtocol.encode(binaryHit, WireProtocol.HIT, 12345, 4, 7, 0, System.currentTimeMillis());
+    }
+
+    @Override
+    public long splitParse() {
+        String[] tokens = legacyHit.split(" ");
+        return Integer.parseInt(tokens[1]) + Long.parseLong(tokens[2]);
+    }
+
+    @Override
+    public long textHit() {
+        WireProtocol.parseTextHit(textHit, frame);
+        return scoreBoard.hit(slot) + frame.timestamp;
+    }
+
+    @Override
+    public long binaryHit() {
+        binaryHit.clear();
+        WireProtocol.decode(binaryHit, frame);
+        return scoreBoard.hit(slot) + frame.timestamp;
+    }
+
+    // El monstruo se vuelve a registrar en cada llamada para poder reclamarlo
+    @Override
+    public long validatedHit() {
+        liveMonsters.add(12345, 4, 7, System.nanoTime());
+        binaryHit.clear();
+        WireProtocol.decode(binaryHit, frame);
+        if (!liveMonsters.claim(frame.x, frame.y, frame.monsterId)) return -1;
+        return scoreBoard.hit(slot) + frame.timestamp;
+    }
+
+    @Override
+    public boolean rejectedHit() {
+        binaryHit.clear();
+        WireProtocol.decode(binaryHit, frame);
+        return liveMonsters.claim(frame.x, frame.y, frame.monsterId);
+    }
+}
@@ -0,0 +1,27 @@
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.Session;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mensajes de aparición en texto o en binario, como los codifica el servidor, para
+ * bench.JmsPublishBenchmark. Lo llama un solo hilo: la trama se reutiliza.
+ */
+public class JmsPublishTarget implements bench.JmsPublishBenchmark.Target {
+
+    private final ByteBuffer frame = ByteBuffer.allocate(WireProtocol.FRAME_SIZE);
+
+    @Override
+    public Message spawnMessage(Session session, String encoding, int monsterId) throws JMSException {
+        if ("binary".equals(encoding)) {
+            frame.clear();
+            WireProtocol.encode(frame, WireProtocol.SPAWN, monsterId, 4, 7, 0, System.currentTimeMillis());
+            BytesMessage bytes = session.createBytesMessage();
+            bytes.writeBytes(frame.array(), 0, frame.position());
+            return bytes;
+        }
+        return session.createTextMessage(WireProtocol.spawnText(monsterId, 4, 7, 0, System.currentTimeMillis()));
+    }
+}
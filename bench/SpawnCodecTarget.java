@@ -0,0 +1,60 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Codificación y decodificación de apariciones para bench.SpawnCodecBenchmark, en texto
+ * y en binario, incluida la escritura en el BoardBuffer que hace el listener.
+ */
+public class SpawnCodecTarget implements bench.SpawnCodecBenchmark.Target {
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(WireProtocol.FRAME_SIZE);
+    private final WireProtocol.Frame frame = new WireProtocol.Frame();
+    private final BoardBuffer board = new BoardBuffer(1000);
+    private final String legacySpawn;
+    private final String textSpawn;
+    private int id;
+
+    public SpawnCodecTarget() {
+        legacySpawn = "12345 4 7";
+        textSpawn = WireProtocol.spawnText(12345, 4, 7, 3, System.currentTimeMillis());
+        WireProtocol.encode(buffer, WireProtocol.SPAWN, 12345, 4, 7, 3, System.currentTimeMillis());
+    }
+
+    @Override
+    public String encodeText() {
+        return WireProtocol.spawnText(id++, 4, 7, 3, 1700000000000L);
+    }
+
+    @Override
+    public int encodeBinary() {
+        buffer.clear();
+        WireProtocol.encode(buffer, WireProtocol.SPAWN, id++, 4, 7, 3, 1700000000000L);
+        return buffer.position();
+    }
+
+    @Override
+    public int decodeSplit() {
+        String[] parts = legacySpawn.split(" ");
+        return Integer.parseInt(parts[0]) + Integer.parseInt(parts[1]) + Integer.parseInt(parts[2]);
+    }
+
+    @Override
+    public int decodeText() {
+        WireProtocol.parseTextSpawn(textSpawn, frame);
+        return frame.monsterId + frame.x + frame.y;
+    }
+
+    @Override
+    public int decodeBinary() {
+        buffer.clear();
+        WireProtocol.decode(buffer, frame);
+        return frame.monsterId + frame.x + frame.y;
+    }
+
+    @Override
+    public int decodeIntoBoard() {
+        buffer.clear();
+        WireProtocol.decode(buffer, frame);
+        board.spawn(frame.monsterId, frame.x, frame.y, frame.round);
+        return frame.monsterId;
+    }
+}
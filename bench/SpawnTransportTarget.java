@@ -0,0 +1,100 @@
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Un {@link SpawnTransport} de servidor y el {@link TopicFeed} de un cliente en la misma
+ * JVM, para bench.SpawnTransportBenchmark. Cada operación publica una delta y espera a
+ * que llegue (como mucho {@link #TIMEOUT_NANOS}).
+ */
+public class SpawnTransportTarget implements bench.SpawnTransportBenchmark.Target {
+
+    private static final String TOPIC = "Monsters.bench";
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private JmsPublisher publisher;
+    private SpawnTransport server;
+    private TopicFeed feed;
+    private ServerSocket listener;
+    private Socket serverSide;
+    private Socket clientSide;
+    private volatile int received;
+    private int id;
+    private long seq;
+
+    @Override
+    public void open(String brokerUrl, String transport) throws Exception {
+        publisher = new JmsPublisher(brokerUrl, TOPIC, false);
+        switch (transport) {
+            case SpawnTransport.JMS:
+                server = new JmsSpawnTransport(publisher);
+                break;
+            case SpawnTransport.MULTICAST:
+                server = MulticastSpawnTransport.fromConfig();
+                break;
+            case SpawnTransport.SOCKET:
+                server = new SocketSpawnTransport(4096);
+                break;
+            default:
+                server = new InProcessSpawnTransport();
+        }
+        // El tablero no pide SYNC: las secuencias van seguidas
+        feed = new TopicFeed(brokerUrl, TOPIC, "INFO " + server.infoFields(), new GameBoard(new BoardBuffer(1000), () -> {
+        }), false);
+        feed.add(new TopicFeed.Listener() {
+            @Override
+            public void onSpawn(WireProtocol.Frame spawn, long sentNanos) {
+                received = spawn.monsterId;
+            }
+        });
+        if (server instanceof SocketSpawnTransport) connectSocket();
+    }
+
+    // Un jugador por loopback: el servidor escribe en su PrintWriter y el cliente lee como GameClient.readLoop
+    private void connectSocket() throws Exception {
+        listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        clientSide = new Socket(InetAddress.getLoopbackAddress(), listener.getLocalPort());
+        clientSide.setTcpNoDelay(true);
+        serverSide = listener.accept();
+        serverSide.setTcpNoDelay(true);
+        server.join(TOPIC, serverSide, new PrintWriter(serverSide.getOutputStream(), true)::println, true);
+        FrameReader in = new FrameReader(clientSide.getInputStream());
+        Thread reader = new Thread(() -> {
+            WireProtocol.Frame delta = new WireProtocol.Frame();
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    long deltaSeq = WireProtocol.parseTextDelta(line, delta);
+                    if (deltaSeq >= 0) feed.onDelta(delta, deltaSeq, delta.sentNanos);
+                }
+            } catch (Exception e) {
+                // Socket cerrado en close()
+            }
+        }, "bench-socket-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public int publishToDelivery() {
+        int next = ++id;
+        server.publish(TOPIC, WireProtocol.SPAWN, next, next % 9, (next / 9) % 9, 0, System.currentTimeMillis(), ++seq);
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (received != next && System.nanoTime() - deadline < 0) {
+            Thread.onSpinWait();
+        }
+        return received;
+    }
+
+    @Override
+    public void close() throws Exception {
+        feed.close();
+        server.close();
+        publisher.close();
+        if (clientSide != null) clientSide.close();
+        if (serverSide != null) serverSide.close();
+        if (listener != null) listener.close();
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Puntuación, arbitraje del ganador y reinicio de ronda sobre un ScoreBoard compartido,
+ * para bench.WinnerContentionBenchmark.
+ */
+public class WinnerContentionTarget implements bench.WinnerContentionBenchmark.Target {
+
+    private static final int WIN_CONDITION = 20;
+    private static final int PLAYERS = 1024;
+
+    private final ScoreBoard scoreBoard = new ScoreBoard(PLAYERS);
+    private final AtomicInteger nextPlayer = new AtomicInteger();
+
+    public WinnerContentionTarget() {
+        for (int i = 0; i < PLAYERS; i++) {
+            scoreBoard.register("Player_" + i);
+        }
+    }
+
+    @Override
+    public int nextSlot() {
+        return nextPlayer.getAndIncrement() % PLAYERS;
+    }
+
+    @Override
+    public long hitAndArbitrate(int slot) {
+        long ticket = scoreBoard.hit(slot);
+        if (ticket != ScoreBoard.ROUND_CLOSED && ScoreBoard.scoreOf(ticket) >= WIN_CONDITION) {
+            int round = ScoreBoard.roundOf(ticket);
+            if (scoreBoard.claimWin(round)) {
+                scoreBoard.startNextRound(round);
+            }
+        }
+        return ticket;
+    }
+}
@@ -0,0 +1,68 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Camino de un golpe en el servidor (processHit): parseo de la línea o trama y
+ * puntuación en el ScoreBoard, sin la parte de JMS ni los println. Incluye la
+ * validación contra el LiveMonsterIndex, tanto de un golpe bueno como del rechazo
+ * barato de uno a una celda vacía. El código medido está en HitPathTarget.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HitPathBenchmark {
+
+    /** Lo que se mide; lo implementa HitPathTarget en el paquete por defecto. */
+    public interface Target {
+        long splitParse();
+
+        long textHit();
+
+        long binaryHit();
+
+        long validatedHit();
+
+        boolean rejectedHit();
+    }
+
+    private Target target;
+
+    @Setup
+    public void setUp() {
+        target = Targets.create(Target.class, "HitPathTarget");
+    }
+
+    /** Lo que hacía processHit antes: split + parseLong. Referencia para comparar. */
+    @Benchmark
+    public long splitParse() {
+        return target.splitParse();
+    }
+
+    @Benchmark
+    public long textHit() {
+        return target.textHit();
+    }
+
+    @Benchmark
+    public long binaryHit() {
+        return target.binaryHit();
+    }
+
+    /** Golpe válido: el monstruo se vuelve a registrar en cada iteración para poder reclamarlo. */
+    @Benchmark
+    public long validatedHit() {
+        return target.validatedHit();
+    }
+
+    /** Golpe a una celda vacía: se descarta con la lectura del bitset. */
+    @Benchmark
+    public boolean rejectedHit() {
+        return target.rejectedHit();
+    }
+}
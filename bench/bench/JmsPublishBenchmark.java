@@ -0,0 +1,106 @@
+package bench;
+
+import jakarta.jms.*;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Throughput de publicación de apariciones contra un broker ActiveMQ embebido (vm://),
+ * con un suscriptor consumiendo el tópico como haría un MonsterReceiver. El cuerpo de
+ * cada mensaje lo codifica JmsPublishTarget.
+ *
+ * Con PERSISTENT el broker guarda en KahaDB, en un directorio temporal que se borra al
+ * terminar, y el suscriptor es duradero: ActiveMQ solo escribe en disco los mensajes de
+ * un tópico que tienen suscripciones duraderas. NON_PERSISTENT usa un broker en memoria
+ * y un suscriptor normal, como el juego.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JmsPublishBenchmark {
+
+    /** Crea el mensaje de una aparición; lo implementa JmsPublishTarget en el paquete por defecto. */
+    public interface Target {
+        Message spawnMessage(Session session, String encoding, int monsterId) throws JMSException;
+    }
+
+    @Param({"NON_PERSISTENT", "PERSISTENT"})
+    public String deliveryMode;
+
+    @Param({"text", "binary"})
+    public String encoding;
+
+    private Target target;
+    private BrokerService broker;
+    private Path dataDirectory;
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+    private int id;
+
+    @Setup
+    public void setUp() throws Exception {
+        target = Targets.create(Target.class, "JmsPublishTarget");
+        boolean persistent = "PERSISTENT".equals(deliveryMode);
+        broker = new BrokerService();
+        broker.setBrokerName("bench");
+        broker.setPersistent(persistent);
+        if (persistent) {
+            dataDirectory = Files.createTempDirectory("bench-kahadb");
+            KahaDBPersistenceAdapter kahaDB = new KahaDBPersistenceAdapter();
+            kahaDB.setDirectory(dataDirectory.toFile());
+            broker.setDataDirectoryFile(dataDirectory.toFile());
+            broker.setPersistenceAdapter(kahaDB);
+        }
+        broker.setUseJmx(false);
+        broker.setUseShutdownHook(false);
+        broker.start();
+        broker.waitUntilStarted();
+
+        connection = new ActiveMQConnectionFactory("vm://bench?create=false").createConnection();
+        if (persistent) connection.setClientID("bench");
+        connection.start();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Topic topic = session.createTopic("Monsters");
+        producer = session.createProducer(topic);
+        producer.setDeliveryMode(persistent ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT);
+
+        Session consumerSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = persistent
+                ? consumerSession.createDurableSubscriber(topic, "bench")
+                : consumerSession.createConsumer(topic);
+        consumer.setMessageListener(message -> { });
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connection.close();
+        broker.stop();
+        broker.waitUntilStopped();
+        if (dataDirectory != null) deleteRecursively(dataDirectory);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void publishSpawn() throws JMSException {
+        producer.send(target.spawnMessage(session, encoding, id++));
+    }
+}
@@ -0,0 +1,74 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Codificación de apariciones en el servidor (sendMonster) y su decodificación en
+ * el cliente (TopicFeed, el listener compartido del tópico), en texto y en binario,
+ * incluida la escritura en el BoardBuffer que hace el listener. El código medido está
+ * en SpawnCodecTarget.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SpawnCodecBenchmark {
+
+    /** Lo que se mide; lo implementa SpawnCodecTarget en el paquete por defecto. */
+    public interface Target {
+        String encodeText();
+
+        int encodeBinary();
+
+        int decodeSplit();
+
+        int decodeText();
+
+        int decodeBinary();
+
+        int decodeIntoBoard();
+    }
+
+    private Target target;
+
+    @Setup
+    public void setUp() {
+        target = Targets.create(Target.class, "SpawnCodecTarget");
+    }
+
+    @Benchmark
+    public String encodeText() {
+        return target.encodeText();
+    }
+
+    @Benchmark
+    public int encodeBinary() {
+        return target.encodeBinary();
+    }
+
+    /** Lo que hacía el cliente antes: split + parseInt. */
+    @Benchmark
+    public int decodeSplit() {
+        return target.decodeSplit();
+    }
+
+    @Benchmark
+    public int decodeText() {
+        return target.decodeText();
+    }
+
+    @Benchmark
+    public int decodeBinary() {
+        return target.decodeBinary();
+    }
+
+    /** Camino completo del listener con tramas binarias: decodificar y dejarlo en el tablero. */
+    @Benchmark
+    public int decodeIntoBoard() {
+        return target.decodeIntoBoard();
+    }
+}
@@ -0,0 +1,68 @@
+package bench;
+
+import org.apache.activemq.broker.BrokerService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencia de una aparición desde que el servidor la publica hasta que el TopicFeed del
+ * cliente la reparte, con cada SpawnTransport lado a lado: el tópico JMS (broker embebido
+ * por vm://, como -Dmonsters.broker=embedded), UDP multicast por loopback, las líneas
+ * DELTA por un socket TCP de loopback y la llamada directa dentro de la JVM como suelo.
+ * Cliente y servidor están en el mismo proceso: mide el coste del transporte, no el de
+ * la red. El montaje de cada transporte está en SpawnTransportTarget.
+ *
+ * Cada operación publica una delta y espera a que llegue (como mucho un segundo; una
+ * delta perdida aparece como un valor de ese orden).
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpawnTransportBenchmark {
+
+    /** Servidor y cliente de un transporte; lo implementa SpawnTransportTarget en el paquete por defecto. */
+    public interface Target {
+        void open(String brokerUrl, String transport) throws Exception;
+
+        /** Publica la siguiente delta y espera a que el cliente la reparta; devuelve el último id recibido. */
+        int publishToDelivery();
+
+        void close() throws Exception;
+    }
+
+    @Param({"jms", "multicast", "socket", "inproc"})
+    public String transport;
+
+    private BrokerService broker;
+    private Target target;
+
+    @Setup
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName("bench");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setUseShutdownHook(false);
+        broker.start();
+        broker.waitUntilStarted();
+
+        target = Targets.create(Target.class, "SpawnTransportTarget");
+        target.open("vm://bench?create=false", transport);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        target.close();
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    @Benchmark
+    public int publishToDelivery() {
+        return target.publishToDelivery();
+    }
+}
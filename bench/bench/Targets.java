@@ -0,0 +1,24 @@
+package bench;
+
+/**
+ * Puente hacia el código del juego, que vive en el paquete por defecto: JMH exige que
+ * los benchmarks estén en un paquete con nombre, y desde uno así no se puede importar
+ * nada del paquete por defecto. Cada benchmark declara la interfaz de lo que mide
+ * ({@code Target}) y una clase pública del paquete por defecto en bench/ la implementa;
+ * aquí se instancia por nombre, una vez en el @Setup. Las llamadas van por una interfaz
+ * con una sola implementación cargada, así que el JIT las inlinea como si fueran directas.
+ */
+public final class Targets {
+
+    private Targets() {
+    }
+
+    /** Instancia {@code className} (paquete por defecto, constructor público sin argumentos). */
+    public static <T> T create(Class<T> type, String className) {
+        try {
+            return type.cast(Class.forName(className).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Benchmark target not found: " + className, e);
+        }
+    }
+}
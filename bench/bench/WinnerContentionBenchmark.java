@@ -0,0 +1,63 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puntuación, arbitraje del ganador y reinicio de ronda con 1, 8 y 64 hilos
+ * golpeando el mismo ScoreBoard. El código medido está en WinnerContentionTarget.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WinnerContentionBenchmark {
+
+    /** Un ScoreBoard con sus jugadores ya registrados; lo implementa WinnerContentionTarget. */
+    public interface Target {
+        /** Hueco del siguiente jugador, repartidos en orden entre los hilos. */
+        int nextSlot();
+
+        long hitAndArbitrate(int slot);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Game {
+        Target target;
+
+        @Setup
+        public void setUp() {
+            target = Targets.create(Target.class, "WinnerContentionTarget");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Player {
+        int slot;
+
+        @Setup
+        public void setUp(Game game) {
+            slot = game.target.nextSlot();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long threads1(Game game, Player player) {
+        return game.target.hitAndArbitrate(player.slot);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long threads8(Game game, Player player) {
+        return game.target.hitAndArbitrate(player.slot);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public long threads64(Game game, Player player) {
+        return game.target.hitAndArbitrate(player.slot);
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Control de admisión de los servidores de jugadores, para que una avalancha de
+ * conexiones degrade el servicio en vez de tumbarlo.
+ *
+ * - Backlog de accept configurable (-Dmonsters.accept.backlog, 1024; el de Java es 50).
+ * - Como mucho monsters.admission.handshakes handshakes a la vez (64). El resto espera
+ *   su turno hasta monsters.admission.queueMillis (2000) y, si ya hay
+ *   monsters.admission.maxQueued esperando (1024), se rechaza al momento.
+ * - Un rechazo es una única línea "BUSY RETRY_AFTER=<ms>" en lugar del saludo: el
+ *   cliente sabe cuándo volver, con algo de azar para que no vuelvan todos juntos.
+ * - Cada jugador tiene un cubo de fichas para sus golpes (monsters.hits.rate por
+ *   segundo, ráfagas de monsters.hits.burst); lo que sobra se descarta y se cuenta.
+ * - Se expulsa a quien no termina el handshake en monsters.admission.handshakeTimeoutMillis
+ *   (5000) y a quien pasa monsters.idle.timeoutSeconds sin enviar nada (300; 0 = nunca).
+ *
+ * La comparten todos los hilos de un servidor.
+ */
+public final class AdmissionControl {
+
+    public static final String BUSY = "BUSY";
+    private static final long MIN_RETRY_MILLIS = 100;
+
+    private final int backlog;
+    private final int handshakes;
+    private final int maxQueued;
+    private final long queueNanos;
+    private final int handshakeTimeoutMillis;
+    private final int idleTimeoutMillis;
+    private final double hitRate;
+    private final double hitBurst;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    // Media móvil de la duración de un handshake (ns), para calcular RETRY_AFTER
+    private volatile long handshakeNanos = 10_000_000L;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    public AdmissionControl(int backlog, int handshakes, int maxQueued, long queueMillis, int handshakeTimeoutMillis,
+                            int idleTimeoutMillis, double hitRate, double hitBurst) {
+        this.backlog = backlog;
+        this.handshakes = Math.max(1, handshakes);
+        this.maxQueued = maxQueued;
+        this.queueNanos = TimeUnit.MILLISECONDS.toNanos(queueMillis);
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.hitRate = hitRate;
+        this.hitBurst = Math.max(1, hitBurst);
+        this.permits = new Semaphore(this.handshakes);
+    }
+
+    public static AdmissionControl fromConfig() {
+        return new AdmissionControl(
+                GameConfig.integer("monsters.accept.backlog", 1024),
+                GameConfig.integer("monsters.admission.handshakes", 64),
+                GameConfig.integer("monsters.admission.maxQueued", 1024),
+                GameConfig.integer("monsters.admission.queueMillis", 2000),
+                GameConfig.integer("monsters.admission.handshakeTimeoutMillis", 5000),
+                GameConfig.integer("monsters.idle.timeoutSeconds", 300) * 1000,
+                GameConfig.decimal("monsters.hits.rate", 20),
+                GameConfig.decimal("monsters.hits.burst", 40));
+    }
+
+    public int backlog() {
+        return backlog;
+    }
+
+    public int handshakeTimeoutMillis() {
+        return handshakeTimeoutMillis;
+    }
+
+    /** 0 si no se expulsa a los inactivos. */
+    public int idleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public long queueNanos() {
+        return queueNanos;
+    }
+
+    /**
+     * Hilo por conexión: espera un permiso de handshake. Devuelve false si la cola ya
+     * está llena o se acabó la espera; entonces hay que contestar {@link #busyReply()}.
+     */
+    public boolean awaitHandshake() throws InterruptedException {
+        if (permits.tryAcquire()) return true;
+        if (waiting.incrementAndGet() > maxQueued) {
+            waiting.decrementAndGet();
+            return false;
+        }
+        try {
+            return permits.tryAcquire(queueNanos, TimeUnit.NANOSECONDS);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /** Sin esperar: un permiso si queda alguno (event loops). */
+    public boolean tryHandshake() {
+        return permits.tryAcquire();
+    }
+
+    /** Event loops: apunta una conexión en espera; false si la cola está llena. */
+    public boolean enqueue() {
+        if (waiting.incrementAndGet() > maxQueued) {
+            waiting.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /** Event loops: una conexión sale de la espera (admitida o rechazada). */
+    public void dequeue() {
+        waiting.decrementAndGet();
+    }
+
+    /** Libera el permiso de un handshake que empezó en {@code startNanos}, haya ido bien o no. */
+    public void handshakeDone(long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        handshakeNanos += (elapsed - handshakeNanos) / 16;
+        permits.release();
+    }
+
+    /** Línea de rechazo; la cuenta como conexión rechazada. */
+    public String busyReply() {
+        rejected.increment();
+        // Lo que tardarían en pasar los que ya esperan, repartido entre los permisos
+        long estimate = (waiting.get() + 1L) * handshakeNanos / handshakes / 1_000_000L;
+        long retry = Math.max(MIN_RETRY_MILLIS, estimate);
+        retry += ThreadLocalRandom.current().nextLong(retry / 2 + 1);
+        return BUSY + " RETRY_AFTER=" + retry;
+    }
+
+    /** Cubo de fichas para los golpes de un jugador. */
+    public HitLimiter newHitLimiter() {
+        return new HitLimiter();
+    }
+
+    public void evicted() {
+        evicted.increment();
+    }
+
+    public int waiting() {
+        return waiting.get();
+    }
+
+    public int activeHandshakes() {
+        return handshakes - permits.availablePermits();
+    }
+
+    public long rejectedConnections() {
+        return rejected.sum();
+    }
+
+    public long throttledHits() {
+        return throttled.sum();
+    }
+
+    public long evictedClients() {
+        return evicted.sum();
+    }
+
+    /** Milisegundos de RETRY_AFTER en una línea BUSY, o -1 si no lo es. */
+    public static long retryAfterMillis(String line) {
+        if (line == null || !line.startsWith(BUSY)) return -1;
+        int index = line.indexOf("RETRY_AFTER=");
+        if (index < 0) return MIN_RETRY_MILLIS;
+        try {
+            return Long.parseLong(line.substring(index + "RETRY_AFTER=".length()).trim());
+        } catch (NumberFormatException e) {
+            return MIN_RETRY_MILLIS;
+        }
+    }
+
+    /**
+     * Cubo de fichas de un jugador. Lo usa solo el hilo (o event loop) de su conexión,
+     * así que no necesita sincronización.
+     */
+    public final class HitLimiter {
+        private double tokens = hitBurst;
+        private long lastNanos = System.nanoTime();
+
+        /** Si el golpe entra; si no, queda contado como descartado. */
+        public boolean tryAcquire() {
+            if (hitRate <= 0) return true;
+            long now = System.nanoTime();
+            tokens = Math.min(hitBurst, tokens + (now - lastNanos) * hitRate / 1e9);
+            lastNanos = now;
+            if (tokens >= 1) {
+                tokens--;
+                return true;
+            }
+            throttled.increment();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Estado del tablero del cliente entre el listener JMS y el hilo de pintado (EDT).
+ *
+ * El listener escribe cada aparición en su celda sin bloquearse ni encolar nada en el
+ * EDT: guarda (ronda, id) y el instante en que caduca, y marca la celda en un bitset
+ * de "sucias" (81 bits en dos longs). Un único tick de pintado a ritmo fijo llama a
+ * {@link #drain}, que recoge las celdas sucias de un golpe, pinta solo lo que cambió
+ * y oculta los monstruos caducados. Da igual cuántas apariciones lleguen entre dos
+ * ticks: el EDT hace a lo sumo 81 cambios por frame y no hay un Timer por monstruo.
+ *
+ * Si una celda recibe dos apariciones en el mismo frame se pinta solo la última.
+ * Las fotos del tablero ({@link BoardSnapshot}) entran como apariciones con la vida
+ * que les queda, y las retiradas vacían la celda si sigue siendo el mismo monstruo.
+ */
+public class BoardBuffer {
+
+    public static final int SIZE = 9;
+    public static final int CELLS = SIZE * SIZE;
+    private static final long EMPTY = -1L;
+
+    /** Lo que el tick de pintado hace con cada celda; se llama en el hilo de {@link #drain}. */
+    public interface View {
+        void show(int x, int y, int monsterId, int round);
+
+        void hide(int x, int y);
+    }
+
+    private final long displayNanos;
+    // Escritos por el listener
+    private final AtomicLongArray monsters = new AtomicLongArray(CELLS);
+    private final AtomicLongArray deadlines = new AtomicLongArray(CELLS);
+    private final AtomicLong dirtyLow = new AtomicLong();
+    private final AtomicLong dirtyHigh = new AtomicLong();
+    // Solo del hilo de pintado
+    private final long[] shownUntil = new long[CELLS];
+    private long visibleLow;
+    private long visibleHigh;
+
+    public BoardBuffer(long displayMillis) {
+        this.displayNanos = TimeUnit.MILLISECONDS.toNanos(displayMillis);
+        for (int i = 0; i < CELLS; i++) {
+            monsters.set(i, EMPTY);
+        }
+    }
+
+    /** Nueva aparición; se puede llamar desde cualquier hilo. */
+    public void spawn(int monsterId, int x, int y, int round) {
+        spawn(monsterId, x, y, round, displayNanos);
+    }
+
+    /** Monstruo que ya llevaba tiempo en el tablero: se muestra solo lo que le queda. */
+    public void spawn(int monsterId, int x, int y, int round, long remainingNanos) {
+        if (x < 0 || x >= SIZE || y < 0 || y >= SIZE) return;
+        int cell = x * SIZE + y;
+        deadlines.set(cell, System.nanoTime() + Math.min(displayNanos, remainingNanos));
+        monsters.set(cell, ((long) round << 32) | (monsterId & 0xFFFFFFFFL));
+        // La marca va la última: el siguiente drain verá la celda ya escrita
+        markDirty(cell);
+    }
+
+    /** Quita el monstruo de la celda si sigue ahí ({@code monsterId} negativo: el que sea). */
+    public void remove(int x, int y, int monsterId) {
+        if (x < 0 || x >= SIZE || y < 0 || y >= SIZE) return;
+        int cell = x * SIZE + y;
+        long monster = monsters.get(cell);
+        if (monster == EMPTY || (monsterId >= 0 && (int) monster != monsterId)) return;
+        if (monsters.compareAndSet(cell, monster, EMPTY)) markDirty(cell);
+    }
+
+    /** Si el monstruo sigue en la celda sin caducar ({@code monsterId} negativo: el que sea); desde cualquier hilo. */
+    public boolean isLive(int x, int y, int monsterId, long nowNanos) {
+        if (x < 0 || x >= SIZE || y < 0 || y >= SIZE) return false;
+        int cell = x * SIZE + y;
+        long monster = monsters.get(cell);
+        if (monster == EMPTY || (monsterId >= 0 && (int) monster != monsterId)) return false;
+        return deadlines.get(cell) - nowNanos > 0;
+    }
+
+    /** Vacía el tablero (fin de partida); se puede llamar desde cualquier hilo. */
+    public void clear() {
+        for (int cell = 0; cell < CELLS; cell++) {
+            monsters.set(cell, EMPTY);
+        }
+        dirtyLow.set(-1L);
+        dirtyHigh.set(-1L);
+    }
+
+    /** Aplica los cambios pendientes y las caducidades. Siempre desde el mismo hilo. */
+    public void drain(long nowNanos, View view) {
+        long low = dirtyLow.getAndSet(0);
+        long high = dirtyHigh.getAndSet(0);
+        while (low != 0) {
+            apply(Long.numberOfTrailingZeros(low), nowNanos, view);
+            low &= low - 1;
+        }
+        while (high != 0) {
+            int cell = 64 + Long.numberOfTrailingZeros(high);
+            if (cell < CELLS) apply(cell, nowNanos, view);
+            high &= high - 1;
+        }
+        // Caducidad: como mucho 81 comparaciones por frame
+        long visible = visibleLow;
+        while (visible != 0) {
+            expireIfDue(Long.numberOfTrailingZeros(visible), nowNanos, view);
+            visible &= visible - 1;
+        }
+        visible = visibleHigh;
+        while (visible != 0) {
+            expireIfDue(64 + Long.numberOfTrailingZeros(visible), nowNanos, view);
+            visible &= visible - 1;
+        }
+    }
+
+    private void apply(int cell, long nowNanos, View view) {
+        long monster = monsters.get(cell);
+        long deadline = deadlines.get(cell);
+        if (monster == EMPTY || deadline - nowNanos <= 0) {
+            hide(cell, view);
+            return;
+        }
+        shownUntil[cell] = deadline;
+        setVisible(cell, true);
+        view.show(cell / SIZE, cell % SIZE, (int) monster, (int) (monster >>> 32));
+    }
+
+    private void expireIfDue(int cell, long nowNanos, View view) {
+        if (shownUntil[cell] - nowNanos <= 0) hide(cell, view);
+    }
+
+    private void hide(int cell, View view) {
+        if (!isVisible(cell)) return;
+        setVisible(cell, false);
+        view.hide(cell / SIZE, cell % SIZE);
+    }
+
+    private boolean isVisible(int cell) {
+        return cell < 64 ? (visibleLow & (1L << cell)) != 0 : (visibleHigh & (1L << (cell - 64))) != 0;
+    }
+
+    private void setVisible(int cell, boolean visible) {
+        long bit = 1L << (cell & 63);
+        if (cell < 64) {
+            visibleLow = visible ? visibleLow | bit : visibleLow & ~bit;
+        } else {
+            visibleHigh = visible ? visibleHigh | bit : visibleHigh & ~bit;
+        }
+    }
+
+    private void markDirty(int cell) {
+        (cell < 64 ? dirtyLow : dirtyHigh).accumulateAndGet(1L << (cell & 63), (bits, bit) -> bits | bit);
+    }
+}
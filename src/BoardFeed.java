@@ -0,0 +1,70 @@
+/**
+ * Deltas numerados del tablero de un tópico: cada aparición y cada monstruo que se
+ * lleva un jugador se publica con el siguiente número de secuencia, y
+ * {@link #snapshot(int)} da la foto del tablero con el último número publicado.
+ *
+ * El cliente aplica la foto al entrar y después las deltas; si ve un salto en la
+ * secuencia (mensaje perdido o descartado con la cola llena) pide SYNC y recibe otra
+ * foto. Las caducidades no se publican: cada cliente las calcula con la vida que
+ * quedaba en la foto o con la de la aparición.
+ *
+ * Las deltas salen por el {@link SpawnTransport} del servidor (el tópico JMS por
+ * defecto). Numerar y publicar van bajo el mismo lock, así el transporte recibe las
+ * deltas en orden. Solo lo toman las apariciones y los golpes que aciertan; la foto no lo
+ * necesita: lee la secuencia antes que el tablero, de modo que el tablero es como
+ * mínimo igual de reciente, y las deltas se pueden aplicar dos veces sin efecto.
+ *
+ * Las retiradas solo se publican si el transporte las admite
+ * ({@link SpawnTransport#carriesClears()}): con el tópico JMS en texto los clientes
+ * viejos fallarían con ellas, y sus monstruos desaparecen al caducar.
+ *
+ * En un clúster solo el coordinador de la sala publica, así que en el resto de nodos
+ * la secuencia se queda en 0 y sus fotos no se comparan con las deltas. Los golpes que
+ * aciertan en otros nodos le llegan como CLEARED por el tópico de control
+ * ({@link ClusterNode}) y los publica él.
+ */
+public class BoardFeed {
+
+    private final SpawnTransport transport;
+    private final String topic;
+    private final LiveMonsterIndex monsters;
+    // -Dmonsters.board.clears=false, o un transporte que no las admite: solo apariciones
+    private final boolean publishClears;
+    private volatile long seq;
+
+    public BoardFeed(SpawnTransport transport, String topic, LiveMonsterIndex monsters) {
+        this.transport = transport;
+        this.topic = topic;
+        this.monsters = monsters;
+        this.publishClears = GameConfig.flag("monsters.board.clears", true) && transport.carriesClears();
+    }
+
+    /** Si se publican las retiradas. */
+    public boolean publishesClears() {
+        return publishClears;
+    }
+
+    /** Publica una aparición ya añadida al índice. */
+    public synchronized void spawned(int id, int x, int y, int round, long timestamp) {
+        long next = seq + 1;
+        seq = next;
+        transport.publish(topic, WireProtocol.SPAWN, id, x, y, round, timestamp, next);
+    }
+
+    /** Publica que un jugador se llevó el monstruo ({@link LiveMonsterIndex#claim} ya devolvió true). */
+    public synchronized void cleared(int id, int x, int y, int round) {
+        if (!publishClears) return;
+        long next = seq + 1;
+        seq = next;
+        transport.publish(topic, WireProtocol.CLEAR, id, x, y, round, 0, next);
+    }
+
+    /** Línea "BOARD ..." para el handshake o la respuesta a SYNC; desde cualquier hilo. */
+    public String snapshot(int round) {
+        return BoardSnapshot.line(seq, round, monsters, System.nanoTime());
+    }
+
+    public long seq() {
+        return seq;
+    }
+}
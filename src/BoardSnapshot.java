@@ -0,0 +1,87 @@
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Foto compacta del tablero autoritativo de una sala: la que recibe un jugador al
+ * entrar y cada vez que pide SYNC tras perder deltas.
+ *
+ * Va en una sola línea de texto, "BOARD <base64>", para que sirva igual en el
+ * handshake de texto y en conexiones binarias. Contenido (big-endian):
+ *   seq (8)       última delta publicada antes de la foto (0: desconocida)
+ *   ronda (4)
+ *   ocupación (16) las 81 celdas en dos longs, como {@link LiveMonsterIndex}
+ *   por cada celda ocupada, en orden: id (4), ms de vida que le quedan (2)
+ * Con el tablero vacío son 28 bytes; lleno, 514.
+ */
+public final class BoardSnapshot {
+
+    public static final String PREFIX = "BOARD ";
+    private static final int HEADER = 8 + 4 + 8 + 8;
+    private static final int PER_CELL = 4 + 2;
+
+    public final long seq;
+    public final int round;
+    private final long low;
+    private final long high;
+    private final int[] ids = new int[LiveMonsterIndex.CELLS];
+    private final int[] remainingMillis = new int[LiveMonsterIndex.CELLS];
+
+    private BoardSnapshot(long seq, int round, long low, long high) {
+        this.seq = seq;
+        this.round = round;
+        this.low = low;
+        this.high = high;
+    }
+
+    /** Línea "BOARD ..." con el estado actual de {@code monsters}; se puede llamar desde cualquier hilo. */
+    public static String line(long seq, int round, LiveMonsterIndex monsters, long nowNanos) {
+        long low = monsters.occupiedLow();
+        long high = monsters.occupiedHigh();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + PER_CELL * (Long.bitCount(low) + Long.bitCount(high)));
+        buffer.putLong(seq).putInt(round).putLong(low).putLong(high);
+        for (int cell = 0; cell < LiveMonsterIndex.CELLS; cell++) {
+            if (!isSet(low, high, cell)) continue;
+            long remaining = Math.max(0, (monsters.deadlineAt(cell) - nowNanos) / 1_000_000L);
+            buffer.putInt(monsters.idAt(cell)).putShort((short) Math.min(0xFFFF, remaining));
+        }
+        return PREFIX + Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    /** Lee una línea "BOARD ..."; null si no lo es o está mal formada. */
+    public static BoardSnapshot parse(String line) {
+        if (line == null || !line.startsWith(PREFIX)) return null;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(line.substring(PREFIX.length()).trim()));
+            BoardSnapshot snapshot = new BoardSnapshot(buffer.getLong(), buffer.getInt(), buffer.getLong(),
+                    buffer.getLong());
+            for (int cell = 0; cell < LiveMonsterIndex.CELLS; cell++) {
+                if (!snapshot.isLive(cell)) continue;
+                snapshot.ids[cell] = buffer.getInt();
+                snapshot.remainingMillis[cell] = buffer.getShort() & 0xFFFF;
+            }
+            return snapshot;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    public boolean isLive(int cell) {
+        return isSet(low, high, cell);
+    }
+
+    public int id(int cell) {
+        return ids[cell];
+    }
+
+    public int remainingMillis(int cell) {
+        return remainingMillis[cell];
+    }
+
+    public int liveCount() {
+        return Long.bitCount(low) + Long.bitCount(high);
+    }
+
+    private static boolean isSet(long low, long high, int cell) {
+        return cell < 64 ? (low & (1L << cell)) != 0 : (high & (1L << (cell - 64))) != 0;
+    }
+}
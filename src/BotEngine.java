@@ -0,0 +1,317 @@
+import jakarta.jms.JMSException;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Miles de jugadores sin interfaz en un solo proceso, que juegan como jugaría
+ * {@link MonsterReceiver}: cada bot hace su handshake con {@link GameClient}, tiene su
+ * propio socket para los golpes y mira el tablero antes de golpear.
+ *
+ * Lo que no se multiplica por bot es el tópico: los bots de un mismo tópico comparten
+ * una única suscripción JMS ({@link TopicFeed}) y un único {@link GameBoard}. Cada
+ * aparición se decodifica una vez y se reparte dentro del proceso; cada bot decide si
+ * va a por ella (-Dmonsters.load.attention) y, tras su tiempo de reacción (la
+ * distribución del escenario), golpea si el monstruo sigue vivo. Si otro jugador se lo
+ * llevó antes, la retirada ya lo quitó del tablero y el bot no golpea: la carga se
+ * parece a la de jugadores reales, no a un ritmo fijo de golpes como en
+ * {@link StressReceiver}. Con TRANSPORT=socket cada bot recibe las deltas por su socket y
+ * las pasa al feed del tópico, que aplica y reparte solo la primera copia.
+ *
+ * Los bots llegan según el horario del {@link LoadScenario} (clients, arrivalRate,
+ * ramp...), con la misma corrección de coordinated omission: el registro se mide
+ * desde la hora prevista y cada golpe lleva la suya. Con -Dmonsters.load.rooms=n se
+ * reparten entre las salas bots-0 ... bots-(n-1) de MonsterSender.
+ *
+ * Uso: java BotEngine [escenario.properties]
+ */
+public class BotEngine {
+
+    private static final long REPORT_PERIOD_SECONDS = 5;
+    private static final long CLOCK_PERIOD_SECONDS = 10;
+    private static final int MAX_BUSY_RETRIES = 5;
+    // Lo que dura un monstruo en el tablero de los bots, como en la ventana del cliente
+    private static final int DISPLAY_MILLIS = 1000;
+
+    private final LoadScenario scenario;
+    // Un hilo virtual por bot, que lee su socket
+    private final ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, Group> groups = new ConcurrentHashMap<>();
+    // Crear un grupo conecta con el broker: ReentrantLock para no fijar el hilo virtual que entra
+    private final ReentrantLock groupsLock = new ReentrantLock();
+    private final Set<GameClient> clients = ConcurrentHashMap.newKeySet();
+
+    // Métricas (µs)
+    private final LatencyRecorder registration = new LatencyRecorder("registration");
+    private final LatencyRecorder spawnDelivery = new LatencyRecorder("spawnDelivery");
+    private final LatencyRecorder hitLag = new LatencyRecorder("hitLag");
+    private final LatencyRecorder clockRtt = new LatencyRecorder("clockRtt");
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicInteger joined = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final LongAdder busyReplies = new LongAdder();
+    private final LongAdder spawnsSeen = new LongAdder();
+    private final LongAdder hitsSent = new LongAdder();
+    // Golpes que el bot no llegó a dar porque el monstruo ya no estaba
+    private final LongAdder hitsSkipped = new LongAdder();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean running = true;
+    private long startNanos;
+
+    public BotEngine(LoadScenario scenario) {
+        this.scenario = scenario;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadScenario scenario = LoadScenario.load(args.length > 0 ? args[0] : null);
+        new BotEngine(scenario).run();
+    }
+
+    public void run() throws InterruptedException {
+        System.out.println("Bots: " + scenario);
+        startNanos = System.nanoTime();
+        timers.scheduleAtFixedRate(this::printProgress, REPORT_PERIOD_SECONDS, REPORT_PERIOD_SECONDS, TimeUnit.SECONDS);
+        timers.schedule(finished::countDown, scenario.durationSeconds, TimeUnit.SECONDS);
+
+        for (int i = 0; i < scenario.clients && running; i++) {
+            long intended = startNanos + scenario.arrivalOffsetNanos(i);
+            long wait = intended - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            int botId = i;
+            readers.execute(() -> play(botId, intended));
+        }
+        finished.await();
+        stop();
+    }
+
+    // Hilo del bot: handshake, alta en el tópico y lectura del socket hasta que se cierre
+    private void play(int botId, long intendedNanos) {
+        String name = "Bot_" + botId;
+        String nameLine = scenario.rooms > 0 ? name + " ROOM=bots-" + (botId % scenario.rooms) : name;
+        GameClient client;
+        try {
+            client = GameClient.connect(scenario.host, scenario.port, nameLine, scenario.protocol, MAX_BUSY_RETRIES);
+        } catch (IOException e) {
+            if (running) failed.incrementAndGet();
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        registration.recordSince(intendedNanos);
+        busyReplies.add(client.busyReplies());
+        Group group;
+        try {
+            group = group(client);
+        } catch (JMSException | IOException e) {
+            e.printStackTrace();
+            failed.incrementAndGet();
+            client.close();
+            return;
+        }
+        Bot bot = new Bot(client, group);
+        clients.add(client);
+        group.join(bot);
+        joined.incrementAndGet();
+        connected.incrementAndGet();
+        ScheduledFuture<?> pings = null;
+        if (client.clock() != null) {
+            long periodMillis = TimeUnit.SECONDS.toMillis(CLOCK_PERIOD_SECONDS);
+            long firstMillis = ThreadLocalRandom.current().nextLong(periodMillis) + periodMillis;
+            pings = timers.scheduleAtFixedRate(() -> readers.execute(client::ping), firstMillis, periodMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        client.readLoop(bot);
+        if (pings != null) pings.cancel(false);
+        clients.remove(client);
+        connected.decrementAndGet();
+    }
+
+    private Group group(GameClient client) throws JMSException, IOException {
+        Group group = groups.get(client.topic());
+        if (group != null) return group;
+        groupsLock.lock();
+        try {
+            group = groups.get(client.topic());
+            if (group == null) {
+                group = new Group(client.brokerUrl(), client.topic(), client.info());
+                groups.put(client.topic(), group);
+            }
+            return group;
+        } finally {
+            groupsLock.unlock();
+        }
+    }
+
+    /** Bots de un tópico: una suscripción, un tablero y las decisiones de sus bots. */
+    private final class Group {
+        final String topic;
+        final TopicFeed feed;
+        // Solo desde el hilo del listener del tópico; con la misma semilla, las mismas decisiones
+        final Random random;
+        // Socket por el que se pide SYNC: el del último bot que entró
+        private volatile GameClient syncClient;
+        // Desfase del bot de menor rtt del tópico
+        private long bestRttNanos = Long.MAX_VALUE;
+        private volatile long offsetNanos;
+        private volatile boolean synced;
+
+        Group(String brokerUrl, String topic, String info) throws JMSException, IOException {
+            this.topic = topic;
+            this.random = new Random(scenario.seed ^ ConsistentHashRing.hash(topic));
+            this.feed = new TopicFeed(brokerUrl, topic, info,
+                    new GameBoard(new BoardBuffer(DISPLAY_MILLIS), this::requestSync), false);
+            feed.add(new TopicFeed.Listener() {
+                @Override
+                public void onSpawn(WireProtocol.Frame spawn, long sentNanos) {
+                    spawnsSeen.increment();
+                    if (synced && sentNanos != 0) {
+                        long delivery = GameClock.nowNanos() + offsetNanos - sentNanos;
+                        spawnDelivery.record(Math.max(0, TimeUnit.NANOSECONDS.toMicros(delivery)));
+                    }
+                }
+
+                @Override
+                public void onWinner(String player) {
+                    if (player != null) System.out.println("[" + topic + "] Game over! WINNER " + player);
+                    if (scenario.stopOnWinner) finished.countDown();
+                }
+            });
+            System.out.println("Subscribed to " + topic + " on " + brokerUrl + " (deltas: "
+                    + SpawnTransport.name(info) + ")");
+        }
+
+        void join(Bot bot) {
+            syncClient = bot.client;
+            feed.add(bot);
+        }
+
+        // Lo llama el tablero desde el hilo que entrega las deltas y con su lock: el SYNC se escribe en otro hilo
+        private void requestSync() {
+            GameClient client = syncClient;
+            if (client == null) return;
+            try {
+                readers.execute(client::requestSync);
+            } catch (RejectedExecutionException e) {
+                // Parando: ya no hace falta la foto
+            }
+        }
+
+        synchronized void clockSample(long offset, long rtt) {
+            if (rtt > bestRttNanos) return;
+            bestRttNanos = rtt;
+            offsetNanos = offset;
+            synced = true;
+        }
+    }
+
+    /** Un jugador: su socket para golpear y su reacción a las apariciones del tópico. */
+    private final class Bot implements TopicFeed.Listener, GameClient.Listener {
+        final GameClient client;
+        final Group group;
+
+        Bot(GameClient client, Group group) {
+            this.client = client;
+            this.group = group;
+        }
+
+        // Hilo del listener del tópico: decide y programa el golpe; la escritura va en un hilo de readers
+        @Override
+        public void onSpawn(WireProtocol.Frame spawn, long sentNanos) {
+            if (!running || client.isClosed()) return;
+            Random random = group.random;
+            if (scenario.attention < 1 && random.nextDouble() >= scenario.attention) return;
+            double reactionMillis = scenario.reaction.sampleMillis(random);
+            long now = System.nanoTime();
+            long intended = now + (long) (reactionMillis * 1e6);
+            long intendedClock = GameClock.nowNanos() + (long) (reactionMillis * 1e6);
+            int x = spawn.x;
+            int y = spawn.y;
+            int id = spawn.monsterId;
+            int round = spawn.round;
+            boolean miss = random.nextDouble() < scenario.missRatio;
+            int hitY = miss ? (y + 1 + random.nextInt(8)) % 9 : y;
+            timers.schedule(() -> readers.execute(() -> hit(x, y, hitY, id, round, miss, intended, intendedClock)),
+                    intended - now, TimeUnit.NANOSECONDS);
+        }
+
+        private void hit(int x, int y, int hitY, int id, int round, boolean miss, long intended, long intendedClock) {
+            if (!running) return;
+            // Un jugador de verdad no golpea un monstruo que ya no ve (salvo que falle la celda)
+            if (!miss && !group.feed.board().isLive(x, y, id)) {
+                hitsSkipped.increment();
+                return;
+            }
+            if (client.hit(x, hitY, id, round, intendedClock)) {
+                hitLag.recordSince(intended);
+                hitsSent.increment();
+            }
+        }
+
+        // El fin de ronda lo anuncia el tópico una vez para todos (ver Group)
+        @Override
+        public void onWinner(String player) {
+        }
+
+        @Override
+        public void onSnapshot(BoardSnapshot snapshot) {
+            group.feed.board().applySnapshot(snapshot);
+        }
+
+        @Override
+        public void onDelta(WireProtocol.Frame delta, long seq, long sentNanos) {
+            group.feed.onDelta(delta, seq, sentNanos);
+        }
+
+        @Override
+        public void onClock(GameClock.Sync clock, long rttNanos) {
+            clockRtt.record(TimeUnit.NANOSECONDS.toMicros(rttNanos));
+            group.clockSample(clock.offsetNanos(), clock.rttNanos());
+        }
+    }
+
+    private void stop() {
+        running = false;
+        timers.shutdownNow();
+        for (Group group : groups.values()) {
+            group.feed.close();
+        }
+        for (GameClient client : clients) {
+            client.close();
+        }
+        readers.shutdownNow();
+        printReport();
+    }
+
+    private void printProgress() {
+        double elapsed = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("[%5.1f s] bots=%d failed=%d busy=%d topics=%d spawns=%d hits=%d (%.1f/s) skipped=%d%n",
+                elapsed, connected.get(), failed.get(), busyReplies.sum(), groups.size(), spawnsSeen.sum(),
+                hitsSent.sum(), hitsSent.sum() / elapsed, hitsSkipped.sum());
+    }
+
+    private void printReport() {
+        double elapsed = (System.nanoTime() - startNanos) / 1e9;
+        System.out.println("=== Bot report (latencies corrected for coordinated omission) ===");
+        System.out.printf("Duration: %.1f s, bots joined: %d, failed: %d, BUSY replies retried: %d%n", elapsed,
+                joined.get(), failed.get(), busyReplies.sum());
+        System.out.printf("Spawns seen: %d on %d topics, hits sent: %d (%.1f/s), skipped (monster gone): %d%n",
+                spawnsSeen.sum(), groups.size(), hitsSent.sum(), hitsSent.sum() / elapsed, hitsSkipped.sum());
+        long lost = 0;
+        for (Group group : groups.values()) {
+            lost += group.feed.lostDeltas();
+        }
+        if (lost > 0) System.out.println("Deltas lost in transport: " + lost);
+        StressReceiver.printPercentiles(registration);
+        StressReceiver.printPercentiles(spawnDelivery);
+        StressReceiver.printPercentiles(hitLag);
+        StressReceiver.printPercentiles(clockRtt);
+    }
+}
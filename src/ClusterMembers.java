@@ -0,0 +1,69 @@
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Nodos del clúster y reparto de jugadores y salas entre ellos.
+ *
+ * Se configura con -Dmonsters.cluster=n1=localhost:50001,n2=localhost:50002 (id=host:puerto
+ * TCP de jugadores de cada nodo). Todos los nodos y el front end de registro deben usar
+ * la misma lista para que el anillo sea el mismo en todos.
+ *
+ * Un jugador pertenece al nodo que el anillo da para su nombre; una sala la coordina
+ * (lanza sus monstruos y decide su ganador) el nodo que da para "room:<id>".
+ */
+public class ClusterMembers {
+
+    private final Map<String, InetSocketAddress> nodes;
+    private final ConsistentHashRing ring;
+
+    public ClusterMembers(Map<String, InetSocketAddress> nodes, int virtualNodes) {
+        this.nodes = nodes;
+        this.ring = new ConsistentHashRing(nodes.keySet(), virtualNodes);
+    }
+
+    /** Lee monsters.cluster; devuelve null si no está configurado (un solo nodo). */
+    public static ClusterMembers fromConfig() {
+        String spec = GameConfig.string("monsters.cluster", null);
+        if (spec == null) return null;
+        Map<String, InetSocketAddress> nodes = new LinkedHashMap<>();
+        for (String entry : spec.split(",")) {
+            String[] idAndAddress = entry.trim().split("=");
+            int colon = idAndAddress.length == 2 ? idAndAddress[1].lastIndexOf(':') : -1;
+            if (colon < 0) {
+                throw new IllegalArgumentException("Nodo inválido en monsters.cluster: " + entry);
+            }
+            String host = idAndAddress[1].substring(0, colon);
+            int port = Integer.parseInt(idAndAddress[1].substring(colon + 1));
+            nodes.put(idAndAddress[0], InetSocketAddress.createUnresolved(host, port));
+        }
+        return new ClusterMembers(nodes, GameConfig.integer("monsters.cluster.vnodes", 128));
+    }
+
+    public Set<String> nodeIds() {
+        return nodes.keySet();
+    }
+
+    public boolean contains(String nodeId) {
+        return nodes.containsKey(nodeId);
+    }
+
+    public InetSocketAddress address(String nodeId) {
+        return nodes.get(nodeId);
+    }
+
+    public String ownerOf(String playerName) {
+        return ring.nodeFor(playerName);
+    }
+
+    public String coordinatorOf(String roomId) {
+        return ring.nodeFor("room:" + roomId);
+    }
+
+    /** Línea del handshake que manda al jugador al nodo dado. */
+    public String redirectTo(String nodeId) {
+        InetSocketAddress address = nodes.get(nodeId);
+        return "REDIRECT " + address.getHostString() + " " + address.getPort();
+    }
+}
@@ -0,0 +1,178 @@
+import jakarta.jms.*;
+import org.apache.activemq.ActiveMQConnectionFactory;
+
+/**
+ * Este proceso como nodo del clúster: decide qué jugadores atiende y coordina las
+ * rondas con los demás nodos por el tópico de control ({@code Monsters.control}).
+ *
+ * Cada jugador tiene su puntaje en un único nodo (el dueño de su nombre), así que los
+ * golpes nunca salen del nodo. Solo cruza la red lo que decide la ronda de una sala,
+ * y lo arbitra el nodo coordinador de esa sala:
+ *
+ *   CLAIM <sala> <ronda> <nodo> <jugador>   un jugador de <nodo> llegó a la meta
+ *   WINNER <sala> <ronda> <jugador>         el coordinador aceptó el primer CLAIM de la ronda
+ *   ROUND <sala> <ronda> <semilla>          ronda abierta y semilla de apariciones del coordinador
+ *   SEED <sala> <nodo>                      un nodo pide el ROUND de la sala (aún no tiene la semilla)
+ *   CLEARED <sala> <id> <x> <y>             un jugador de otro nodo se llevó el monstruo
+ *   OPEN <sala> <nodo> / CLOSE <sala> <nodo> un nodo abre o cierra su copia de la sala
+ *
+ * El coordinador cierra la ronda con el mismo CAS del marcador que en un solo nodo,
+ * así que hay exactamente un ganador por ronda en todo el clúster. Solo él lanza los
+ * monstruos de la sala y publica el WINNER y las retiradas en su tópico; los demás nodos
+ * cierran su ronda local al reclamar y abren la siguiente al recibir WINNER o ROUND, y le
+ * mandan CLEARED por cada monstruo que se llevan sus jugadores.
+ */
+public class ClusterNode implements AutoCloseable {
+
+    private final String selfId;
+    private final ClusterMembers members;
+    private final JmsPublisher publisher;
+    private final String controlTopic;
+    private RoomManager rooms;
+    private Connection connection;
+
+    public ClusterNode(String selfId, ClusterMembers members, JmsPublisher publisher, String controlTopic) {
+        if (!members.contains(selfId)) {
+            throw new IllegalArgumentException("monsters.node.id=" + selfId + " no está en monsters.cluster "
+                    + members.nodeIds());
+        }
+        this.selfId = selfId;
+        this.members = members;
+        this.publisher = publisher;
+        this.controlTopic = controlTopic;
+    }
+
+    /** Se suscribe al tópico de control; las salas se buscan en {@code rooms}. */
+    public void start(String brokerUrl, RoomManager rooms) throws JMSException {
+        this.rooms = rooms;
+        connection = new ActiveMQConnectionFactory(brokerUrl).createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(session.createTopic(controlTopic));
+        consumer.setMessageListener(message -> {
+            try {
+                if (message instanceof TextMessage) onControl(((TextMessage) message).getText());
+            } catch (JMSException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        });
+        connection.start();
+        System.out.println("Cluster node " + selfId + " of " + members.nodeIds() + " on " + controlTopic);
+    }
+
+    public String selfId() {
+        return selfId;
+    }
+
+    /** Puerto TCP de jugadores de este nodo. */
+    public int port() {
+        return members.address(selfId).getPort();
+    }
+
+    /** Línea REDIRECT si el jugador pertenece a otro nodo, o null si es de este. */
+    public String redirectFor(String playerName) {
+        String owner = members.ownerOf(playerName);
+        return owner.equals(selfId) ? null : members.redirectTo(owner);
+    }
+
+    public boolean coordinates(String roomId) {
+        return members.coordinatorOf(roomId).equals(selfId);
+    }
+
+    void claim(Room room, int round, String player) {
+        publisher.publishText(controlTopic, "CLAIM " + room.id() + " " + round + " " + selfId + " " + player, null);
+    }
+
+    void cleared(Room room, int monsterId, int x, int y) {
+        publisher.publishText(controlTopic, "CLEARED " + room.id() + " " + monsterId + " " + x + " " + y, null);
+    }
+
+    void announceWinner(Room room, int round, String player) {
+        publisher.publishText(controlTopic, "WINNER " + room.id() + " " + round + " " + player, null);
+    }
+
+    void announceRound(Room room) {
+        publisher.publishText(controlTopic, "ROUND " + room.id() + " " + room.round() + " " + room.spawnSeed(), null);
+    }
+
+    void requestSeed(Room room) {
+        publisher.publishText(controlTopic, "SEED " + room.id() + " " + selfId, null);
+    }
+
+    void roomOpened(Room room) {
+        publisher.publishText(controlTopic, "OPEN " + room.id() + " " + selfId, null);
+    }
+
+    void roomClosed(Room room) {
+        publisher.publishText(controlTopic, "CLOSE " + room.id() + " " + selfId, null);
+    }
+
+    // Hilo del listener JMS: lo que toca el marcador se pasa al loop de la sala
+    private void onControl(String text) {
+        String[] parts = text.split(" ", 5);
+        String roomId = parts[1];
+        switch (parts[0]) {
+            case "CLAIM": {
+                if (!coordinates(roomId)) return;
+                Room room = rooms.find(roomId);
+                if (room == null) return;
+                int round = Integer.parseInt(parts[2]);
+                String player = parts[4];
+                room.loop().execute(() -> room.decideClaim(round, player));
+                break;
+            }
+            case "CLEARED": {
+                if (!coordinates(roomId)) return;
+                Room room = rooms.find(roomId);
+                if (room == null) return;
+                int monsterId = Integer.parseInt(parts[2]);
+                int x = Integer.parseInt(parts[3]);
+                int y = Integer.parseInt(parts[4]);
+                room.loop().execute(() -> room.clearedRemotely(monsterId, x, y));
+                break;
+            }
+            case "WINNER":
+            case "ROUND": {
+                if (coordinates(roomId)) return;
+                Room room = rooms.find(roomId);
+                if (room == null) return;
+                int round = Integer.parseInt(parts[2]);
+                if (parts[0].equals("ROUND") && parts.length > 3) {
+                    long seed = Long.parseLong(parts[3]);
+                    room.loop().execute(() -> room.useSeed(seed));
+                }
+                // Tras un WINNER de la ronda r se juega la r + 1
+                int next = parts[0].equals("WINNER") ? round + 1 : round;
+                room.loop().execute(() -> room.syncRound(next));
+                break;
+            }
+            case "SEED":
+                if (coordinates(roomId)) {
+                    Room room = rooms.find(roomId);
+                    if (room != null) announceRound(room);
+                }
+                break;
+            case "OPEN":
+                if (coordinates(roomId) && !parts[2].equals(selfId)) {
+                    Room room = rooms.holdForNode(roomId, parts[2]);
+                    if (room != null) announceRound(room);
+                }
+                break;
+            case "CLOSE":
+                if (coordinates(roomId) && !parts[2].equals(selfId)) {
+                    rooms.releaseForNode(roomId, parts[2]);
+                }
+                break;
+            default:
+                System.out.println("Mensaje de control desconocido: " + text);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (connection != null) connection.close();
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Anillo de hash consistente con nodos virtuales.
+ *
+ * Cada nodo ocupa {@code virtualNodes} puntos del anillo y una clave pertenece al
+ * primer punto a partir de su hash. Al añadir o quitar un nodo solo cambian de dueño
+ * las claves de sus puntos (~1/N), y con suficientes nodos virtuales el reparto
+ * queda parejo aunque haya pocos nodos reales.
+ */
+public class ConsistentHashRing {
+
+    private final TreeMap<Long, String> points = new TreeMap<>();
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) throw new IllegalArgumentException("El anillo necesita al menos un nodo");
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /** Nodo dueño de la clave. */
+    public String nodeFor(String key) {
+        Map.Entry<Long, String> point = points.ceilingEntry(hash(key));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    // FNV-1a de 64 bits con la mezcla final de MurmurHash3, para repartir bien claves parecidas
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /** Mezcla final de MurmurHash3: cada bit de entrada afecta a todos los de salida. */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
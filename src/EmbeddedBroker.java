@@ -0,0 +1,90 @@
+import org.apache.activemq.broker.BrokerService;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+
+/**
+ * Broker ActiveMQ dentro del mismo proceso que el sender, para salas de un solo nodo
+ * y pruebas de carga reproducibles sin un ActiveMQ aparte.
+ *
+ * El sender publica por vm:// (sin red ni serialización extra) y el broker expone un
+ * conector TCP/NIO para los MonsterReceiver remotos; esa URL externa es la que se
+ * anuncia en la línea INFO del handshake.
+ *
+ * Se activa con -Dmonsters.broker=embedded. Opciones:
+ *   monsters.broker.bind       conector externo (por defecto nio://0.0.0.0:61616)
+ *   monsters.broker.advertise  URL anunciada a los clientes (por defecto tcp://<ip local>:<puerto>)
+ */
+public class EmbeddedBroker implements AutoCloseable {
+
+    private static final String BROKER_NAME = "monsters";
+
+    private final BrokerService broker;
+    private final String advertisedUrl;
+
+    private EmbeddedBroker(BrokerService broker, String advertisedUrl) {
+        this.broker = broker;
+        this.advertisedUrl = advertisedUrl;
+    }
+
+    /** Arranca el broker si así se configuró; devuelve null si se usa un broker externo. */
+    public static EmbeddedBroker startIfConfigured() {
+        if (!GameConfig.string("monsters.broker", "external").equalsIgnoreCase("embedded")) {
+            return null;
+        }
+        String bindUrl = GameConfig.string("monsters.broker.bind", "nio://0.0.0.0:61616");
+        try {
+            BrokerService broker = new BrokerService();
+            broker.setBrokerName(BROKER_NAME);
+            broker.setPersistent(false);
+            broker.setUseJmx(false);
+            broker.setUseShutdownHook(false);
+            broker.addConnector(bindUrl);
+            broker.start();
+            broker.waitUntilStarted();
+
+            String advertised = GameConfig.string("monsters.broker.advertise", defaultAdvertisedUrl(bindUrl));
+            System.out.println("Embedded broker started on " + bindUrl + ", advertising " + advertised);
+            return new EmbeddedBroker(broker, advertised);
+        } catch (Exception e) {
+            System.out.println("No se pudo arrancar el broker embebido, usando el externo");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /** URL para conectarse desde este mismo proceso, sin pasar por la red. */
+    public String internalUrl() {
+        return "vm://" + BROKER_NAME + "?create=false";
+    }
+
+    /** URL que se anuncia a los clientes remotos en la línea INFO. */
+    public String advertisedUrl() {
+        return advertisedUrl;
+    }
+
+    @Override
+    public void close() {
+        try {
+            broker.stop();
+            broker.waitUntilStopped();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // nio://0.0.0.0:61616 -> tcp://<ip de esta máquina>:61616 (ambos hablan OpenWire)
+    private static String defaultAdvertisedUrl(String bindUrl) {
+        URI uri = URI.create(bindUrl);
+        String host = uri.getHost();
+        if (host == null || host.equals("0.0.0.0")) {
+            try {
+                host = InetAddress.getLocalHost().getHostAddress();
+            } catch (UnknownHostException e) {
+                host = "localhost";
+            }
+        }
+        return "tcp://" + host + ":" + uri.getPort();
+    }
+}
@@ -0,0 +1,247 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Registro de eventos de la partida (apariciones, golpes, ganadores...) fuera del
+ * camino caliente.
+ *
+ * Los hilos del juego no formatean ni escriben nada: copian unos pocos enteros en una
+ * ranura de un {@link RecordRing} preasignado, sin crear objetos, y siguen. Un hilo
+ * de fondo vacía el anillo a un fichero mapeado en memoria (events.log, o
+ * -Dmonsters.eventlog; "off" lo desactiva) en registros de 32 bytes. Si el anillo se
+ * llena el evento se descarta y se cuenta; el juego nunca espera al disco. {@link EventLogDecoder} convierte el fichero en texto.
+ *
+ * Registro (big-endian): tipo (1 byte), celda (1), sala (2), slot (4), id (4),
+ * valor (4), instante del evento en ms (8), instante del servidor en ms (8). Los
+ * eventos con nombre (JOIN, ROOM, WIN) llevan hasta 16 bytes de nombre en lugar de
+ * id, valor e instante del evento.
+ */
+public class EventLog implements AutoCloseable {
+
+    public static final byte SPAWN = 1;   // id, celda, valor = ronda, evento = hora de publicación
+    public static final byte HIT = 2;     // slot, id, celda, valor = puntos, evento = timestamp del cliente
+    public static final byte MISS = 3;    // slot, id, celda, evento = timestamp del cliente
+    public static final byte WIN = 4;     // slot = ronda, nombre del ganador
+    public static final byte JOIN = 5;    // slot, nombre del jugador
+    public static final byte ROUND = 6;   // valor = ronda que empieza
+    public static final byte ROOM = 7;    // slot = capacidad, nombre de la sala
+
+    public static final int RECORD_SIZE = 32;
+    static final int MAGIC = 0x4D455631; // "MEV1"
+    static final int NAME_BYTES = 16;
+    static final int NO_CELL = 0xFF;
+
+    private static final int WORDS = RECORD_SIZE / Long.BYTES;
+    private static final long MAP_CHUNK = 16L << 20;
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+
+    private final Path path;
+    private final boolean echo;
+    private final RecordRing ring;
+    private final RecordRing.Reader writer = this::write;
+    private final LongAdder dropped = new LongAdder();
+    // Solo del hilo que vacía
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long mappedAt;
+    private long written;
+    private final Thread drainer;
+    private volatile boolean running = true;
+
+    private EventLog(Path path, int capacity, boolean echo) throws IOException {
+        this.path = path;
+        this.echo = echo;
+        this.ring = new RecordRing(capacity, WORDS);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        map(0);
+        mapped.putInt(MAGIC).putInt(RECORD_SIZE).putLong(System.currentTimeMillis()).putLong(0).putLong(0);
+        written = RECORD_SIZE;
+        this.drainer = new Thread(this::drainLoop, "event-log");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    private EventLog() {
+        this.path = null;
+        this.echo = false;
+        this.ring = null;
+        this.drainer = null;
+        this.running = false;
+    }
+
+    /** Registro sin fichero: todas las llamadas vuelven enseguida. */
+    public static EventLog disabled() {
+        return new EventLog();
+    }
+
+    /**
+     * -Dmonsters.eventlog=fichero (events.log; "off" desactiva),
+     * -Dmonsters.eventlog.capacity=eventos en el anillo (65536),
+     * -Dmonsters.eventlog.echo=true para además imprimirlos desde el hilo de fondo.
+     */
+    public static EventLog fromConfig(String defaultFile) {
+        String file = GameConfig.string("monsters.eventlog", defaultFile);
+        if (file.equalsIgnoreCase("off")) return disabled();
+        try {
+            return new EventLog(Paths.get(file), GameConfig.integer("monsters.eventlog.capacity", 1 << 16),
+                    GameConfig.flag("monsters.eventlog.echo", false));
+        } catch (IOException e) {
+            System.out.println("No se pudo abrir el registro de eventos " + file + ": " + e.getMessage());
+            return disabled();
+        }
+    }
+
+    public boolean enabled() {
+        return ring != null;
+    }
+
+    /** Eventos descartados porque el anillo estaba lleno. */
+    public long droppedEvents() {
+        return dropped.sum();
+    }
+
+    public void spawn(int room, int monsterId, int x, int y, int round, long publishedMillis) {
+        append(SPAWN, room, cell(x, y), 0, monsterId, round, publishedMillis);
+    }
+
+    public void hit(int room, int slot, int monsterId, int x, int y, int score, long clientMillis) {
+        append(HIT, room, cell(x, y), slot, monsterId, score, clientMillis);
+    }
+
+    public void miss(int room, int slot, int monsterId, int x, int y, long clientMillis) {
+        append(MISS, room, cell(x, y), slot, monsterId, 0, clientMillis);
+    }
+
+    public void round(int room, int round) {
+        append(ROUND, room, NO_CELL, 0, 0, round, 0);
+    }
+
+    public void join(int room, int slot, String player) {
+        appendNamed(JOIN, room, slot, player);
+    }
+
+    public void win(int room, int round, String player) {
+        appendNamed(WIN, room, round, player);
+    }
+
+    public void room(int room, int capacity, String roomId) {
+        appendNamed(ROOM, room, capacity, roomId);
+    }
+
+    private static int cell(int x, int y) {
+        if (x < 0 || x >= LiveMonsterIndex.SIZE || y < 0 || y >= LiveMonsterIndex.SIZE) return NO_CELL;
+        return x * LiveMonsterIndex.SIZE + y;
+    }
+
+    private void appendNamed(byte type, int room, int slot, String name) {
+        if (ring == null) return;
+        // Hasta 16 caracteres en los campos id, valor y evento (2 longs)
+        long first = 0;
+        long second = 0;
+        int length = Math.min(NAME_BYTES, name.length());
+        for (int i = 0; i < length; i++) {
+            long c = name.charAt(i) < 0x80 ? name.charAt(i) : '?';
+            if (i < 8) first |= c << (56 - 8 * i);
+            else second |= c << (56 - 8 * (i - 8));
+        }
+        append(type, room, NO_CELL, slot, (int) (first >>> 32), (int) first, second);
+    }
+
+    private void append(byte type, int room, int cell, int slot, int id, int value, long eventMillis) {
+        if (ring == null) return;
+        long position = ring.claim();
+        if (position == RecordRing.FULL) {
+            dropped.increment();
+            return;
+        }
+        long[] words = ring.words;
+        int base = ring.base(position);
+        words[base] = ((long) (type & 0xFF) << 56) | ((long) (cell & 0xFF) << 48) | ((long) (room & 0xFFFF) << 32)
+                | (slot & 0xFFFFFFFFL);
+        words[base + 1] = ((long) id << 32) | (value & 0xFFFFFFFFL);
+        words[base + 2] = eventMillis;
+        words[base + 3] = System.currentTimeMillis();
+        ring.publish(position);
+    }
+
+    private void drainLoop() {
+        while (running) {
+            if (ring.drain(writer) == 0) LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        ring.drain(writer);
+    }
+
+    private void write(long[] words, int base) {
+        try {
+            if (written + RECORD_SIZE > mappedAt + MAP_CHUNK) map(written);
+            mapped.position((int) (written - mappedAt));
+            mapped.putLong(words[base]).putLong(words[base + 1]).putLong(words[base + 2]).putLong(words[base + 3]);
+            written += RECORD_SIZE;
+        } catch (IOException e) {
+            // Sin disco seguimos jugando: se pierden los eventos, no la partida
+            dropped.increment();
+        }
+        if (echo) {
+            System.out.println(EventLogDecoder.format(ByteBuffer.allocate(RECORD_SIZE).putLong(words[base])
+                    .putLong(words[base + 1]).putLong(words[base + 2]).putLong(words[base + 3]).flip(), null));
+        }
+    }
+
+    private void map(long offset) throws IOException {
+        mappedAt = offset;
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, offset, MAP_CHUNK);
+    }
+
+    /**
+     * Vacía lo pendiente y deja el fichero con su tamaño real. Espera al hilo que vacía
+     * sin plazo: el fichero solo se toca cuando ya no escribe. Java no desmapea hasta que
+     * el recolector libera el buffer, y en Windows no se puede recortar un fichero
+     * mapeado; si el recorte falla el fichero se queda con su relleno de ceros, que
+     * {@link EventLogDecoder} ya trata como el final.
+     */
+    @Override
+    public void close() {
+        if (ring == null || !running) return;
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            // Sigue escribiendo: el fichero se queda como esté, con su relleno
+            Thread.currentThread().interrupt();
+            return;
+        }
+        String note = "";
+        try {
+            mapped.force();
+            mapped = null;
+            try {
+                channel.truncate(written);
+            } catch (IOException e) {
+                note = " (sin recortar: " + e.getMessage() + ")";
+            }
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        long lost = dropped.sum();
+        System.out.println("Registro de eventos en " + path + note + (lost > 0 ? " (" + lost + " descartados)" : ""));
+    }
+
+    static String name(long first, long second) {
+        byte[] bytes = new byte[NAME_BYTES];
+        ByteBuffer.wrap(bytes).putLong(first).putLong(second);
+        int length = 0;
+        while (length < NAME_BYTES && bytes[length] != 0) length++;
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Convierte un fichero de {@link EventLog} en texto, una línea por evento.
+ *
+ * Uso: java EventLogDecoder [events.log]
+ *
+ * Los nombres de salas y jugadores salen de los eventos ROOM y JOIN anteriores; un
+ * fichero que no se cerró bien (proceso muerto) se lee hasta el último registro escrito.
+ */
+public class EventLogDecoder {
+
+    private static final SimpleDateFormat TIME = new SimpleDateFormat("HH:mm:ss.SSS");
+
+    public static void main(String[] args) throws IOException {
+        String file = args.length > 0 ? args[0] : GameConfig.string("monsters.eventlog", "events.log");
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < EventLog.RECORD_SIZE || buffer.getInt(0) != EventLog.MAGIC) {
+                System.out.println(file + " no es un registro de eventos");
+                return;
+            }
+            System.out.println("# Registro iniciado a las " + TIME.format(new Date(buffer.getLong(8))));
+            Names names = new Names();
+            long count = 0;
+            for (int at = EventLog.RECORD_SIZE; at + EventLog.RECORD_SIZE <= buffer.limit(); at += EventLog.RECORD_SIZE) {
+                ByteBuffer record = buffer.slice(at, EventLog.RECORD_SIZE);
+                // Resto del último trozo mapeado que no llegó a escribirse
+                if (record.get(0) == 0) break;
+                System.out.println(format(record, names));
+                count++;
+            }
+            System.out.println("# " + count + " eventos");
+        }
+    }
+
+    /** Texto de un registro; con {@code names} se resuelven salas y jugadores. */
+    static String format(ByteBuffer record, Names names) {
+        long header = record.getLong(0);
+        int type = (int) (header >>> 56);
+        int cell = (int) (header >>> 48) & 0xFF;
+        int room = (int) (header >>> 32) & 0xFFFF;
+        int slot = (int) header;
+        int id = record.getInt(8);
+        int value = record.getInt(12);
+        long eventMillis = record.getLong(16);
+        long serverMillis = record.getLong(24);
+
+        String name = EventLog.name(record.getLong(8), record.getLong(16));
+        if (names != null) {
+            if (type == EventLog.ROOM) names.rooms.put(room, name);
+            if (type == EventLog.JOIN) names.players.put(playerKey(room, slot), name);
+        }
+        String roomName = names == null ? null : names.rooms.get(room);
+        StringBuilder line = new StringBuilder(TIME.format(new Date(serverMillis)))
+                .append(" [").append(roomName != null ? roomName : "#" + room).append("] ");
+        switch (type) {
+            case EventLog.SPAWN:
+                line.append("SPAWN id=").append(id).append(cell(cell)).append(" round=").append(value)
+                        .append(" publish=").append(serverMillis - eventMillis).append("ms");
+                break;
+            case EventLog.HIT:
+                line.append("HIT ").append(player(names, room, slot)).append(" id=").append(id).append(cell(cell))
+                        .append(" score=").append(value).append(" reaction=").append(serverMillis - eventMillis)
+                        .append("ms");
+                break;
+            case EventLog.MISS:
+                line.append("MISS ").append(player(names, room, slot)).append(" id=").append(id).append(cell(cell));
+                break;
+            case EventLog.WIN:
+                line.append("WIN round=").append(slot).append(' ').append(name);
+                break;
+            case EventLog.JOIN:
+                line.append("JOIN slot=").append(slot).append(' ').append(name);
+                break;
+            case EventLog.ROUND:
+                line.append("ROUND ").append(value);
+                break;
+            case EventLog.ROOM:
+                line.append("ROOM ").append(name).append(" capacity=").append(slot);
+                break;
+            default:
+                line.append("UNKNOWN type=").append(type);
+        }
+        return line.toString();
+    }
+
+    private static String cell(int cell) {
+        if (cell == EventLog.NO_CELL) return " cell=?";
+        return " cell=(" + cell / LiveMonsterIndex.SIZE + "," + cell % LiveMonsterIndex.SIZE + ")";
+    }
+
+    private static String player(Names names, int room, int slot) {
+        String name = names == null ? null : names.players.get(playerKey(room, slot));
+        return name != null ? name : "slot " + slot;
+    }
+
+    private static long playerKey(int room, int slot) {
+        return ((long) room << 32) | (slot & 0xFFFFFFFFL);
+    }
+
+    /** Nombres vistos hasta ahora en el fichero. */
+    static final class Names {
+        final Map<Integer, String> rooms = new HashMap<>();
+        final Map<Long, String> players = new HashMap<>();
+    }
+}
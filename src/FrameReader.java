@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lector de un socket de jugador que entiende líneas de texto y tramas binarias
+ * de tamaño fijo sobre el mismo buffer. BufferedReader no sirve aquí: decodifica a
+ * caracteres por adelantado y se "come" los bytes de las tramas que vienen
+ * después de la línea "PROTO BIN1".
+ */
+public class FrameReader {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer view = ByteBuffer.wrap(buffer);
+    private int start;
+    private int end;
+
+    public FrameReader(InputStream in) {
+        this.in = in;
+    }
+
+    /** Siguiente línea sin el salto final, o null al cerrarse la conexión. */
+    public String readLine() throws IOException {
+        int scanned = 0;
+        while (true) {
+            for (int i = start + scanned; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    int lineEnd = (i > start && buffer[i - 1] == '\r') ? i - 1 : i;
+                    String line = new String(buffer, start, lineEnd - start, StandardCharsets.UTF_8);
+                    start = i + 1;
+                    return line;
+                }
+            }
+            scanned = end - start;
+            if (!fill()) {
+                if (end == start) return null;
+                // Última línea sin salto, igual que BufferedReader
+                String line = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+                start = end;
+                return line;
+            }
+        }
+    }
+
+    /**
+     * Devuelve una vista del buffer interno posicionada sobre la siguiente trama de
+     * {@code size} bytes (sin copiarla), o null al cerrarse la conexión. La vista
+     * solo es válida hasta la siguiente lectura.
+     */
+    public ByteBuffer nextFrame(int size) throws IOException {
+        while (end - start < size) {
+            if (!fill()) return null;
+        }
+        view.limit(start + size).position(start);
+        start += size;
+        return view;
+    }
+
+    private boolean fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buffer.length) {
+            throw new IOException("Línea demasiado larga");
+        }
+        int read = in.read(buffer, end, buffer.length - end);
+        if (read < 0) return false;
+        end += read;
+        return true;
+    }
+}
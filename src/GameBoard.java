@@ -0,0 +1,98 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tablero de un tópico visto por el cliente: aplica la foto del handshake o de SYNC y
+ * las deltas numeradas del tópico sobre un {@link BoardBuffer}.
+ *
+ * Una delta que ya cubría la última foto se descarta; si falta alguna anterior se pide
+ * SYNC (como mucho uno cada {@link #SYNC_INTERVAL_NANOS}, aunque falten muchas
+ * seguidas). Una secuencia muy por detrás de la última indica que otro nodo empezó a
+ * publicar la sala y la numeración vuelve a empezar.
+ *
+ * La ventana de {@link MonsterReceiver} tiene uno para su jugador; en {@link BotEngine}
+ * lo comparten todos los bots del tópico, que miran en él si el monstruo sigue vivo
+ * antes de golpear. Fotos y deltas llegan por hilos distintos (el que lee el socket y
+ * el listener JMS), así que se aplican bajo el lock del tablero.
+ */
+public class GameBoard {
+
+    static final long STALE_WINDOW = 4096;
+    private static final long SYNC_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final BoardBuffer buffer;
+    private final Runnable syncRequest;
+    // Secuencia de la última delta o foto aplicada (0: el servidor no numera); bajo el lock del tablero
+    private long seq;
+    private long lastSyncNanos = System.nanoTime() - SYNC_INTERVAL_NANOS;
+
+    /**
+     * {@code syncRequest} manda SYNC por el socket de algún jugador; la foto vuelve a
+     * {@link #applySnapshot}. Se llama con el lock del tablero tomado y en el hilo que
+     * entrega las deltas (a veces el listener que comparten todos los jugadores del
+     * tópico), así que no debe escribir ahí: pasa la escritura a otro hilo.
+     */
+    public GameBoard(BoardBuffer buffer, Runnable syncRequest) {
+        this.buffer = buffer;
+        this.syncRequest = syncRequest;
+    }
+
+    public BoardBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Aplica la foto del tablero. Si es al menos tan reciente como la última delta
+     * sustituye al tablero entero; si no, solo añade sus monstruos.
+     */
+    public synchronized void applySnapshot(BoardSnapshot snapshot) {
+        if (snapshot == null) return;
+        boolean replace = snapshot.seq >= seq;
+        for (int cell = 0; cell < BoardBuffer.CELLS; cell++) {
+            int x = cell / BoardBuffer.SIZE;
+            int y = cell % BoardBuffer.SIZE;
+            if (snapshot.isLive(cell)) {
+                buffer.spawn(snapshot.id(cell), x, y, snapshot.round,
+                        TimeUnit.MILLISECONDS.toNanos(snapshot.remainingMillis(cell)));
+            } else if (replace) {
+                buffer.remove(x, y, -1);
+            }
+        }
+        if (replace) seq = snapshot.seq;
+    }
+
+    /**
+     * Aplica una aparición o retirada con su número de secuencia (0 si no lo trae).
+     * Devuelve false si ya estaba aplicada.
+     */
+    public synchronized boolean apply(WireProtocol.Frame delta, long deltaSeq) {
+        if (deltaSeq > 0) {
+            boolean restarted = seq - deltaSeq > STALE_WINDOW;
+            if (deltaSeq <= seq && !restarted) return false;
+            if (restarted || (seq > 0 && deltaSeq > seq + 1)) requestSync();
+            seq = deltaSeq;
+        }
+        if (delta.type == WireProtocol.CLEAR) {
+            buffer.remove(delta.x, delta.y, delta.monsterId);
+        } else {
+            buffer.spawn(delta.monsterId, delta.x, delta.y, delta.round);
+        }
+        return true;
+    }
+
+    /** Si el monstruo sigue vivo en la celda; desde cualquier hilo, sin el lock. */
+    public boolean isLive(int x, int y, int monsterId) {
+        return buffer.isLive(x, y, monsterId, System.nanoTime());
+    }
+
+    /** Fin de partida: vacía el tablero. */
+    public void clear() {
+        buffer.clear();
+    }
+
+    private void requestSync() {
+        long now = System.nanoTime();
+        if (now - lastSyncNanos < SYNC_INTERVAL_NANOS) return;
+        lastSyncNanos = now;
+        syncRequest.run();
+    }
+}
@@ -0,0 +1,333 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Conexión TCP de un jugador sin interfaz: el handshake, la línea INFO, la
+ * negociación del binario y del reloj, y el canal por el que salen sus golpes.
+ *
+ * Lo usan la ventana de {@link MonsterReceiver}, los bots de {@link BotEngine} y el
+ * generador de carga {@link StressReceiver}. Las apariciones llegan por el tópico
+ * ({@link TopicFeed}) salvo con TRANSPORT=socket ({@link SpawnTransport}); por el socket
+ * llegan la foto del tablero, los WINNER que manda el servidor, los PONG y en ese caso
+ * las líneas DELTA, que {@link #readLoop(Listener)} entrega al {@link Listener}.
+ *
+ * Handshake: saludo (o "BUSY RETRY_AFTER=ms", y se reintenta tras esperar), línea del
+ * nombre, bienvenida (o "REDIRECT host puerto" en un clúster, y se sigue) e INFO. Con
+ * CLOCK=NANOS en INFO se hacen {@link #CLOCK_BURST} PING seguidos al entrar y los golpes
+ * van marcados con {@link GameClock}; los PING periódicos los pide quien lo usa con
+ * {@link #ping()}.
+ *
+ * Las escrituras (golpes, SYNC, PING, CLOCK) pueden llegar desde varios hilos: van
+ * bajo un ReentrantLock y con una sola trama reutilizada. No es synchronized porque los
+ * bots escriben desde hilos virtuales, y una escritura bloqueada dentro de un monitor
+ * fija el hilo portador.
+ */
+public class GameClient implements AutoCloseable {
+
+    public static final int MAX_REDIRECTS = 3;
+    // PING seguidos al conectar, cada uno al llegar el PONG del anterior
+    static final int CLOCK_BURST = 4;
+
+    /** Lo que llega por el socket después del handshake; en el hilo de {@link #readLoop(Listener)}. */
+    public interface Listener {
+        default void onSnapshot(BoardSnapshot snapshot) {
+        }
+
+        default void onWinner(String player) {
+        }
+
+        /** Un PONG actualizó el desfase; {@code rttNanos} es el de esta muestra. */
+        default void onClock(GameClock.Sync clock, long rttNanos) {
+        }
+
+        /**
+         * Delta empujada por el socket (TRANSPORT=socket); quien comparta tablero la pasa a
+         * {@link TopicFeed#onDelta}. La trama se reutiliza en la siguiente línea.
+         */
+        default void onDelta(WireProtocol.Frame delta, long seq, long sentNanos) {
+        }
+    }
+
+    private final Socket socket;
+    private final FrameReader in;
+    private final OutputStream out;
+    private final String welcome;
+    private final String info;
+    private final boolean binary;
+    private final GameClock.Sync clock;
+    private final int busyReplies;
+    // Protege la trama y el stream de salida
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ByteBuffer frame = ByteBuffer.allocate(WireProtocol.FRAME_SIZE);
+    // Solo del hilo de readLoop
+    private final WireProtocol.Frame delta = new WireProtocol.Frame();
+
+    private GameClient(Socket socket, FrameReader in, OutputStream out, String welcome, String info, boolean binary,
+                       int busyReplies) {
+        this.socket = socket;
+        this.in = in;
+        this.out = out;
+        this.welcome = welcome;
+        this.info = info;
+        this.binary = binary;
+        this.clock = WireProtocol.supportsClock(info) ? new GameClock.Sync() : null;
+        this.busyReplies = busyReplies;
+    }
+
+    /**
+     * Hace el handshake completo con el servidor de registro. {@code nameLine} es el
+     * nombre, o "nombre ROOM=sala"; {@code protocol} es text, binary o auto (binario si
+     * el servidor lo anuncia). Reintenta como mucho {@code maxBusyRetries} respuestas
+     * BUSY; lanza IOException si el servidor rechaza al jugador (p.ej. SERVER FULL).
+     */
+    public static GameClient connect(String host, int port, String nameLine, String protocol, int maxBusyRetries)
+            throws IOException, InterruptedException {
+        int redirects = 0;
+        int retries = 0;
+        while (true) {
+            Socket socket = new Socket(host, port);
+            try {
+                socket.setTcpNoDelay(true);
+                FrameReader in = new FrameReader(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+
+                String greeting = in.readLine(); // WELCOME ... o BUSY RETRY_AFTER=ms
+                long retryAfter = AdmissionControl.retryAfterMillis(greeting);
+                if (retryAfter >= 0) {
+                    socket.close();
+                    if (retries++ == maxBusyRetries) throw new IOException("Server busy: " + greeting);
+                    TimeUnit.MILLISECONDS.sleep(retryAfter);
+                    continue;
+                }
+                in.readLine(); // Enter your name:
+                out.write((nameLine + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+
+                String welcome = in.readLine();
+                if (welcome != null && welcome.startsWith("REDIRECT ") && redirects++ < MAX_REDIRECTS) {
+                    String[] target = welcome.split(" ");
+                    socket.close();
+                    host = target[1];
+                    port = Integer.parseInt(target[2]);
+                    continue;
+                }
+                String info = welcome == null ? null : in.readLine();
+                if (welcome == null || !welcome.startsWith("Welcome") || info == null || !info.startsWith("INFO ")) {
+                    throw new IOException("Registration refused: " + welcome);
+                }
+                boolean binary = negotiateBinary(info, protocol, out);
+                GameClient client = new GameClient(socket, in, out, welcome, info, binary, retries);
+                if (client.clock != null) client.ping();
+                return client;
+            } catch (IOException | RuntimeException e) {
+                socket.close();
+                throw e;
+            }
+        }
+    }
+
+    private static boolean negotiateBinary(String info, String protocol, OutputStream out) throws IOException {
+        boolean serverBinary = info.contains("PROTOCOLS=") && info.contains(WireProtocol.BINARY);
+        boolean binary = protocol.equals("binary") || (protocol.equals("auto") && serverBinary);
+        if (binary) {
+            out.write((WireProtocol.NEGOTIATE_BINARY + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+        return binary;
+    }
+
+    /** Valor de un campo "CLAVE=valor" de la línea INFO. */
+    public static String infoField(String info, String key, String defaultValue) {
+        for (String part : info.split(" ")) {
+            if (part.startsWith(key + "=")) return part.substring(key.length() + 1);
+        }
+        return defaultValue;
+    }
+
+    public String welcome() {
+        return welcome;
+    }
+
+    public String info() {
+        return info;
+    }
+
+    public String brokerUrl() {
+        return infoField(info, "BROKER_URL", "tcp://localhost:61616");
+    }
+
+    public String topic() {
+        return infoField(info, "TOPIC", "Monsters");
+    }
+
+    /** Sala del jugador, o null si el servidor no tiene salas. */
+    public String room() {
+        return infoField(info, "ROOM", null);
+    }
+
+    /** Transporte de las deltas que anuncia INFO ({@link SpawnTransport}). */
+    public String transport() {
+        return SpawnTransport.name(info);
+    }
+
+    public boolean binary() {
+        return binary;
+    }
+
+    /** Estimación del desfase con el servidor, o null si no anuncia CLOCK=NANOS. */
+    public GameClock.Sync clock() {
+        return clock;
+    }
+
+    /** Respuestas BUSY que hubo que esperar antes de entrar. */
+    public int busyReplies() {
+        return busyReplies;
+    }
+
+    public boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    /**
+     * Lee lo que mande el servidor hasta que cierre el socket: deltas, fotos del tablero,
+     * WINNER y PONG. Bloquea; se llama desde el hilo que el usuario dedique al jugador.
+     */
+    public void readLoop(Listener listener) {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(WireProtocol.DELTA_PREFIX)) {
+                    long seq = WireProtocol.parseTextDelta(line, delta);
+                    if (seq >= 0) listener.onDelta(delta, seq, delta.sentNanos);
+                } else if (line.startsWith(BoardSnapshot.PREFIX)) {
+                    listener.onSnapshot(BoardSnapshot.parse(line));
+                } else if (line.startsWith("WINNER ")) {
+                    listener.onWinner(line.substring("WINNER ".length()));
+                } else if (clock != null && clock.onPong(line, GameClock.nowNanos())) {
+                    report();
+                    listener.onClock(clock, clock.lastRttNanos());
+                    if (clock.samples() < CLOCK_BURST) ping();
+                }
+            }
+        } catch (IOException e) {
+            // Socket cerrado: termina igual que con el fin de la conexión
+        } finally {
+            close();
+        }
+    }
+
+    /** Golpe marcado con la hora de ahora. */
+    public void hit(int x, int y, int monsterId, int round) {
+        hit(x, y, monsterId, round, GameClock.nowNanos());
+    }
+
+    /**
+     * Golpe marcado con {@code sentNanos} ({@link GameClock#nowNanos()}): el generador
+     * de carga pone aquí la hora prevista, no la real. Devuelve false si el socket ya
+     * se cerró.
+     */
+    public boolean hit(int x, int y, int monsterId, int round, long sentNanos) {
+        long millis = sentNanos / 1_000_000;
+        writeLock.lock();
+        try {
+            if (binary) {
+                frame.clear();
+                if (clock != null) {
+                    WireProtocol.encode(frame, WireProtocol.HIT, WireProtocol.FLAG_NANOS, monsterId, x, y, round,
+                            sentNanos);
+                } else {
+                    WireProtocol.encode(frame, WireProtocol.HIT, monsterId, x, y, round, millis);
+                }
+                return writeFrame();
+            }
+            return writeLine(clock != null
+                    ? WireProtocol.hitText(x, millis, y, monsterId, round, sentNanos)
+                    : WireProtocol.hitText(x, millis, y, monsterId, round));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Pide otra foto del tablero; llega a {@link Listener#onSnapshot}. */
+    public void requestSync() {
+        writeLock.lock();
+        try {
+            if (binary) {
+                frame.clear();
+                WireProtocol.encode(frame, WireProtocol.SYNC, 0, 0, 0, 0, 0);
+                writeFrame();
+            } else {
+                writeLine(WireProtocol.SYNC_LINE);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Manda un PING si el servidor entiende el reloj; no hace nada si no. */
+    public void ping() {
+        if (clock == null) return;
+        writeLock.lock();
+        try {
+            if (binary) {
+                frame.clear();
+                GameClock.Sync.encodePing(frame);
+                writeFrame();
+            } else {
+                writeLine(GameClock.Sync.ping());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void report() {
+        writeLock.lock();
+        try {
+            if (binary) {
+                frame.clear();
+                clock.encodeReport(frame);
+                writeFrame();
+            } else {
+                writeLine(clock.report());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // writeFrame, writeLine y write: con writeLock tomado
+    private boolean writeFrame() {
+        return write(frame.array(), frame.position());
+    }
+
+    private boolean writeLine(String line) {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        return write(bytes, bytes.length);
+    }
+
+    private boolean write(byte[] bytes, int length) {
+        if (socket.isClosed()) return false;
+        try {
+            out.write(bytes, 0, length);
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            close();
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloj de las marcas de tiempo que cruzan procesos y sincronización estilo NTP entre
+ * cliente y servidor por el socket del jugador.
+ *
+ * {@link #nowNanos()} es System.nanoTime() desplazado para que coincida con la hora de
+ * pared al arrancar: monótono y con resolución de nanosegundos, pero comparable entre
+ * máquinas una vez conocido el desfase. Dividido entre un millón sigue sirviendo donde
+ * antes iban milisegundos de pared.
+ *
+ * Intercambio (el servidor lo anuncia con CLOCK=NANOS en INFO):
+ *   cliente  "PING t0"             (o trama PING con t0 en el timestamp)
+ *   servidor "PONG t0 t1 t2"       t1 = llegada del PING, t2 = salida del PONG
+ *   cliente  "CLOCK desfase rtt"   (o trama CLOCK: desfase en el timestamp, rtt en µs en el id)
+ * Con t3 = llegada del PONG: rtt = (t3 - t0) - (t2 - t1) y desfase (servidor - cliente) =
+ * ((t1 - t0) + (t2 - t3)) / 2. El cliente se queda con la muestra de menor rtt de las
+ * últimas {@link Sync#WINDOW}: es la que menos sufre colas y asimetrías. Hace unos
+ * PING al conectar y otro cada pocos segundos.
+ */
+public final class GameClock {
+
+    private static final long ORIGIN_NANOS = System.nanoTime();
+    private static final long EPOCH_NANOS = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+
+    private GameClock() {
+    }
+
+    public static long nowNanos() {
+        return EPOCH_NANOS + (System.nanoTime() - ORIGIN_NANOS);
+    }
+
+    /** Servidor: respuesta a "PING t0" (o a la trama), con t1 = llegada del PING. */
+    public static String pong(long t0, long receivedNanos) {
+        return WireProtocol.PONG_PREFIX + t0 + " " + receivedNanos + " " + nowNanos();
+    }
+
+    /** Lado del cliente: estima desfase y rtt con los PONG de su servidor. Un hilo a la vez. */
+    public static final class Sync {
+        static final int WINDOW = 8;
+
+        private final long[] offsets = new long[WINDOW];
+        private final long[] rtts = new long[WINDOW];
+        private final long[] numbers = new long[3];
+        private int samples;
+        private volatile long offsetNanos;
+        private volatile long rttNanos = -1;
+
+        /** Aplica una línea "PONG t0 t1 t2" recibida en {@code receivedNanos}; false si no lo es. */
+        public boolean onPong(String line, long receivedNanos) {
+            if (!line.startsWith(WireProtocol.PONG_PREFIX)
+                    || WireProtocol.parseNumbers(line, WireProtocol.PONG_PREFIX.length(), numbers) < 3) {
+                return false;
+            }
+            long t0 = numbers[0];
+            long t1 = numbers[1];
+            long t2 = numbers[2];
+            int index = samples++ % WINDOW;
+            rtts[index] = Math.max(0, (receivedNanos - t0) - (t2 - t1));
+            offsets[index] = ((t1 - t0) + (t2 - receivedNanos)) / 2;
+            int best = 0;
+            for (int i = 1; i < Math.min(samples, WINDOW); i++) {
+                if (rtts[i] < rtts[best]) best = i;
+            }
+            offsetNanos = offsets[best];
+            rttNanos = rtts[best];
+            return true;
+        }
+
+        /** PONG aplicados hasta ahora. */
+        public int samples() {
+            return samples;
+        }
+
+        /** Lo que medía la última muestra, no la mejor: para histogramas de rtt. */
+        public long lastRttNanos() {
+            return samples == 0 ? -1 : rtts[(samples - 1) % WINDOW];
+        }
+
+        public boolean synced() {
+            return rttNanos >= 0;
+        }
+
+        /** Hora del servidor menos hora del cliente. */
+        public long offsetNanos() {
+            return offsetNanos;
+        }
+
+        /** -1 hasta la primera muestra. */
+        public long rttNanos() {
+            return rttNanos;
+        }
+
+        /** Instante del servidor que corresponde a uno de {@link #nowNanos()} de este cliente. */
+        public long toServer(long clientNanos) {
+            return clientNanos + offsetNanos;
+        }
+
+        /** Línea "CLOCK desfase rtt" que informa al servidor. */
+        public String report() {
+            return WireProtocol.CLOCK_PREFIX + offsetNanos + " " + rttNanos;
+        }
+
+        /** Línea "PING t0" con la hora de ahora. */
+        public static String ping() {
+            return WireProtocol.PING_PREFIX + nowNanos();
+        }
+
+        /** Trama PING con la hora de ahora. */
+        public static void encodePing(ByteBuffer buffer) {
+            WireProtocol.encode(buffer, WireProtocol.PING, WireProtocol.FLAG_NANOS, -1, -1, -1, -1, nowNanos());
+        }
+
+        /** Trama CLOCK: el desfase en el timestamp y el rtt en µs en el id. */
+        public void encodeReport(ByteBuffer buffer) {
+            int rttMicros = (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(rttNanos));
+            WireProtocol.encode(buffer, WireProtocol.CLOCK, rttMicros, -1, -1, -1, offsetNanos);
+        }
+    }
+
+    /**
+     * Lado del servidor: lo último que informó un cliente con CLOCK. Los PING y CLOCK de
+     * una conexión llegan por su hilo (o su event loop); los valores se leen desde el de
+     * los golpes.
+     */
+    public static final class Peer {
+        private final long[] numbers = new long[2];
+        private volatile long offsetNanos;
+        private volatile long rttNanos = -1;
+
+        /**
+         * Atiende "PING t0" o "CLOCK desfase rtt" llegadas en {@code receivedNanos}. Devuelve
+         * la línea que hay que contestar ("" si no hay), o null si no es una línea del reloj.
+         */
+        public String onLine(String line, long receivedNanos) {
+            if (line.startsWith(WireProtocol.PING_PREFIX)) {
+                int count = WireProtocol.parseNumbers(line, WireProtocol.PING_PREFIX.length(), numbers);
+                return count < 1 ? "" : pong(numbers[0], receivedNanos);
+            }
+            if (line.startsWith(WireProtocol.CLOCK_PREFIX)) {
+                if (WireProtocol.parseNumbers(line, WireProtocol.CLOCK_PREFIX.length(), numbers) == 2) {
+                    update(numbers[0], numbers[1]);
+                }
+                return "";
+            }
+            return null;
+        }
+
+        /** Lo mismo con una trama PING (t0 en el timestamp) o CLOCK (rtt en µs en el id). */
+        public String onFrame(WireProtocol.Frame frame, long receivedNanos) {
+            if (frame.type == WireProtocol.PING) {
+                return pong(frame.sentNanos != 0 ? frame.sentNanos : frame.timestamp, receivedNanos);
+            }
+            if (frame.type == WireProtocol.CLOCK) {
+                update(frame.timestamp, TimeUnit.MICROSECONDS.toNanos(frame.monsterId));
+                return "";
+            }
+            return null;
+        }
+
+        public void update(long offsetNanos, long rttNanos) {
+            this.offsetNanos = offsetNanos;
+            this.rttNanos = rttNanos;
+        }
+
+        public boolean synced() {
+            return rttNanos >= 0;
+        }
+
+        public long offsetNanos() {
+            return offsetNanos;
+        }
+
+        public long rttNanos() {
+            return rttNanos;
+        }
+
+        /** Instante del servidor de una marca del cliente ({@link GameClock#nowNanos()} allí). */
+        public long toServer(long clientNanos) {
+            return clientNanos + offsetNanos;
+        }
+    }
+}
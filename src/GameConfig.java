@@ -0,0 +1,41 @@
+/**
+ * Opciones de arranque del servidor, leídas de propiedades del sistema (-Dmonsters.*).
+ * Así no tocamos los argumentos posicionales que ya usan los main().
+ */
+public final class GameConfig {
+
+    private GameConfig() {
+    }
+
+    public static String string(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+    }
+
+    public static int integer(String key, int defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Valor inválido para " + key + ": " + value + ", usando " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static double decimal(String key, double defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) return defaultValue;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Valor inválido para " + key + ": " + value + ", usando " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean flag(String key, boolean defaultValue) {
+        String value = System.getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+}
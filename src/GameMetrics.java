@@ -0,0 +1,254 @@
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Métricas en vivo del servidor, visibles mientras la partida corre.
+ *
+ * El juego solo toca contadores baratos (LongAdder) y los {@link LatencyRecorder} que
+ * ya tenía; los gauges son funciones que se evalúan al consultar. Nada se calcula si
+ * nadie pregunta: el coste está en quien consulta, no en el camino del golpe.
+ *
+ * Se publican de dos formas:
+ *   - JMX: MBean monsters:type=GameMetrics,name=<servidor> (jconsole, VisualVM...);
+ *     -Dmonsters.metrics.jmx=false lo desactiva.
+ *   - HTTP en formato de texto de Prometheus: GET /metrics en -Dmonsters.metrics.port
+ *     (desactivado si no se indica), escuchando en -Dmonsters.metrics.host (127.0.0.1).
+ *
+ * Las métricas se registran al arrancar el servidor, antes de que nadie consulte.
+ */
+public final class GameMetrics implements AutoCloseable {
+
+    private static final String PREFIX = "monsters_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final String server;
+    // Orden de registro = orden de salida; protegido por el lock de this
+    private final Map<String, Metric> metrics = new LinkedHashMap<>();
+    private ObjectName objectName;
+    private HttpServer http;
+
+    public GameMetrics(String server) {
+        this.server = server;
+        gauge("jvm_threads_live", "Hilos de plataforma vivos en la JVM",
+                () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        gauge("jvm_heap_used_bytes", "Memoria de heap en uso",
+                () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+    }
+
+    /** Métricas con JMX y, si se configuró un puerto, el endpoint HTTP. */
+    public static GameMetrics fromConfig(String server) {
+        GameMetrics metrics = new GameMetrics(server);
+        if (GameConfig.flag("monsters.metrics.jmx", true)) metrics.registerMBean();
+        int port = GameConfig.integer("monsters.metrics.port", 0);
+        if (port > 0) metrics.startHttp(GameConfig.string("monsters.metrics.host", "127.0.0.1"), port);
+        return metrics;
+    }
+
+    /** Contador que lleva esta clase; el juego solo hace increment(). */
+    public LongAdder counter(String name, String help) {
+        LongAdder adder = new LongAdder();
+        register(new Metric(name, help, "counter", adder::sum, null));
+        return adder;
+    }
+
+    /** Contador que ya lleva otro componente (solo crece). */
+    public void counter(String name, String help, LongSupplier value) {
+        register(new Metric(name, help, "counter", value, null));
+    }
+
+    /** Valor instantáneo, leído al consultar. */
+    public void gauge(String name, String help, LongSupplier value) {
+        register(new Metric(name, help, "gauge", value, null));
+    }
+
+    /** Histograma en µs; se expone en segundos como summary con cuantiles. */
+    public void histogram(String name, String help, LatencyRecorder recorder) {
+        register(new Metric(name, help, "summary", null, recorder));
+    }
+
+    private synchronized void register(Metric metric) {
+        metrics.put(metric.name, metric);
+    }
+
+    private synchronized List<Metric> all() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    /** Todas las métricas en el formato de texto de Prometheus (0.0.4). */
+    public String prometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        String labels = "server=\"" + server + "\"";
+        for (Metric metric : all()) {
+            String name = PREFIX + metric.name;
+            out.append("# HELP ").append(name).append(' ').append(metric.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(metric.type).append('\n');
+            if (metric.recorder == null) {
+                out.append(name).append('{').append(labels).append("} ").append(metric.value.getAsLong()).append('\n');
+                continue;
+            }
+            LatencyRecorder.Snapshot snapshot = metric.recorder.snapshot();
+            for (double q : QUANTILES) {
+                out.append(name).append('{').append(labels).append(",quantile=\"").append(q).append("\"} ")
+                        .append(snapshot.percentile(q * 100) / 1e6).append('\n');
+            }
+            out.append(name).append("_sum{").append(labels).append("} ").append(snapshot.sum() / 1e6).append('\n');
+            out.append(name).append("_count{").append(labels).append("} ").append(snapshot.count()).append('\n');
+            // El máximo no cabe en un summary: va como gauge aparte
+            out.append("# TYPE ").append(name).append("_max gauge\n");
+            out.append(name).append("_max{").append(labels).append("} ").append(snapshot.max() / 1e6).append('\n');
+        }
+        return out.toString();
+    }
+
+    private void startHttp(String host, int port) {
+        try {
+            http = HttpServer.create(new InetSocketAddress(host, port), 0);
+            http.createContext("/metrics", exchange -> {
+                byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            // Sin executor: atiende el hilo del propio HttpServer, una consulta cada vez
+            http.start();
+            System.out.println("Metrics on http://" + host + ":" + port + "/metrics");
+        } catch (IOException e) {
+            System.out.println("No se pudo abrir el endpoint de métricas en " + host + ":" + port + ": " + e.getMessage());
+        }
+    }
+
+    private void registerMBean() {
+        try {
+            objectName = new ObjectName("monsters:type=GameMetrics,name=" + ObjectName.quote(server));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), objectName);
+        } catch (JMException e) {
+            System.out.println("No se pudo registrar el MBean de métricas: " + e.getMessage());
+            objectName = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (http != null) http.stop(0);
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException ignored) {
+            }
+        }
+    }
+
+    private static final class Metric {
+        final String name;
+        final String help;
+        final String type;
+        final LongSupplier value;
+        final LatencyRecorder recorder;
+
+        Metric(String name, String help, String type, LongSupplier value, LatencyRecorder recorder) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+            this.recorder = recorder;
+        }
+    }
+
+    /**
+     * Atributos de solo lectura: uno por contador o gauge, y para cada histograma
+     * _count, _p50_ms, _p90_ms, _p99_ms, _p999_ms y _max_ms.
+     */
+    private final class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            for (Metric metric : all()) {
+                if (metric.recorder == null) {
+                    if (metric.name.equals(attribute)) return metric.value.getAsLong();
+                } else if (attribute.startsWith(metric.name + "_")) {
+                    return histogramAttribute(metric.recorder.snapshot(), attribute.substring(metric.name.length() + 1));
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        private Object histogramAttribute(LatencyRecorder.Snapshot snapshot, String field)
+                throws AttributeNotFoundException {
+            switch (field) {
+                case "count":
+                    return snapshot.count();
+                case "p50_ms":
+                    return snapshot.percentile(50) / 1000.0;
+                case "p90_ms":
+                    return snapshot.percentile(90) / 1000.0;
+                case "p99_ms":
+                    return snapshot.percentile(99) / 1000.0;
+                case "p999_ms":
+                    return snapshot.percentile(99.9) / 1000.0;
+                case "max_ms":
+                    return snapshot.max() / 1000.0;
+                default:
+                    throw new AttributeNotFoundException(field);
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException ignored) {
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Las métricas son de solo lectura");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Metric metric : all()) {
+                if (metric.recorder == null) {
+                    attributes.add(new MBeanAttributeInfo(metric.name, "long", metric.help, true, false, false));
+                    continue;
+                }
+                attributes.add(new MBeanAttributeInfo(metric.name + "_count", "long", metric.help, true, false, false));
+                for (String field : new String[]{"p50_ms", "p90_ms", "p99_ms", "p999_ms", "max_ms"}) {
+                    attributes.add(new MBeanAttributeInfo(metric.name + "_" + field, "double", metric.help,
+                            true, false, false));
+                }
+            }
+            return new MBeanInfo(GameMetrics.class.getName(), "Métricas de " + server,
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
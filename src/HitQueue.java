@@ -0,0 +1,97 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Golpes pendientes de un loop de {@link RoomManager}: muchos productores (los hilos de
+ * los jugadores) y un único consumidor (el loop). Es la cola de Vyukov de
+ * {@link BoundedMpscQueue}, pero cada celda es un registro preasignado que el productor
+ * rellena en su sitio: encolar un golpe no reserva memoria. offer() nunca espera; con
+ * la cola llena devuelve false.
+ */
+final class HitQueue {
+
+    /** Lo que hace el consumidor con cada golpe. */
+    interface Handler {
+        void hit(Room room, int slot, int x, int y, int monsterId, long clientMillis);
+    }
+
+    private static final class Entry {
+        Room room;
+        int slot;
+        int x;
+        int y;
+        int monsterId;
+        long clientMillis;
+    }
+
+    private final int mask;
+    private final Entry[] entries;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // Solo del consumidor
+    private long head;
+
+    HitQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.mask = size - 1;
+        this.entries = new Entry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            entries[i] = new Entry();
+            sequences.set(i, i);
+        }
+    }
+
+    boolean offer(Room room, int slot, int x, int y, int monsterId, long clientMillis) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    Entry entry = entries[index];
+                    entry.room = room;
+                    entry.slot = slot;
+                    entry.x = x;
+                    entry.y = y;
+                    entry.monsterId = monsterId;
+                    entry.clientMillis = clientMillis;
+                    // Escritura volátil: publica los campos del registro al consumidor
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (available < 0) {
+                return false;
+            }
+        }
+    }
+
+    /** Solo desde el hilo consumidor: entrega hasta {@code max} golpes encolados y devuelve cuántos. */
+    int drain(Handler handler, int max) {
+        int count = 0;
+        while (count < max) {
+            long position = head;
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) return count;
+            Entry entry = entries[index];
+            Room room = entry.room;
+            int slot = entry.slot;
+            int x = entry.x;
+            int y = entry.y;
+            int monsterId = entry.monsterId;
+            long clientMillis = entry.clientMillis;
+            entry.room = null;
+            // El registro queda libre antes de procesar el golpe
+            sequences.lazySet(index, position + mask + 1);
+            head = position + 1;
+            handler.hit(room, slot, x, y, monsterId, clientMillis);
+            count++;
+        }
+        return count;
+    }
+
+    /** Solo desde el hilo consumidor. */
+    boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+}
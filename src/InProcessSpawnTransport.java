@@ -0,0 +1,60 @@
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Deltas sin red: cada publicación llama directamente, en el hilo que publica, a los
+ * receptores del tópico registrados en esta JVM. Sirve para probar cliente y servidor en
+ * el mismo proceso y como suelo de latencia en el benchmark de transportes.
+ *
+ * Los receptores son de toda la JVM (estáticos): un {@link TopicFeed} que lee
+ * "TRANSPORT=inproc" en INFO se registra aquí sin conocer al servidor.
+ */
+public class InProcessSpawnTransport implements SpawnTransport {
+
+    private static final Map<String, List<Receiver>> RECEIVERS = new ConcurrentHashMap<>();
+    // Trama reutilizada por cada hilo que publica (los loops de las salas)
+    private static final ThreadLocal<WireProtocol.Frame> FRAMES = ThreadLocal.withInitial(WireProtocol.Frame::new);
+
+    /** Registra un receptor de {@code topic} hasta que se cierre la suscripción. */
+    public static Subscription subscribe(String topic, Receiver receiver) {
+        List<Receiver> receivers = RECEIVERS.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>());
+        receivers.add(receiver);
+        return () -> receivers.remove(receiver);
+    }
+
+    @Override
+    public boolean publish(String topic, byte type, int monsterId, int x, int y, int round, long timestamp, long seq) {
+        List<Receiver> receivers = RECEIVERS.get(topic);
+        if (receivers == null || receivers.isEmpty()) return true;
+        WireProtocol.Frame frame = FRAMES.get();
+        long sentNanos = GameClock.nowNanos();
+        for (Receiver receiver : receivers) {
+            // Cada receptor ve la trama entera aunque el anterior la haya tocado
+            frame.type = type;
+            frame.monsterId = monsterId;
+            frame.x = x;
+            frame.y = y;
+            frame.round = round;
+            frame.timestamp = timestamp;
+            frame.sentNanos = sentNanos;
+            try {
+                receiver.onDelta(frame, seq, sentNanos);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String infoFields() {
+        return "TRANSPORT=" + IN_PROCESS;
+    }
+
+    @Override
+    public long droppedSpawns() {
+        return 0;
+    }
+}
@@ -0,0 +1,361 @@
+import jakarta.jms.*;
+import org.apache.activemq.ActiveMQConnectionFactory;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publicador JMS con un solo hilo dueño de la sesión y del productor (Session no es
+ * thread-safe). Los demás hilos (bucle de monstruos, PlayerHandler) solo encolan en
+ * una cola acotada sin bloqueos y siguen; el envío ocurre en el hilo del publicador.
+ *
+ * - Apariciones: NON_PERSISTENT y con TTL corto (un monstruo viejo no sirve de nada).
+ *   Si la cola está llena se descartan.
+ * - Mensajes de control (WINNER...): persistentes, sin TTL, y nunca se descartan.
+ * - Actualizaciones periódicas (clasificación): como las apariciones, NON_PERSISTENT
+ *   con TTL y descartables; la siguiente sustituye a la que se pierda.
+ * - Bajo carga (cola con más de batchThreshold elementos) junta hasta maxBatch
+ *   apariciones seguidas en un único mensaje: líneas separadas por '\n' en texto,
+ *   o tramas concatenadas en binario.
+ *
+ * Un mismo publicador puede servir a varios tópicos (uno por sala): cada envío lleva
+ * su tópico y el productor no está atado a ningún destino.
+ *
+ * Las retiradas (CLEAR) viajan como las apariciones. Si una aparición o retirada lleva
+ * número de secuencia ({@link BoardFeed}), el mensaje lo lleva en la propiedad
+ * {@link WireProtocol#SEQ_PROPERTY} y un lote solo junta entradas con números seguidos.
+ * Todos llevan además {@link WireProtocol#SENT_PROPERTY} con el {@link GameClock} del envío.
+ */
+public class JmsPublisher implements AutoCloseable {
+
+    /** Aviso de fin de envío; se ejecuta en el hilo del publicador, así que debe ser breve. */
+    public interface Callback {
+        void onComplete(long latencyMicros, Exception error);
+    }
+
+    private static final byte CONTROL = 0;
+    private static final byte UPDATE = -1;
+
+    // Sin trabajo el hilo duerme hasta que lo despierte un unpark; el plazo es solo de seguridad
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+    // Espera corta de quien publica control con la cola llena, mientras el hilo la vacía
+    private static final long FULL_QUEUE_PARK_NANOS = 200_000L;
+
+    private final Session session;
+    private final Connection connection;
+    private final MessageProducer producer;
+    private final String defaultTopic;
+    // Destinos ya creados, por nombre; solo los toca el hilo del publicador
+    private final Map<String, Topic> topics = new HashMap<>();
+    private final boolean binarySpawns;
+    private final long spawnTtlMillis;
+    private final int maxBatch;
+    private final int batchThreshold;
+    private final BoundedMpscQueue<Publication> queue;
+    private final LatencyRecorder latency = new LatencyRecorder("publish");
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile int peakQueueDepth;
+    private final ByteBuffer frames;
+    private final StringBuilder textBatch = new StringBuilder();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean idle;
+
+    private static final class Publication {
+        // SPAWN, CLEAR, o 0 para los mensajes de control
+        final byte type;
+        final String topic;
+        final int monsterId;
+        final int x;
+        final int y;
+        final int round;
+        final long timestamp;
+        final long seq;
+        final String text;
+        final Callback callback;
+        final long enqueuedNanos = System.nanoTime();
+
+        Publication(byte type, String topic, int monsterId, int x, int y, int round, long timestamp, long seq,
+                    String text, Callback callback) {
+            this.type = type;
+            this.topic = topic;
+            this.monsterId = monsterId;
+            this.x = x;
+            this.y = y;
+            this.round = round;
+            this.timestamp = timestamp;
+            this.seq = seq;
+            this.text = text;
+            this.callback = callback;
+        }
+    }
+
+    /** {@code topic} es el destino de los métodos que no indican uno. */
+    public JmsPublisher(String brokerUrl, String topic, boolean binarySpawns) throws JMSException {
+        this.defaultTopic = topic;
+        this.binarySpawns = binarySpawns;
+        this.spawnTtlMillis = GameConfig.integer("monsters.spawn.ttl", 1000);
+        this.maxBatch = Math.max(1, GameConfig.integer("monsters.publish.batch", 1));
+        this.batchThreshold = GameConfig.integer("monsters.publish.batchThreshold", 16);
+        this.queue = new BoundedMpscQueue<>(GameConfig.integer("monsters.publish.queue", 4096));
+        this.frames = ByteBuffer.allocate(WireProtocol.FRAME_SIZE * maxBatch);
+
+        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(brokerUrl);
+        connection = connectionFactory.createConnection();
+        connection.start();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        producer = session.createProducer(null);
+        producer.setDisableMessageID(true);
+
+        // A partir de aquí la sesión solo la usa el hilo del publicador
+        thread = new Thread(this::run, "jms-publisher-" + topic);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Encola una aparición; devuelve false (y la descarta) si la cola está llena. */
+    public boolean publishSpawn(int monsterId, int x, int y, int round, long timestamp, Callback callback) {
+        return publishSpawn(defaultTopic, monsterId, x, y, round, timestamp, callback);
+    }
+
+    /** Igual que {@link #publishSpawn(int, int, int, int, long, Callback)} pero en el tópico dado. */
+    public boolean publishSpawn(String topic, int monsterId, int x, int y, int round, long timestamp, Callback callback) {
+        return publishSpawn(topic, monsterId, x, y, round, timestamp, 0, callback);
+    }
+
+    /** Aparición con número de secuencia del tablero (0: sin secuencia). */
+    public boolean publishSpawn(String topic, int monsterId, int x, int y, int round, long timestamp, long seq,
+                                Callback callback) {
+        return offer(new Publication(WireProtocol.SPAWN, topic, monsterId, x, y, round, timestamp, seq, null,
+                callback));
+    }
+
+    /** Encola la retirada de un monstruo que alguien se llevó; se descarta como una aparición si no cabe. */
+    public boolean publishClear(String topic, int monsterId, int x, int y, int round, long seq) {
+        return offer(new Publication(WireProtocol.CLEAR, topic, monsterId, x, y, round, 0, seq, null, null));
+    }
+
+    private boolean offer(Publication publication) {
+        if (!queue.offer(publication)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        wakeUp();
+        return true;
+    }
+
+    /** Encola una actualización de texto que la siguiente deja obsoleta; false (descartada) si no cabe. */
+    public boolean publishUpdate(String topic, String text) {
+        if (!queue.offer(new Publication(UPDATE, topic, 0, 0, 0, 0, 0, 0, text, null))) return false;
+        wakeUp();
+        return true;
+    }
+
+    /** Encola un mensaje de control; si la cola está llena espera a que haya sitio. */
+    public void publishText(String text, Callback callback) {
+        publishText(defaultTopic, text, callback);
+    }
+
+    /** Igual que {@link #publishText(String, Callback)} pero en el tópico dado. */
+    public void publishText(String topic, String text, Callback callback) {
+        Publication publication = new Publication(CONTROL, topic, 0, 0, 0, 0, 0, 0, text, callback);
+        while (!queue.offer(publication)) {
+            if (!running) return;
+            wakeUp();
+            LockSupport.parkNanos(FULL_QUEUE_PARK_NANOS);
+        }
+        wakeUp();
+    }
+
+    /** Si las apariciones y retiradas salen como tramas binarias. */
+    public boolean binarySpawns() {
+        return binarySpawns;
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    /** Mayor profundidad de cola vista por el hilo del publicador desde el último reset. */
+    public int peakQueueDepth() {
+        return peakQueueDepth;
+    }
+
+    public void resetStats() {
+        latency.reset();
+        peakQueueDepth = 0;
+        dropped.set(0);
+    }
+
+    public long droppedSpawns() {
+        return dropped.get();
+    }
+
+    /** Latencia desde que se encola hasta que el broker acepta el envío (µs). */
+    public LatencyRecorder latency() {
+        return latency;
+    }
+
+    /** Envía lo que quede en la cola y cierra la conexión. */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void wakeUp() {
+        if (idle) LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        while (true) {
+            int depth = queue.size();
+            if (depth > peakQueueDepth) peakQueueDepth = depth;
+            Publication publication = queue.poll();
+            if (publication == null) {
+                if (!running) break;
+                idle = true;
+                // Volvemos a mirar tras marcar idle para no perder un unpark
+                if (queue.peek() == null) LockSupport.parkNanos(IDLE_PARK_NANOS);
+                idle = false;
+                continue;
+            }
+            if (isDelta(publication.type) && maxBatch > 1 && queue.size() >= batchThreshold) {
+                sendSpawnBatch(publication);
+            } else {
+                send(publication);
+            }
+        }
+        try {
+            connection.close();
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void send(Publication publication) {
+        Exception error = null;
+        try {
+            if (isDelta(publication.type)) {
+                Message message;
+                if (binarySpawns) {
+                    frames.clear();
+                    encodeFrame(publication);
+                    message = bytesMessage();
+                } else {
+                    message = session.createTextMessage(text(publication));
+                }
+                if (publication.seq > 0) message.setLongProperty(WireProtocol.SEQ_PROPERTY, publication.seq);
+                message.setLongProperty(WireProtocol.SENT_PROPERTY, GameClock.nowNanos());
+                producer.send(topic(publication.topic), message, DeliveryMode.NON_PERSISTENT,
+                        Message.DEFAULT_PRIORITY, spawnTtlMillis);
+            } else if (publication.type == UPDATE) {
+                producer.send(topic(publication.topic), session.createTextMessage(publication.text),
+                        DeliveryMode.NON_PERSISTENT, Message.DEFAULT_PRIORITY, spawnTtlMillis);
+            } else {
+                producer.send(topic(publication.topic), session.createTextMessage(publication.text),
+                        DeliveryMode.PERSISTENT, Message.DEFAULT_PRIORITY, Message.DEFAULT_TIME_TO_LIVE);
+            }
+        } catch (JMSException e) {
+            error = e;
+            e.printStackTrace();
+        }
+        complete(publication, error);
+    }
+
+    // Junta en un mensaje la aparición dada y las que le sigan en la cola para el mismo tópico (hasta maxBatch);
+    // con secuencia, solo mientras los números vayan seguidos
+    private void sendSpawnBatch(Publication first) {
+        Publication[] batch = new Publication[maxBatch];
+        int count = 0;
+        batch[count++] = first;
+        Publication next;
+        while (count < maxBatch && (next = queue.peek()) != null && isDelta(next.type)
+                && next.topic.equals(first.topic)
+                && (first.seq == 0 ? next.seq == 0 : next.seq == batch[count - 1].seq + 1)) {
+            batch[count++] = queue.poll();
+        }
+
+        Exception error = null;
+        try {
+            Message message;
+            if (binarySpawns) {
+                frames.clear();
+                for (int i = 0; i < count; i++) {
+                    encodeFrame(batch[i]);
+                }
+                message = bytesMessage();
+            } else {
+                textBatch.setLength(0);
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) textBatch.append('\n');
+                    textBatch.append(text(batch[i]));
+                }
+                message = session.createTextMessage(textBatch.toString());
+            }
+            if (first.seq > 0) message.setLongProperty(WireProtocol.SEQ_PROPERTY, first.seq);
+            // Justo antes de enviar: el cliente mide la entrega con su desfase al servidor
+            message.setLongProperty(WireProtocol.SENT_PROPERTY, GameClock.nowNanos());
+            producer.send(topic(first.topic), message, DeliveryMode.NON_PERSISTENT,
+                    Message.DEFAULT_PRIORITY, spawnTtlMillis);
+        } catch (JMSException e) {
+            error = e;
+            e.printStackTrace();
+        }
+        for (int i = 0; i < count; i++) {
+            complete(batch[i], error);
+        }
+    }
+
+    private Topic topic(String name) throws JMSException {
+        Topic topic = topics.get(name);
+        if (topic == null) {
+            topic = session.createTopic(name);
+            topics.put(name, topic);
+        }
+        return topic;
+    }
+
+    private static boolean isDelta(byte type) {
+        return type == WireProtocol.SPAWN || type == WireProtocol.CLEAR;
+    }
+
+    private static String text(Publication publication) {
+        if (publication.type == WireProtocol.CLEAR) {
+            return WireProtocol.clearText(publication.monsterId, publication.x, publication.y, publication.round);
+        }
+        return WireProtocol.spawnText(publication.monsterId, publication.x, publication.y, publication.round,
+                publication.timestamp);
+    }
+
+    private void encodeFrame(Publication publication) {
+        WireProtocol.encode(frames, publication.type, publication.monsterId, publication.x, publication.y,
+                publication.round, publication.timestamp);
+    }
+
+    private BytesMessage bytesMessage() throws JMSException {
+        BytesMessage bytes = session.createBytesMessage();
+        bytes.writeBytes(frames.array(), 0, frames.position());
+        return bytes;
+    }
+
+    private void complete(Publication publication, Exception error) {
+        long micros = (System.nanoTime() - publication.enqueuedNanos) / 1000;
+        latency.record(micros);
+        if (publication.callback != null) {
+            try {
+                publication.callback.onComplete(micros, error);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
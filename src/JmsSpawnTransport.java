@@ -0,0 +1,40 @@
+/**
+ * Deltas por el tópico JMS de la sala, a través del {@link JmsPublisher} del servidor:
+ * su cola acotada, sus lotes bajo carga y sus propiedades "seq" y "sent". El publicador
+ * es del servidor, que lo sigue usando para el control; este transporte no lo cierra.
+ */
+public class JmsSpawnTransport implements SpawnTransport {
+
+    private final JmsPublisher publisher;
+
+    public JmsSpawnTransport(JmsPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @Override
+    public boolean publish(String topic, byte type, int monsterId, int x, int y, int round, long timestamp, long seq) {
+        if (type == WireProtocol.CLEAR) return publisher.publishClear(topic, monsterId, x, y, round, seq);
+        return publisher.publishSpawn(topic, monsterId, x, y, round, timestamp, seq, null);
+    }
+
+    // Las tramas binarias van en BytesMessage, que los clientes viejos ignoran
+    @Override
+    public boolean carriesClears() {
+        return publisher.binarySpawns();
+    }
+
+    @Override
+    public String infoFields() {
+        return "TRANSPORT=" + JMS;
+    }
+
+    @Override
+    public int queueDepth() {
+        return publisher.queueDepth();
+    }
+
+    @Override
+    public long droppedSpawns() {
+        return publisher.droppedSpawns();
+    }
+}
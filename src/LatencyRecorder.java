@@ -0,0 +1,166 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias sin bloqueos y de memoria fija, al estilo HdrHistogram.
+ *
+ * Los valores (en microsegundos) se agrupan en buckets log-lineales: exactos hasta 127
+ * y luego 64 sub-buckets por potencia de 2, lo que da ~1.6% de error relativo en
+ * cualquier rango. Cada hilo escribe en una de varias franjas (elegida por su id),
+ * así que los hilos casi nunca comparten contador; las franjas se suman al pedir un
+ * {@link Snapshot}. La memoria no depende del número de hilos, lo que importa con
+ * hilos virtuales.
+ */
+public class LatencyRecorder {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Long.MAX_VALUE cae en el índice 56 * 64 + 127, el último. */
+    static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+    private final LongAdder sum = new LongAdder();
+    private final DoubleAdder sumOfSquares = new DoubleAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyRecorder(String name) {
+        this.name = name;
+        int stripeCount = Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors() * 2) * 2 - 1);
+        this.stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /** Registra un valor en microsegundos (los negativos cuentan como 0). */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        stripes[(int) Thread.currentThread().threadId() & stripeMask].getAndIncrement(bucketIndex(value));
+        sum.add(value);
+        sumOfSquares.add((double) value * value);
+        max.accumulate(value);
+    }
+
+    /** Registra el tiempo transcurrido desde {@code startNanos} (de System.nanoTime()). */
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                stripe.set(i, 0);
+            }
+        }
+        sum.reset();
+        sumOfSquares.reset();
+        max.reset();
+    }
+
+    /** Suma todas las franjas en una copia inmutable. */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long c = stripe.get(i);
+                counts[i] += c;
+                total += c;
+            }
+        }
+        return new Snapshot(counts, total, sum.sum(), sumOfSquares.sum(), max.get());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /** Mayor valor que cae en el bucket (así los percentiles nunca se subestiman). */
+    static long bucketUpperBound(int index) {
+        if (index < 2 * SUB_BUCKETS) return index;
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        long subBucket = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /** Copia de los contadores en un instante dado. */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final double sumOfSquares;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, double sumOfSquares, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.sumOfSquares = sumOfSquares;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0.0 : sum / (double) count;
+        }
+
+        public double stdDev() {
+            if (count == 0) return 0.0;
+            double mean = mean();
+            return Math.sqrt(Math.max(0.0, sumOfSquares / count - mean * mean));
+        }
+
+        /** Percentil (0-100) en microsegundos. */
+        public long percentile(double percentile) {
+            if (count == 0) return 0;
+            long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) return Math.min(bucketUpperBound(i), max);
+            }
+            return max;
+        }
+
+        /** Contadores crudos por bucket, para guardarlos o combinarlos. */
+        public long[] counts() {
+            return counts.clone();
+        }
+
+        long sum() {
+            return sum;
+        }
+
+        double sumOfSquares() {
+            return sumOfSquares;
+        }
+
+        /** Suma de los dos histogramas, p. ej. para juntar varias ejecuciones de la misma configuración. */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = counts.clone();
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] += other.counts[i];
+            }
+            return new Snapshot(merged, count + other.count, sum + other.sum, sumOfSquares + other.sumOfSquares,
+                    Math.max(max, other.max));
+        }
+    }
+}
@@ -0,0 +1,255 @@
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Clasificación de una partida, mantenida golpe a golpe sin ordenar nunca el marcador.
+ *
+ * En el camino de los golpes ({@link #scored}) solo hay dos contadores atómicos y un
+ * bit: los puntos de una ronda van de uno en uno hasta la condición de victoria, así
+ * que basta un cubo por puntuación con cuántos jugadores la tienen. El puesto de un
+ * jugador es 1 + los jugadores de los cubos de encima: como mucho unas decenas de
+ * sumas, da igual cuántos jugadores haya. El golpe además marca el slot en un bitset
+ * de "cambiados".
+ *
+ * A ritmo fijo (-Dmonsters.leaderboard.millis, 1000; 0 = sin clasificación) el hilo
+ * que dispara las apariciones llama a {@link #tick(long)}, que recoge los cambiados,
+ * actualiza el top-K (en una ronda los puntos solo suben, así que solo puede entrar
+ * en el top quien acaba de puntuar) y publica en {@code <tópico>.leaderboard} un
+ * mensaje de texto, NON_PERSISTENT y descartable:
+ *   SCORES <ronda> <nodo> <jugadores> <puntos>:<jugadores> ...   cubos no vacíos, de mayor a menor
+ *   TOP <puesto> <puntos> <nombre>                               los monsters.leaderboard.top (10) primeros
+ *   RANK <puesto> <puntos> <nombre>                              cada jugador que puntuó desde el anterior
+ * Varios golpes de un jugador entre dos mensajes dan una sola línea RANK. Sin cambios
+ * no se publica nada, salvo un recordatorio cada {@link #KEEPALIVE_PERIODS} periodos
+ * para quien se acaba de suscribir. Las líneas RANK se pueden quitar con
+ * -Dmonsters.leaderboard.ranks=false y van en mensajes de como mucho
+ * {@link #RANKS_PER_MESSAGE}.
+ *
+ * En un clúster cada nodo publica la clasificación de sus jugadores con su id en
+ * SCORES; el cliente suma los cubos de todos los nodos para su puesto global y junta
+ * los TOP para el top global. Puntuaciones por encima de la condición de victoria más
+ * {@link #OVERSHOOT} comparten el último cubo.
+ */
+public class Leaderboard {
+
+    public static final String TOPIC_SUFFIX = ".leaderboard";
+    static final int RANKS_PER_MESSAGE = 1024;
+    static final int KEEPALIVE_PERIODS = 10;
+    // Golpes que pueden entrar a la vez que el que gana la ronda
+    private static final int OVERSHOOT = 64;
+
+    private final ScoreBoard scoreBoard;
+    private final JmsPublisher publisher;
+    private final String topic;
+    private final String node;
+    private final long periodNanos;
+    private final int topSize;
+    private final boolean ranks;
+    private final int bucketCount;
+    private final AtomicReference<Buckets> current;
+    private final AtomicLongArray changed;
+
+    // Solo del hilo que publica
+    private final int[] topSlots;
+    private final int[] topScores;
+    private int topCount;
+    private int topRound;
+    private int[] drained = new int[64];
+    private final int[] counts;
+    private final int[] above;
+    private final StringBuilder text = new StringBuilder();
+    private long nextBroadcastNanos;
+    private int quietPeriods;
+
+    public Leaderboard(ScoreBoard scoreBoard, int winCondition, JmsPublisher publisher, String gameTopic, String node,
+                       long periodMillis, int topSize, boolean ranks) {
+        this.scoreBoard = scoreBoard;
+        this.publisher = publisher;
+        this.topic = gameTopic + TOPIC_SUFFIX;
+        this.node = node;
+        this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        this.topSize = Math.max(1, topSize);
+        this.ranks = ranks;
+        this.bucketCount = Math.max(1, winCondition) + OVERSHOOT + 1;
+        this.current = new AtomicReference<>(new Buckets(scoreBoard.round(), bucketCount));
+        this.changed = new AtomicLongArray((scoreBoard.capacity() + 63) / 64);
+        this.topSlots = new int[this.topSize];
+        this.topScores = new int[this.topSize];
+        this.counts = new int[bucketCount];
+        this.above = new int[bucketCount];
+        this.topRound = scoreBoard.round();
+        this.nextBroadcastNanos = System.nanoTime() + periodNanos;
+        // Jugadores recuperados del diario: entran sin pasar por scored()
+        Buckets restored = current.get();
+        for (int slot = 0; slot < scoreBoard.playerCount(); slot++) {
+            int score = scoreBoard.score(slot);
+            if (score <= 0) continue;
+            restored.counts.incrementAndGet(bucket(score));
+            markChanged(slot);
+        }
+    }
+
+    /**
+     * -Dmonsters.leaderboard.millis (1000; 0 = desactivada), -Dmonsters.leaderboard.top (10),
+     * -Dmonsters.leaderboard.ranks (true). {@code node} identifica al nodo en SCORES.
+     */
+    public static Leaderboard fromConfig(ScoreBoard scoreBoard, int winCondition, JmsPublisher publisher,
+                                         String gameTopic, String node) {
+        return new Leaderboard(scoreBoard, winCondition, publisher, gameTopic, node,
+                GameConfig.integer("monsters.leaderboard.millis", 1000),
+                GameConfig.integer("monsters.leaderboard.top", 10),
+                GameConfig.flag("monsters.leaderboard.ranks", true));
+    }
+
+    public boolean enabled() {
+        return periodNanos > 0;
+    }
+
+    /** Un golpe que puntuó, con el ticket de {@link ScoreBoard#hit(int)}; desde cualquier hilo. */
+    public void scored(int slot, long ticket) {
+        if (periodNanos <= 0) return;
+        int round = ScoreBoard.roundOf(ticket);
+        Buckets buckets = advance(round);
+        // Golpe de una ronda que ya se cerró: no cuenta en la nueva
+        if (buckets.round != round) return;
+        int score = ScoreBoard.scoreOf(ticket);
+        buckets.counts.incrementAndGet(bucket(score));
+        if (score > 1) buckets.counts.decrementAndGet(bucket(score - 1));
+        markChanged(slot);
+    }
+
+    /** Instante (System.nanoTime()) de la próxima publicación, o {@code orElse} si está desactivada. */
+    public long nextBroadcastNanos(long orElse) {
+        return periodNanos > 0 ? nextBroadcastNanos : orElse;
+    }
+
+    /** Publica si ya toca. Siempre desde el mismo hilo. */
+    public void tick(long now) {
+        if (periodNanos <= 0 || now - nextBroadcastNanos < 0) return;
+        nextBroadcastNanos += periodNanos;
+        // Tras una pausa larga no se publican los periodos perdidos
+        if (now - nextBroadcastNanos >= 0) nextBroadcastNanos = now + periodNanos;
+        broadcast();
+    }
+
+    private void broadcast() {
+        int round = scoreBoard.round();
+        Buckets buckets = advance(round);
+        boolean newRound = round != topRound;
+        if (newRound) {
+            topRound = round;
+            topCount = 0;
+        }
+        int drainedCount = drainChanged();
+        if (drainedCount == 0 && !newRound && ++quietPeriods < KEEPALIVE_PERIODS) return;
+        quietPeriods = 0;
+
+        // Foto de los cubos después de recoger los cambiados: sus puestos ya los cuentan
+        int total = 0;
+        for (int score = bucketCount - 1; score > 0; score--) {
+            counts[score] = buckets.round == round ? Math.max(0, buckets.counts.get(score)) : 0;
+            above[score] = total;
+            total += counts[score];
+        }
+        for (int i = 0; i < drainedCount; i++) {
+            int slot = drained[i];
+            int score = scoreBoard.score(slot);
+            if (score > 0) updateTop(slot, score);
+        }
+
+        text.setLength(0);
+        text.append("SCORES ").append(round).append(' ').append(node).append(' ').append(scoreBoard.playerCount());
+        for (int score = bucketCount - 1; score > 0; score--) {
+            if (counts[score] > 0) text.append(' ').append(score).append(':').append(counts[score]);
+        }
+        for (int i = 0; i < topCount; i++) {
+            text.append("\nTOP ").append(i + 1).append(' ').append(topScores[i]).append(' ')
+                    .append(scoreBoard.name(topSlots[i]));
+        }
+        int lines = 0;
+        for (int i = 0; ranks && i < drainedCount; i++) {
+            int slot = drained[i];
+            int score = scoreBoard.score(slot);
+            if (score <= 0) continue;
+            if (lines == RANKS_PER_MESSAGE) {
+                publisher.publishUpdate(topic, text.toString());
+                text.setLength(0);
+                lines = 0;
+            }
+            if (text.length() > 0) text.append('\n');
+            text.append("RANK ").append(1 + above[bucket(score)]).append(' ').append(score).append(' ')
+                    .append(scoreBoard.name(slot));
+            lines++;
+        }
+        if (text.length() > 0) publisher.publishUpdate(topic, text.toString());
+    }
+
+    // Recoge y borra los slots marcados; ordenados por slot
+    private int drainChanged() {
+        int count = 0;
+        for (int word = 0; word < changed.length(); word++) {
+            if (changed.get(word) == 0) continue;
+            long bits = changed.getAndSet(word, 0);
+            while (bits != 0) {
+                if (count == drained.length) drained = Arrays.copyOf(drained, count * 2);
+                drained[count++] = word * 64 + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        return count;
+    }
+
+    // Los puntos solo suben dentro de una ronda: el jugador sube o entra; en empate va detrás de quien llegó antes
+    private void updateTop(int slot, int score) {
+        for (int i = 0; i < topCount; i++) {
+            if (topSlots[i] != slot) continue;
+            if (topScores[i] >= score) return;
+            System.arraycopy(topSlots, i + 1, topSlots, i, topCount - i - 1);
+            System.arraycopy(topScores, i + 1, topScores, i, topCount - i - 1);
+            topCount--;
+            break;
+        }
+        if (topCount == topSize && topScores[topCount - 1] >= score) return;
+        int position = 0;
+        while (position < topCount && topScores[position] >= score) position++;
+        int moved = Math.min(topCount, topSize - 1) - position;
+        System.arraycopy(topSlots, position, topSlots, position + 1, moved);
+        System.arraycopy(topScores, position, topScores, position + 1, moved);
+        topSlots[position] = slot;
+        topScores[position] = score;
+        if (topCount < topSize) topCount++;
+    }
+
+    private Buckets advance(int round) {
+        while (true) {
+            Buckets buckets = current.get();
+            if (buckets.round >= round) return buckets;
+            current.compareAndSet(buckets, new Buckets(round, bucketCount));
+        }
+    }
+
+    private int bucket(int score) {
+        return Math.min(score, bucketCount - 1);
+    }
+
+    private void markChanged(int slot) {
+        int word = slot >>> 6;
+        long bit = 1L << (slot & 63);
+        // Sin escritura si ya estaba marcado: los golpes seguidos de un jugador no compiten por la línea
+        if ((changed.get(word) & bit) == 0) changed.getAndAccumulate(word, bit, (bits, b) -> bits | b);
+    }
+
+    /** Cuántos jugadores tienen cada puntuación en una ronda; el índice 0 no se usa. */
+    private static final class Buckets {
+        final int round;
+        final AtomicIntegerArray counts;
+
+        Buckets(int round, int size) {
+            this.round = round;
+            this.counts = new AtomicIntegerArray(size);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monstruos vivos del tablero de 9x9, para aceptar solo golpes a monstruos que existen.
+ *
+ * La ocupación de las 81 celdas cabe en dos longs (celdas 0-63 y 64-80): un golpe a
+ * una celda vacía se descarta con una sola lectura, sin tocar el marcador. Cada celda
+ * guarda además el id del monstruo vivo; el primer golpe que hace el CAS id -> vacío
+ * se lo queda, así que cada monstruo puntúa una sola vez aunque lleguen golpes a la
+ * vez desde varios hilos.
+ *
+ * La caducidad va en una rueda de tiempos (hashed timing wheel) con ticks de 10 ms:
+ * programar y vencer un monstruo es O(1) y no hay un Timer por monstruo. La rueda
+ * tiene más ranuras que ticks dura un monstruo, así que no hace falta contar vueltas.
+ *
+ * {@link #add} y {@link #expire} los llama un único hilo (el que lanza los monstruos);
+ * {@link #claim} y las lecturas del tablero ({@link BoardSnapshot}) se pueden llamar
+ * desde cualquiera.
+ */
+public class LiveMonsterIndex {
+
+    public static final int SIZE = 9;
+    public static final int CELLS = SIZE * SIZE;
+    private static final int EMPTY = -1;
+    private static final long ROW_BITS = (1L << SIZE) - 1;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // Ocupación: bit c de low (c < 64) o bit c - 64 de high
+    private final AtomicLong low = new AtomicLong();
+    private final AtomicLong high = new AtomicLong();
+    private final AtomicIntegerArray ids = new AtomicIntegerArray(CELLS);
+    // Instante (System.nanoTime()) en que caduca el monstruo de cada celda
+    private final AtomicLongArray deadlines = new AtomicLongArray(CELLS);
+    private final LongAdder rejected = new LongAdder();
+
+    // Rueda de tiempos: solo la toca el hilo que lanza los monstruos
+    private final long lifetimeNanos;
+    private final long[][] wheel;
+    private final int[] wheelCounts;
+    private final int wheelMask;
+    private long currentTick;
+    private int pending;
+
+    public LiveMonsterIndex(long lifetimeMillis) {
+        this.lifetimeNanos = TimeUnit.MILLISECONDS.toNanos(lifetimeMillis);
+        int slots = Integer.highestOneBit((int) (lifetimeNanos / TICK_NANOS + 2) * 2 - 1);
+        this.wheel = new long[slots][4];
+        this.wheelCounts = new int[slots];
+        this.wheelMask = slots - 1;
+        this.currentTick = Math.floorDiv(System.nanoTime(), TICK_NANOS);
+        for (int i = 0; i < CELLS; i++) {
+            ids.set(i, EMPTY);
+        }
+    }
+
+    /** Vida de un monstruo en el servidor: 1 s en pantalla más margen de red (monsters.monster.lifetime). */
+    public static LiveMonsterIndex fromConfig() {
+        return new LiveMonsterIndex(GameConfig.integer("monsters.monster.lifetime", 1500));
+    }
+
+    /** ¿Se validan los golpes? Con -Dmonsters.hits.validate=false cualquier golpe puntúa, como antes. */
+    public static boolean validationEnabled() {
+        return GameConfig.flag("monsters.hits.validate", true);
+    }
+
+    /** Registra un monstruo recién lanzado; reemplaza al que hubiera en la celda. */
+    public void add(int id, int x, int y, long nowNanos) {
+        expire(nowNanos);
+        int cell = x * SIZE + y;
+        deadlines.set(cell, nowNanos + lifetimeNanos);
+        ids.set(cell, id);
+        setBit(cell);
+
+        long deadlineTick = Math.floorDiv(nowNanos + lifetimeNanos, TICK_NANOS) + 1;
+        int slot = (int) (deadlineTick & wheelMask);
+        int count = wheelCounts[slot];
+        if (count == wheel[slot].length) {
+            wheel[slot] = Arrays.copyOf(wheel[slot], count * 2);
+        }
+        wheel[slot][count] = ((long) id << 8) | cell;
+        wheelCounts[slot] = count + 1;
+        pending++;
+    }
+
+    /** Avanza la rueda hasta {@code nowNanos} y retira los monstruos vencidos. */
+    public void expire(long nowNanos) {
+        long target = Math.floorDiv(nowNanos, TICK_NANOS);
+        // Tras una pausa larga basta con recorrer la rueda una vez
+        long from = Math.max(currentTick + 1, target - wheelMask);
+        for (long tick = from; tick <= target && pending > 0; tick++) {
+            int slot = (int) (tick & wheelMask);
+            long[] entries = wheel[slot];
+            for (int i = 0; i < wheelCounts[slot]; i++) {
+                remove((int) (entries[i] & 0xFF), (int) (entries[i] >>> 8));
+            }
+            pending -= wheelCounts[slot];
+            wheelCounts[slot] = 0;
+        }
+        if (target > currentTick) currentTick = target;
+    }
+
+    /** Instante (System.nanoTime()) del próximo vencimiento, o {@code orElse} si no queda ninguno. */
+    public long nextExpiryNanos(long orElse) {
+        if (pending == 0) return orElse;
+        for (long tick = currentTick + 1; tick <= currentTick + wheelMask + 1; tick++) {
+            if (wheelCounts[(int) (tick & wheelMask)] > 0) return tick * TICK_NANOS;
+        }
+        return orElse;
+    }
+
+    /**
+     * Intenta quedarse con el monstruo golpeado. {@code y} o {@code id} negativos son
+     * golpes de clientes viejos: sin id vale cualquier monstruo de la celda, y sin
+     * columna cualquiera de la fila. Devuelve false (y cuenta el rechazo) si no hay un
+     * monstruo vivo que encaje o si otro jugador se lo llevó antes.
+     */
+    public boolean claim(int x, int y, int id) {
+        if (x < 0 || x >= SIZE || y >= SIZE) {
+            rejected.increment();
+            return false;
+        }
+        if (y < 0) return claimInRow(x);
+        int cell = x * SIZE + y;
+        if (!isLive(cell)) {
+            rejected.increment();
+            return false;
+        }
+        int live = ids.get(cell);
+        if (live == EMPTY || (id >= 0 && live != id) || !ids.compareAndSet(cell, live, EMPTY)) {
+            rejected.increment();
+            return false;
+        }
+        clearBit(cell);
+        return true;
+    }
+
+    /**
+     * Retira un monstruo que se llevó un jugador de otro nodo del clúster. Como
+     * {@link #claim} con id y columna, pero un fallo (ya retirado aquí) no cuenta como
+     * golpe rechazado.
+     */
+    public boolean removeClaimed(int x, int y, int id) {
+        if (x < 0 || x >= SIZE || y < 0 || y >= SIZE) return false;
+        int cell = x * SIZE + y;
+        if (!isLive(cell)) return false;
+        int live = ids.get(cell);
+        if (live == EMPTY || live != id || !ids.compareAndSet(cell, live, EMPTY)) return false;
+        clearBit(cell);
+        return true;
+    }
+
+    /** Ocupación de las celdas 0-63 (bit c = celda c). */
+    public long occupiedLow() {
+        return low.get();
+    }
+
+    /** Ocupación de las celdas 64-80 (bit c - 64). */
+    public long occupiedHigh() {
+        return high.get();
+    }
+
+    /** Id del monstruo vivo en la celda, o -1 si está vacía. */
+    public int idAt(int cell) {
+        return ids.get(cell);
+    }
+
+    /** Instante (System.nanoTime()) en que caduca el monstruo de la celda. */
+    public long deadlineAt(int cell) {
+        return deadlines.get(cell);
+    }
+
+    /** Instante (System.nanoTime()) en que apareció el monstruo de la celda; sigue valiendo tras {@link #claim}. */
+    public long spawnedAt(int cell) {
+        return deadlines.get(cell) - lifetimeNanos;
+    }
+
+    public int liveCount() {
+        return Long.bitCount(low.get()) + Long.bitCount(high.get());
+    }
+
+    /** Golpes descartados (celda vacía, id que no coincide o monstruo ya reclamado). */
+    public long rejectedHits() {
+        return rejected.sum();
+    }
+
+    private boolean claimInRow(int x) {
+        int first = x * SIZE;
+        // Máscara de la fila sobre cada mitad; la fila 7 (celdas 63-71) cae en las dos
+        long lowMask = first < 64 ? ROW_BITS << first : 0;
+        long highMask = first + SIZE <= 64 ? 0 : (first >= 64 ? ROW_BITS << (first - 64) : ROW_BITS >>> (64 - first));
+        long candidates = low.get() & lowMask;
+        while (candidates != 0) {
+            int cell = Long.numberOfTrailingZeros(candidates);
+            if (claimAny(cell)) return true;
+            candidates &= candidates - 1;
+        }
+        candidates = high.get() & highMask;
+        while (candidates != 0) {
+            int cell = 64 + Long.numberOfTrailingZeros(candidates);
+            if (claimAny(cell)) return true;
+            candidates &= candidates - 1;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    private boolean claimAny(int cell) {
+        int live = ids.get(cell);
+        if (live == EMPTY || !ids.compareAndSet(cell, live, EMPTY)) return false;
+        clearBit(cell);
+        return true;
+    }
+
+    // Vencimiento: solo si la celda sigue teniendo ese monstruo
+    private void remove(int cell, int id) {
+        if (ids.compareAndSet(cell, id, EMPTY)) clearBit(cell);
+    }
+
+    private boolean isLive(int cell) {
+        return cell < 64 ? (low.get() & (1L << cell)) != 0 : (high.get() & (1L << (cell - 64))) != 0;
+    }
+
+    private void setBit(int cell) {
+        (cell < 64 ? low : high).accumulateAndGet(1L << (cell & 63), (bits, bit) -> bits | bit);
+    }
+
+    private void clearBit(int cell) {
+        (cell < 64 ? low : high).accumulateAndGet(1L << (cell & 63), (bits, bit) -> bits & ~bit);
+        // Si entretanto se lanzó otro monstruo en la celda, su bit debe seguir puesto
+        if (ids.get(cell) != EMPTY) setBit(cell);
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Escenario de carga para {@link StressReceiver} y {@link BotEngine}: cuántos jugadores
+ * llegan, a qué ritmo, cuántos golpes por segundo y con qué tiempos de reacción.
+ *
+ * Se lee de un .properties (primer argumento) y cada clave se puede sobrescribir con
+ * -Dmonsters.load.<clave>. Claves:
+ *   host, port          servidor de registro (localhost:5000)
+ *   clients             conexiones en total (500)
+ *   arrivalRate         conexiones por segundo una vez terminada la rampa (100)
+ *   ramp                constant | linear (linear)
+ *   rampSeconds         duración de la rampa lineal desde 0 hasta arrivalRate (10)
+ *   hitRate             golpes por segundo objetivo, sumando todos los jugadores (200; solo StressReceiver)
+ *   attention           fracción de apariciones a las que va cada bot (1; solo BotEngine)
+ *   rooms               salas entre las que se reparten los bots, "bots-<n>" (0 = la que asigne el servidor)
+ *   missRatio           fracción de golpes a una celda equivocada (0)
+ *   reaction            fixed:<ms> | uniform:<min>:<max> | exponential:<media>
+ *                       | lognormal:<mediana>:<sigma> (lognormal:250:0.5)
+ *   durationSeconds     duración de la prueba (60)
+ *   protocol            text | binary | auto (auto: binario si el servidor lo anuncia)
+ *   stopOnWinner        termina al recibir WINNER (true)
+ *   seed                semilla de los golpes, reacciones y fallos (al azar, se imprime)
+ */
+public class LoadScenario {
+
+    public final String host;
+    public final int port;
+    public final int clients;
+    public final double arrivalRate;
+    public final boolean linearRamp;
+    public final double rampSeconds;
+    public final double hitRate;
+    public final double missRatio;
+    public final double attention;
+    public final int rooms;
+    public final Reaction reaction;
+    public final long durationSeconds;
+    public final String protocol;
+    public final boolean stopOnWinner;
+    public final long seed;
+
+    private final Properties properties;
+
+    private LoadScenario(Properties properties) {
+        this.properties = properties;
+        this.host = get("host", "localhost");
+        this.port = Integer.parseInt(get("port", "5000"));
+        this.clients = Integer.parseInt(get("clients", "500"));
+        this.arrivalRate = Double.parseDouble(get("arrivalRate", "100"));
+        this.linearRamp = get("ramp", "linear").equalsIgnoreCase("linear");
+        this.rampSeconds = Double.parseDouble(get("rampSeconds", "10"));
+        this.hitRate = Double.parseDouble(get("hitRate", "200"));
+        this.missRatio = Double.parseDouble(get("missRatio", "0"));
+        this.attention = Double.parseDouble(get("attention", "1"));
+        this.rooms = Integer.parseInt(get("rooms", "0"));
+        this.reaction = Reaction.parse(get("reaction", "lognormal:250:0.5"));
+        this.durationSeconds = Long.parseLong(get("durationSeconds", "60"));
+        this.protocol = get("protocol", "auto").toLowerCase();
+        this.stopOnWinner = Boolean.parseBoolean(get("stopOnWinner", "true"));
+        this.seed = Long.parseLong(get("seed", String.valueOf(ThreadLocalRandom.current().nextLong())));
+    }
+
+    /** Carga el escenario del fichero dado (o solo de -Dmonsters.load.* si es null). */
+    public static LoadScenario load(String path) throws IOException {
+        Properties properties = new Properties();
+        if (path != null) {
+            try (InputStream in = new FileInputStream(path)) {
+                properties.load(in);
+            }
+        }
+        return new LoadScenario(properties);
+    }
+
+    private String get(String key, String defaultValue) {
+        return GameConfig.string("monsters.load." + key, properties.getProperty(key, defaultValue).trim());
+    }
+
+    /**
+     * Instante previsto (ns desde el inicio) de la conexión número {@code i}. Es un
+     * horario fijo: si el generador se retrasa, las conexiones siguen contando desde
+     * aquí y el retraso aparece en la latencia en vez de esconderse.
+     */
+    public long arrivalOffsetNanos(int i) {
+        double seconds;
+        double rampArrivals = arrivalRate * rampSeconds / 2;
+        if (!linearRamp || rampSeconds <= 0) {
+            seconds = i / arrivalRate;
+        } else if (i <= rampArrivals) {
+            // Llegadas acumuladas en la rampa: r t² / 2T, despejando t
+            seconds = Math.sqrt(2 * rampSeconds * i / arrivalRate);
+        } else {
+            seconds = rampSeconds + (i - rampArrivals) / arrivalRate;
+        }
+        return (long) (seconds * 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return clients + " clients to " + host + ":" + port + ", " + arrivalRate + " conn/s ("
+                + (linearRamp ? "linear ramp " + rampSeconds + " s" : "constant") + "), " + hitRate
+                + " hits/s, reaction " + reaction + ", miss " + missRatio + ", attention " + attention
+                + (rooms > 0 ? ", " + rooms + " rooms" : "") + ", " + durationSeconds + " s, protocol " + protocol
+                + ", seed " + seed;
+    }
+
+    /** Distribución del tiempo de reacción de un jugador, en milisegundos. */
+    public static final class Reaction {
+        private final String kind;
+        private final double a;
+        private final double b;
+
+        private Reaction(String kind, double a, double b) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+        }
+
+        static Reaction parse(String spec) {
+            String[] parts = spec.split(":");
+            double a = parts.length > 1 ? Double.parseDouble(parts[1]) : 0;
+            double b = parts.length > 2 ? Double.parseDouble(parts[2]) : 0;
+            switch (parts[0]) {
+                case "fixed":
+                case "uniform":
+                case "exponential":
+                case "lognormal":
+                    return new Reaction(parts[0], a, b);
+                default:
+                    throw new IllegalArgumentException("Distribución de reacción desconocida: " + spec);
+            }
+        }
+
+        public double sampleMillis(Random random) {
+            switch (kind) {
+                case "fixed":
+                    return a;
+                case "uniform":
+                    return a + random.nextDouble() * (b - a);
+                case "exponential":
+                    return -a * Math.log(1 - random.nextDouble());
+                default:
+                    // lognormal: a es la mediana y b la desviación del logaritmo
+                    return a * Math.exp(b * random.nextGaussian());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return kind + ":" + a + (kind.equals("fixed") || kind.equals("exponential") ? "" : ":" + b);
+        }
+    }
+}
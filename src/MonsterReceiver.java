@@ -1,25 +1,52 @@
-import jakarta.jms.*;
-import org.apache.activemq.ActiveMQConnectionFactory;
+import jakarta.jms.JMSException;
+
 import javax.swing.*;
 import java.awt.*;
-import java.io.*;
-import java.net.Socket;
-
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cliente con ventana: una cuadrícula de 9x9 en la que se golpean los monstruos.
+ *
+ * La parte sin interfaz es la misma que usan los bots: {@link GameClient} para el
+ * handshake y los golpes, y un {@link TopicFeed} con su {@link GameBoard} para las
+ * apariciones, retiradas y la clasificación del tópico (las deltas, por el transporte
+ * que anuncie INFO; con TRANSPORT=socket llegan por el hilo del socket). La ventana solo pinta el
+ * tablero desde un tick de Swing y pone el puesto del jugador en el título.
+ */
 public class MonsterReceiver {
     // Por defecto, sabemos el IP/puerto del servidor de registro
     private static final String SERVER_IP = "localhost";
     private static final int SERVER_PORT = 50000;
-
-    // Inicialmente, podemos dejar estos en null/valores por defecto;
-    // luego los rellenamos con lo que envíe el servidor.
-    private String brokerUrl = "tcp://localhost:61616";
-    private String topicName = "Monsters";
+    // Reintentos ante "BUSY RETRY_AFTER=ms" (servidor saturado)
+    private static final int MAX_BUSY_RETRIES = 10;
+    // Sala pedida al servidor (-Dmonsters.room=<id>); sin ella el servidor asigna una
+    private static final String REQUESTED_ROOM = GameConfig.string("monsters.room", null);
+    // Con CLOCK=NANOS en INFO, un PING cada tanto para seguir el desfase con el servidor
+    private static final int CLOCK_PING_MILLIS = 5000;
 
     private JFrame frame;
     private JButton[][] buttons = new JButton[9][9];
     private String playerName;
-    private Socket socket;
-    private PrintWriter out;
+    private GameClient client;
+    // Id y ronda del monstruo visible en cada celda, para mandarlos con el golpe (solo EDT)
+    private final int[][] monsterIds = new int[9][9];
+    private final int[][] monsterRounds = new int[9][9];
+    // El listener escribe aquí las apariciones; un único tick de pintado las lleva a la UI
+    private static final int DISPLAY_MILLIS = 1000;
+    // Entre 1 y 1000: el periodo del Timer son milisegundos enteros
+    private static final int FRAME_RATE = Math.min(1000, Math.max(1, GameConfig.integer("monsters.client.fps", 60)));
+    // Fotos (hilo del socket) y deltas (listener JMS, o el transporte de INFO); pide SYNC por el socket si faltan
+    // deltas, en un hilo virtual aparte para no escribir con el lock del tablero tomado
+    private final GameBoard board = new GameBoard(new BoardBuffer(DISPLAY_MILLIS),
+            () -> Thread.startVirtualThread(client::requestSync));
+    // Clasificación (solo el listener JMS): cubos "puntos:jugadores" de la última línea SCORES de cada nodo
+    private final Map<String, String[]> scoresByNode = new HashMap<>();
+    private final Map<String, Integer> playersByNode = new HashMap<>();
+    private final Map<String, String> leaderByNode = new HashMap<>();
+    private int leaderboardRound = -1;
+    private int myScore;
 
     public MonsterReceiver() {
         playerName = JOptionPane.showInputDialog("Enter Player Name:");
@@ -29,83 +56,48 @@ public class MonsterReceiver {
         connectToServer();
         createUI();
         // Suscripción al tópico la haremos DESPUÉS de leer la info del servidor
-        // Si ya tenemos brokerUrl y topicName, podemos suscribir
         subscribeToTopic();
     }
 
     /**
-     * Conecta el jugador al servidor TCP y recibe su puntaje e información del broker.
+     * Conecta el jugador al servidor TCP (siguiendo REDIRECT y esperando si está
+     * ocupado) y deja un hilo leyendo la foto del tablero, WINNER y PONG.
      */
     private void connectToServer() {
         try {
-            socket = new Socket(SERVER_IP, SERVER_PORT);
-            out = new PrintWriter(socket.getOutputStream(), true);
-            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-            // Leer bienvenida
-            System.out.println("Server: " + in.readLine()); // WELCOME TO MONSTERS
-            System.out.println("Server: " + in.readLine()); // Enter your name:
-
-            // Enviar el nombre
-            out.println(playerName);
-            System.out.println("Connected as: " + playerName);
-
-            // Leer mensaje de bienvenida y puntaje
-            String welcomeMsg = in.readLine();
-            System.out.println("Server: " + welcomeMsg);
-
-            // Leer la línea con "INFO BROKER_URL=... TOPIC=..."
-            String infoLine = in.readLine();
-            if (infoLine != null && infoLine.startsWith("INFO ")) {
-                parseGameInfo(infoLine.substring("INFO ".length()));
-                // parseGameInfo("BROKER_URL=tcp://localhost:61616 TOPIC=Monsters");
-            }
+            String nameLine = REQUESTED_ROOM == null ? playerName : playerName + " ROOM=" + REQUESTED_ROOM;
+            // Si el servidor entiende tramas binarias, los golpes van en binario
+            client = GameClient.connect(SERVER_IP, SERVER_PORT, nameLine, "auto", MAX_BUSY_RETRIES);
+            System.out.println("Server: " + client.welcome());
+            System.out.println("🔹 Received from server: brokerUrl=" + client.brokerUrl() + ", topicName="
+                    + client.topic() + ", room=" + client.room());
+
+            new Thread(() -> client.readLoop(new GameClient.Listener() {
+                @Override
+                public void onSnapshot(BoardSnapshot snapshot) {
+                    board.applySnapshot(snapshot);
+                }
 
-            // Hilo para leer mensajes "WINNER" u otros
-            new Thread(() -> {
-                try {
-                    String message;
-                    while ((message = in.readLine()) != null) {
-                        if (message.startsWith("WINNER")) {
-                            JOptionPane.showMessageDialog(frame, "Winner: " + message.split(" ")[1] + "!");
-                            resetBoard();
-                        }
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
+                // La ventana pinta desde el tablero: no hace falta repartir la delta
+                @Override
+                public void onDelta(WireProtocol.Frame delta, long seq, long sentNanos) {
+                    board.apply(delta, seq);
                 }
-            }).start();
 
+                @Override
+                public void onWinner(String player) {
+                    showWinner(player);
+                }
+            })).start();
         } catch (IOException e) {
             e.printStackTrace();
             JOptionPane.showMessageDialog(frame, "Could not connect to server!");
             System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    /**
-     * Parsea la línea de info enviada por el servidor, p.ej:
-     * "BROKER_URL=tcp://localhost:61616 TOPIC=Monsters"
-     */
-    private void parseGameInfo(String data) {
-        // data: "BROKER_URL=tcp://localhost:61616 TOPIC=Monsters"
-        String[] parts = data.split(" ");
-        for (String part : parts) {
-            String[] kv = part.split("=");
-            if (kv.length == 2) {
-                switch (kv[0]) {
-                    case "BROKER_URL":
-                        brokerUrl = kv[1];
-                        break;
-                    case "TOPIC":
-                        topicName = kv[1];
-                        break;
-                }
-            }
-        }
-        System.out.println("🔹 Received from server: brokerUrl=" + brokerUrl + ", topicName=" + topicName);
-    }
-
     /**
      * Crea la UI con una cuadrícula de botones que representan el área de juego.
      */
@@ -122,100 +114,117 @@ public class MonsterReceiver {
                 buttons[i][j] = new JButton();
                 buttons[i][j].setEnabled(false);
                 buttons[i][j].addActionListener(e -> {
-                    out.println("hit " + row + " " + System.currentTimeMillis());
+                    client.hit(row, col, monsterIds[row][col], monsterRounds[row][col]);
                     buttons[row][col].setEnabled(false);
                 });
                 frame.add(buttons[i][j]);
             }
         }
         frame.setVisible(true);
-    }
 
-    /**
-     * Se suscribe al tópico en ActiveMQ (brokerUrl, topicName) para recibir eventos de aparición de monstruos.
-     */
-    private void subscribeToTopic() {
-        new Thread(() -> {
-            try {
-                // brokerUrl y topicName se obtienen de parseGameInfo
-                ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(brokerUrl);
-                Connection connection = connectionFactory.createConnection();
-                connection.start();
-
-                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-                Destination destination = session.createTopic(topicName);
-                MessageConsumer consumer = session.createConsumer(destination);
-
-                consumer.setMessageListener(message -> {
-                    if (message instanceof TextMessage) {
-                        try {
-                            String text = ((TextMessage) message).getText();
-                            SwingUtilities.invokeLater(() -> processMessage(text));
-                        } catch (JMSException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                });
+        // Tick de pintado: aplica de una vez las apariciones y caducidades pendientes
+        BoardBuffer.View view = new BoardBuffer.View() {
+            @Override
+            public void show(int x, int y, int monsterId, int round) {
+                monsterIds[x][y] = monsterId;
+                monsterRounds[x][y] = round;
+                buttons[x][y].setText("👾");
+                buttons[x][y].setEnabled(true);
+            }
 
-            } catch (JMSException e) {
-                e.printStackTrace();
+            @Override
+            public void hide(int x, int y) {
+                buttons[x][y].setText("");
+                buttons[x][y].setEnabled(false);
             }
-        }).start();
+        };
+        new Timer(1000 / FRAME_RATE, e -> board.buffer().drain(System.nanoTime(), view)).start();
+        if (client.clock() != null) new Timer(CLOCK_PING_MILLIS, e -> client.ping()).start();
     }
 
     /**
-     * Procesa los mensajes recibidos en el tópico de ActiveMQ.
+     * Se suscribe al tópico de la sala (y a su clasificación) en el broker que anunció INFO.
      */
-    private void processMessage(String text) {
-        if (text.equals("The game is over!")) {
-            JOptionPane.showMessageDialog(frame, "The game is over!");
-            resetBoard();
-        } else if (text.startsWith("WINNER")) {
-            JOptionPane.showMessageDialog(frame, "Winner: " + text.split(" ")[1] + "!");
-            resetBoard();
-        } else {
-            String[] parts = text.split(" ");
-            int id = Integer.parseInt(parts[0]);
-            int x = Integer.parseInt(parts[1]);
-            int y = Integer.parseInt(parts[2]);
-            showMonster(x, y);
+    private void subscribeToTopic() {
+        try {
+            TopicFeed feed = new TopicFeed(client.brokerUrl(), client.topic(), client.info(), board, true);
+            feed.add(new TopicFeed.Listener() {
+                @Override
+                public void onWinner(String player) {
+                    showWinner(player);
+                }
+
+                @Override
+                public void onLeaderboard(String text) {
+                    processLeaderboard(text);
+                }
+            });
+        } catch (JMSException | IOException e) {
+            e.printStackTrace();
         }
     }
 
-    /**
-     * Muestra un monstruo en la posición (x, y).
-     */
-    private void showMonster(int x, int y) {
-        SwingUtilities.invokeLater(() -> {
-            buttons[x][y].setText("👾");
-            buttons[x][y].setEnabled(true);
-
-            new Timer(1000,e ->hideMonster(x, y)).start();
-        });
+    // Fin de ronda (por el socket o por el tópico): tablero vacío y aviso en el EDT
+    private void showWinner(String player) {
+        board.clear();
+        String text = player == null ? "The game is over!" : "Winner: " + player + "!";
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, text));
     }
 
     /**
-     * Oculta un monstruo en la posición (x, y).
+     * Lee un mensaje de clasificación (ver {@link Leaderboard}) y pone en el título el
+     * puesto del jugador. En un clúster cada nodo manda sus cubos: el puesto global sale
+     * de sumar los de todos.
      */
-    private void hideMonster(int x, int y) {
-        SwingUtilities.invokeLater(() -> {
-            buttons[x][y].setText("");
-            buttons[x][y].setEnabled(false);
-        });
-    }
+    private void processLeaderboard(String text) {
+        String node = null;
+        for (String line : text.split("\n")) {
+            String[] parts = line.split(" ", 4);
+            if (parts[0].equals("SCORES") && parts.length >= 4) {
+                int round = Integer.parseInt(parts[1]);
+                if (round != leaderboardRound) {
+                    leaderboardRound = round;
+                    scoresByNode.clear();
+                    leaderByNode.clear();
+                    myScore = 0;
+                }
+                node = parts[2];
+                String rest = parts[3];
+                int space = rest.indexOf(' ');
+                playersByNode.put(node, Integer.parseInt(space < 0 ? rest : rest.substring(0, space)));
+                scoresByNode.put(node, space < 0 ? new String[0] : rest.substring(space + 1).split(" "));
+                leaderByNode.remove(node);
+            } else if (parts[0].equals("TOP") && parts.length == 4 && parts[1].equals("1") && node != null) {
+                leaderByNode.put(node, parts[2] + " " + parts[3]);
+            } else if (parts[0].equals("RANK") && parts.length == 4 && parts[3].equals(playerName)) {
+                myScore = Integer.parseInt(parts[2]);
+            }
+        }
 
-    /**
-     * Reinicia la cuadrícula cuando se termina una partida.
-     */
-    private void resetBoard() {
-        SwingUtilities.invokeLater(() -> {
-            for (int i = 0; i < 9; i++) {
-                for (int j = 0; j < 9; j++) {
-                    buttons[i][j].setText("");
-                    buttons[i][j].setEnabled(false);
+        int rank = 1;
+        int players = 0;
+        for (Map.Entry<String, String[]> scores : scoresByNode.entrySet()) {
+            players += playersByNode.get(scores.getKey());
+            for (String bucket : scores.getValue()) {
+                int colon = bucket.indexOf(':');
+                if (Integer.parseInt(bucket.substring(0, colon)) > myScore) {
+                    rank += Integer.parseInt(bucket.substring(colon + 1));
                 }
             }
-        });
+        }
+        String leader = null;
+        int leaderScore = -1;
+        for (String entry : leaderByNode.values()) {
+            int space = entry.indexOf(' ');
+            int score = Integer.parseInt(entry.substring(0, space));
+            if (score > leaderScore) {
+                leaderScore = score;
+                leader = entry.substring(space + 1);
+            }
+        }
+        String title = "Hit the Monsters - " + playerName + " (#" + rank + " of " + players + ", " + myScore + " pts)"
+                + (leader != null ? " - leader: " + leader + " (" + leaderScore + ")" : "");
+        SwingUtilities.invokeLater(() -> frame.setTitle(title));
     }
 
     public static void main(String[] args) {
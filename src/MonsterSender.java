@@ -1,83 +1,231 @@
-import jakarta.jms.*;
-import org.apache.activemq.ActiveMQConnectionFactory;
+import jakarta.jms.JMSException;
 
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class MonsterSender {
 
-    private static String url = "tcp://localhost:61616"; // IP y puerto del broker JMS
-    private static String subject = "Monsters";          // Nombre del tópico
+    // IP y puerto del broker JMS externo (se ignora si el broker es embebido)
+    private static final String url = GameConfig.string("monsters.broker.url", "tcp://localhost:61616");
+    private static String subject = "Monsters";          // Tópico base (cada sala usa Monsters.<sala>)
     private static final int WIN_CONDITION = 5;
     private final int k = 1000;
+    private static final long SHUTDOWN_GRACE_MS = 2000;
 
-    private ConcurrentHashMap<String, Integer> playerScore = new ConcurrentHashMap<>();
-    private MessageProducer producer;
-    private Session session;
-    private boolean gameRunning = true;
+    // Dueño de la sesión JMS: todos los envíos de todas las salas pasan por su hilo
+    private JmsPublisher publisher;
+    // Apariciones y retiradas (-Dmonsters.transport; por el mismo publicador por defecto)
+    private SpawnTransport transport;
+    private RoomManager rooms;
+    // Nodo del clúster (-Dmonsters.cluster / -Dmonsters.node.id); null con un solo servidor
+    private final ClusterMembers members = ClusterMembers.fromConfig();
+    private ClusterNode cluster;
+    // Apariciones, golpes y ganadores de todas las salas, escritos fuera de los loops
+    private final EventLog events = EventLog.fromConfig("events.log");
+    // Diario de puntuaciones (-Dmonsters.journal); las salas lo usan para sobrevivir a un reinicio
+    private final ScoreJournal journal = ScoreJournal.fromConfig();
+    // JMX y /metrics; el juego solo incrementa contadores
+    private final GameMetrics metrics = GameMetrics.fromConfig("MonsterSender");
+    private final LongAdder hitsReceived = metrics.counter("hits_received_total", "Golpes recibidos de los jugadores");
+    // Golpes con marca en nanosegundos de clientes con desfase conocido (ver GameClock), en µs
+    private final LatencyRecorder hitOneWay = new LatencyRecorder("hitOneWay");
+    // Broker dentro del proceso (-Dmonsters.broker=embedded); null si se usa uno externo
+    private final EmbeddedBroker broker = EmbeddedBroker.startIfConfigured();
+    // URL que se anuncia a los jugadores en la línea INFO
+    private final String advertisedUrl = broker != null ? broker.advertisedUrl() : url;
+    private volatile boolean gameRunning = true;
+    private final ServerMode serverMode = ServerMode.fromConfig();
+    // Backlog, turnos de handshake, cubo de fichas de golpes y expulsión de inactivos
+    private final AdmissionControl admission = AdmissionControl.fromConfig();
+    private final ExecutorService workers = serverMode.newExecutor();
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private volatile ServerSocket serverSocket;
+    private volatile NioPlayerServer nioServer;
+    // Trama reutilizada por cada event loop NIO (un hilo de plataforma por loop)
+    private final ThreadLocal<WireProtocol.Frame> loopFrames = ThreadLocal.withInitial(WireProtocol.Frame::new);
 
     public MonsterSender() {
         try {
-            ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(url);
-            Connection connection = connectionFactory.createConnection();
-            connection.start();
-            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-            Destination destination = session.createTopic(subject);
-            producer = session.createProducer(destination);
-        } catch (JMSException e) {
+            // Con broker embebido publicamos por vm://, sin salto de red
+            String publishUrl = broker != null ? broker.internalUrl() : url;
+            publisher = new JmsPublisher(publishUrl, subject, WireProtocol.binarySpawns());
+            transport = SpawnTransport.fromConfig(publisher);
+            if (members != null) {
+                cluster = new ClusterNode(GameConfig.string("monsters.node.id", ""), members, publisher,
+                        subject + ".control");
+            }
+            rooms = new RoomManager(subject, publisher, transport, WIN_CONDITION, k, cluster, events, journal);
+            if (cluster != null) cluster.start(publishUrl, rooms);
+            registerMetrics();
+        } catch (JMSException | IOException e) {
             e.printStackTrace();
         }
     }
 
+    // Cada sala lanza sus monstruos desde el loop al que está fijada
     public void startGame() {
-        new Thread(() -> {
-            int id = 0;
-            while (gameRunning) {
-                try {
-                    int x = (int) (Math.random() * 9);
-                    int y = (int) (Math.random() * 9);
-                    sendMonster(id, x, y);
-                    id++;
-                    Thread.sleep(k);
-                } catch (InterruptedException | JMSException e) {
-                    e.printStackTrace();
+        rooms.start();
+    }
+
+    public void startTCPServer(int port) {
+        if (serverMode == ServerMode.NIO) {
+            startNioServer(port);
+            return;
+        }
+        workers.execute(() -> {
+            try (ServerSocket server = new ServerSocket(port, admission.backlog())) {
+                serverSocket = server;
+                System.out.println("TCP Server started on port " + port + " (" + serverMode + ")");
+                while (gameRunning) {
+                    Socket clientSocket = server.accept();
+                    try {
+                        workers.execute(new PlayerHandler(clientSocket));
+                    } catch (RejectedExecutionException e) {
+                        clientSocket.close();
+                    }
                 }
+            } catch (IOException e) {
+                // Al cerrar el ServerSocket en stop() el accept() termina con excepción
+                if (gameRunning) e.printStackTrace();
             }
-        }).start();
+        });
     }
 
-    private void sendMonster(int id, int x, int y) throws JMSException {
-        TextMessage message = session.createTextMessage(id + " " + x + " " + y);
-        producer.send(message);
-        System.out.println("Sending monster ID: " + id + " at position: " + x + ", " + y);
-    }
+    // Variante con event loops NIO: mismo handshake, sin un hilo por jugador
+    private void startNioServer(int port) {
+        int loops = GameConfig.integer("monsters.nio.loops", Runtime.getRuntime().availableProcessors());
+        nioServer = new NioPlayerServer(port, loops, "WELCOME TO MONSTERS", admission, new NioPlayerServer.Handler() {
+            @Override
+            public List<String> onRegister(NioPlayerServer.Client client, String nameLine) {
+                String redirect = redirectFor(nameLine);
+                if (redirect != null) {
+                    client.send(redirect);
+                    return null;
+                }
+                Seat seat = takeSeat(nameLine);
+                if (seat == null) {
+                    client.send("SERVER FULL");
+                    return null;
+                }
+                client.attach(seat);
+                // Las líneas del handshake salen antes que cualquier delta empujada por el socket
+                for (String line : registerPlayer(seat)) {
+                    client.send(line);
+                }
+                transport.join(seat.room.topic(), client, client::send, false);
+                return List.of();
+            }
 
-    private void sendWinner(String player) throws JMSException {
-        TextMessage message = session.createTextMessage("WINNER " + player);
-        producer.send(message);
-        System.out.println(player + " won the game!");
-        resetGame();
-    }
+            @Override
+            public void onLine(NioPlayerServer.Client client, String line) {
+                if (line.equals(WireProtocol.NEGOTIATE_BINARY)) {
+                    client.useFrames(WireProtocol.FRAME_SIZE);
+                    return;
+                }
+                Seat seat = (Seat) client.attachment();
+                if (line.equals(WireProtocol.SYNC_LINE)) {
+                    client.send(seat.room.boardLine());
+                    return;
+                }
+                WireProtocol.Frame hit = loopFrames.get();
+                if (WireProtocol.parseTextHit(line, hit)) {
+                    if (client.tryAcquireHit()) processHit(seat, hit);
+                    return;
+                }
+                String reply = seat.clock.onLine(line, GameClock.nowNanos());
+                if (reply != null && !reply.isEmpty()) client.send(reply);
+            }
 
-    public void startTCPServer(int port) {
-        new Thread(() -> {
-            try (ServerSocket serverSocket = new ServerSocket(port)) {
-                System.out.println("TCP Server started on port " + port);
-                while (true) {
-                    Socket clientSocket = serverSocket.accept();
-                    new Thread(new PlayerHandler(clientSocket)).start();
+            @Override
+            public void onFrame(NioPlayerServer.Client client, ByteBuffer frame) {
+                WireProtocol.Frame hit = loopFrames.get();
+                WireProtocol.decode(frame, hit);
+                Seat seat = (Seat) client.attachment();
+                if (hit.type == WireProtocol.HIT) {
+                    if (client.tryAcquireHit()) processHit(seat, hit);
+                } else if (hit.type == WireProtocol.SYNC) {
+                    client.send(seat.room.boardLine());
+                } else {
+                    String reply = seat.clock.onFrame(hit, GameClock.nowNanos());
+                    if (reply != null && !reply.isEmpty()) client.send(reply);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
-        }).start();
+
+            @Override
+            public void onClose(NioPlayerServer.Client client) {
+                Seat seat = (Seat) client.attachment();
+                if (seat == null) return;
+                transport.leave(seat.room.topic(), client);
+                rooms.leave(seat.room);
+            }
+        });
+        try {
+            nioServer.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Sala, slot y desfase de reloj de un jugador conectado
+    private static final class Seat {
+        final Room room;
+        final int slot;
+        final GameClock.Peer clock = new GameClock.Peer();
+
+        Seat(Room room, int slot) {
+            this.room = room;
+            this.slot = slot;
+        }
+    }
+
+    // En un clúster, el jugador solo se registra en el nodo dueño de su nombre
+    private String redirectFor(String nameLine) {
+        return cluster == null ? null : cluster.redirectFor(RoomManager.playerName(nameLine));
+    }
+
+    /**
+     * Asigna sala y slot a partir de la línea del nombre ("nombre" o "nombre ROOM=<id>").
+     * Devuelve null si el nombre está vacío o no hay sitio.
+     */
+    private Seat takeSeat(String nameLine) {
+        String playerName = RoomManager.playerName(nameLine);
+        if (playerName.isEmpty()) return null;
+        Room room = rooms.join(RoomManager.requestedRoom(nameLine));
+        if (room == null) return null;
+        int slot = room.register(playerName);
+        if (slot == ScoreBoard.NO_SLOT) {
+            rooms.leave(room);
+            return null;
+        }
+        return new Seat(room, slot);
+    }
+
+    // Respuesta del handshake para un jugador ya sentado en su sala
+    private List<String> registerPlayer(Seat seat) {
+        Room room = seat.room;
+        return List.of(
+                "Welcome " + room.name(seat.slot) + "! Your current score: " + room.score(seat.slot),
+                // Enviamos información necesaria para jugar:
+                "INFO BROKER_URL=" + advertisedUrl + " TOPIC=" + room.topic() + " ROOM=" + room.id()
+                        + " " + WireProtocol.infoFields() + " " + transport.infoFields(),
+                // Monstruos ya vivos: quien entra a mitad de ronda los ve sin esperar apariciones nuevas
+                room.boardLine());
     }
 
     private class PlayerHandler implements Runnable {
         private Socket socket;
         private String playerName;
+        private Seat seat;
 
         public PlayerHandler(Socket clientSocket) {
             this.socket = clientSocket;
@@ -85,8 +233,21 @@ public class MonsterSender {
 
         @Override
         public void run() {
-            try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+            openSockets.add(socket);
+            long handshakeStart = 0;
+            boolean holdsPermit = false;
+            try (PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+                FrameReader in = new FrameReader(socket.getInputStream());
+
+                // Turno de handshake; sin él, "BUSY RETRY_AFTER=..." en lugar del saludo
+                holdsPermit = admission.awaitHandshake();
+                if (!holdsPermit) {
+                    out.println(admission.busyReply());
+                    socket.close();
+                    return;
+                }
+                handshakeStart = System.nanoTime();
+                socket.setSoTimeout(admission.handshakeTimeoutMillis());
 
                 // Mensajes de bienvenida y solicitud de nombre
                 out.println("WELCOME TO MONSTERS");
@@ -99,51 +260,169 @@ public class MonsterSender {
                     return;
                 }
 
-                // Registrar al jugador si no existe
-                playerScore.putIfAbsent(playerName, 0);
+                String redirect = redirectFor(playerName);
+                if (redirect != null) {
+                    out.println(redirect);
+                    socket.close();
+                    return;
+                }
 
-                // Respuesta de registro: incluye info del juego
-                out.println("Welcome " + playerName + "! Your current score: " + playerScore.get(playerName));
-                // Enviamos información necesaria para jugar:
-                out.println("INFO BROKER_URL=" + url + " TOPIC=" + subject);
+                // Registrar al jugador en su sala; la respuesta incluye info del juego
+                seat = takeSeat(playerName);
+                if (seat == null) {
+                    out.println("SERVER FULL");
+                    socket.close();
+                    return;
+                }
+                for (String line : registerPlayer(seat)) {
+                    out.println(line);
+                }
+                transport.join(seat.room.topic(), socket, out::println, true);
+                admission.handshakeDone(handshakeStart);
+                holdsPermit = false;
+                socket.setSoTimeout(admission.idleTimeoutMillis());
 
-                // Leer y procesar golpes
+                // Leer y procesar golpes (texto, o tramas binarias si el cliente lo negocia)
+                AdmissionControl.HitLimiter limiter = admission.newHitLimiter();
+                WireProtocol.Frame hit = new WireProtocol.Frame();
                 String input;
-                while ((input = in.readLine()) != null) {
+                while (gameRunning && (input = in.readLine()) != null) {
                     if (input.equalsIgnoreCase("exit")) break;
-                    if (input.startsWith("hit")) {
-                        processHit(playerName, input);
+                    if (input.equals(WireProtocol.NEGOTIATE_BINARY)) {
+                        processBinaryHits(in, out, seat, hit, limiter);
+                        break;
+                    }
+                    // Solo los golpes gastan fichas: el control no se pierde por golpear al límite
+                    if (input.equals(WireProtocol.SYNC_LINE)) {
+                        out.println(seat.room.boardLine());
+                    } else if (WireProtocol.parseTextHit(input, hit)) {
+                        if (limiter.tryAcquire()) processHit(seat, hit);
+                    } else {
+                        String reply = seat.clock.onLine(input, GameClock.nowNanos());
+                        if (reply != null && !reply.isEmpty()) out.println(reply);
                     }
                 }
                 socket.close();
-            } catch (IOException | JMSException e) {
-                e.printStackTrace();
+            } catch (SocketTimeoutException e) {
+                // Handshake demasiado lento o jugador inactivo; el try cierra el socket
+                admission.evicted();
+            } catch (IOException e) {
+                if (gameRunning) e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (holdsPermit) admission.handshakeDone(handshakeStart);
+                openSockets.remove(socket);
+                if (seat != null) {
+                    transport.leave(seat.room.topic(), socket);
+                    rooms.leave(seat.room);
+                }
             }
         }
     }
 
-    private void processHit(String playerName, String input) throws JMSException {
-        String[] tokens = input.split(" ");
-        if (tokens.length == 3) {
-            int x = Integer.parseInt(tokens[1]);
-
-            int newScore = playerScore.compute(playerName, (key, value) -> (value == null ? 1 : value + 1));
-            System.out.println(playerName + " hit monster at " + x + ". Score: " + newScore);
-
-            if (newScore >= WIN_CONDITION) {
-                sendWinner(playerName);
+    // Tramas de tamaño fijo decodificadas sobre el buffer del lector, sin crear objetos
+    private void processBinaryHits(FrameReader in, PrintWriter out, Seat seat, WireProtocol.Frame hit,
+                                   AdmissionControl.HitLimiter limiter) throws IOException {
+        ByteBuffer frame;
+        while (gameRunning && (frame = in.nextFrame(WireProtocol.FRAME_SIZE)) != null) {
+            WireProtocol.decode(frame, hit);
+            if (hit.type == WireProtocol.HIT) {
+                if (limiter.tryAcquire()) processHit(seat, hit);
+            } else if (hit.type == WireProtocol.SYNC) {
+                // La foto va como línea de texto también en conexiones binarias
+                out.println(seat.room.boardLine());
+            } else {
+                String reply = seat.clock.onFrame(hit, GameClock.nowNanos());
+                if (reply != null && !reply.isEmpty()) out.println(reply);
             }
         }
     }
 
-    private void resetGame() {
-        playerScore.replaceAll((player, score) -> 0);
-        System.out.println("Restarting game...");
+    // El golpe se procesa en el loop de la sala, no en el hilo del jugador
+    private void processHit(Seat seat, WireProtocol.Frame hit) {
+        hitsReceived.increment();
+        if (hit.sentNanos != 0 && seat.clock.synced()) {
+            long oneWay = GameClock.nowNanos() - seat.clock.toServer(hit.sentNanos);
+            hitOneWay.record(Math.max(0, TimeUnit.NANOSECONDS.toMicros(oneWay)));
+        }
+        seat.room.hit(seat.slot, hit.x, hit.y, hit.monsterId, hit.timestamp);
+    }
+
+    private void registerMetrics() {
+        metrics.gauge("players_connected", "Jugadores conectados en todas las salas", rooms::connectedPlayers);
+        metrics.gauge("rooms_open", "Salas abiertas", rooms::roomCount);
+        metrics.gauge("handshakes_active", "Handshakes en curso", admission::activeHandshakes);
+        metrics.gauge("handshakes_waiting", "Conexiones esperando turno de handshake", admission::waiting);
+        metrics.counter("connections_rejected_total", "Conexiones rechazadas con BUSY", admission::rejectedConnections);
+        metrics.counter("hits_throttled_total", "Golpes descartados por el límite por jugador", admission::throttledHits);
+        metrics.counter("clients_evicted_total", "Clientes expulsados por handshake lento o inactividad",
+                admission::evictedClients);
+        metrics.gauge("open_sockets", "Sockets de jugadores abiertos (un handler por socket en modo threads/virtual)",
+                openSockets::size);
+        metrics.counter("hits_rejected_total", "Golpes que no coinciden con un monstruo vivo (salas abiertas)",
+                rooms::rejectedHits);
+        metrics.gauge("publish_queue_depth", "Envíos JMS encolados", publisher::queueDepth);
+        metrics.counter("spawns_dropped_total", "Apariciones y retiradas que el transporte no llegó a enviar",
+                transport::droppedSpawns);
+        metrics.counter("events_dropped_total", "Eventos descartados por el registro de eventos", events::droppedEvents);
+        metrics.counter("journal_stalls_total", "Golpes que esperaron con el anillo del diario lleno", journal::stalls);
+        metrics.histogram("publish_latency_seconds", "Latencia de publicación JMS", publisher.latency());
+        metrics.histogram("hit_one_way_seconds", "Golpes: del cliente al servidor, descontado el desfase de reloj",
+                hitOneWay);
+        metrics.histogram("loop_drift_seconds", "Retraso de los loops de salas sobre la hora prevista", rooms.loopDrift());
+        metrics.histogram("spawn_jitter_seconds", "Desvío de cada tick de apariciones sobre la línea de tiempo",
+                rooms.spawnJitter());
+        metrics.counter("spawn_backoffs_total", "Veces que una sala frenó sus apariciones", rooms::spawnBackoffs);
+        metrics.gauge("spawn_publish_percent", "Menor porcentaje de apariciones publicadas entre las salas",
+                () -> Math.round(rooms.spawnFactor() * 100));
+    }
+
+    /**
+     * Cierre ordenado: deja de aceptar, da un margen a los handlers para terminar
+     * y después corta los sockets que sigan abiertos.
+     */
+    public void stop() {
+        gameRunning = false;
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (nioServer != null) nioServer.close();
+        if (rooms != null) rooms.close();
+        if (cluster != null) cluster.close();
+        if (transport != null) transport.close();
+        if (publisher != null) publisher.close();
+        if (broker != null) broker.close();
+        events.close();
+        metrics.close();
+
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(SHUTDOWN_GRACE_MS, TimeUnit.MILLISECONDS)) {
+                for (Socket socket : openSockets) {
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                workers.shutdownNow();
+                workers.awaitTermination(SHUTDOWN_GRACE_MS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Al final, cuando ya no quedan golpes en vuelo
+        journal.close();
+        System.out.println("Servidor detenido.");
     }
 
     public static void main(String[] args) {
         MonsterSender sender = new MonsterSender();
-        sender.startTCPServer(50000);
+        Runtime.getRuntime().addShutdownHook(new Thread(sender::stop));
+        // En un clúster cada nodo escucha en el puerto que le da monsters.cluster
+        sender.startTCPServer(sender.cluster != null ? sender.cluster.port() : 50000);
         sender.startGame();
     }
 }
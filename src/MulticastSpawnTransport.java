@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deltas por UDP multicast en la LAN: un datagrama por delta, enviado en el hilo que
+ * publica, sin cola ni broker. Todas las salas comparten el grupo; cada datagrama lleva
+ * el hash de su tópico y el cliente descarta los que no son del suyo.
+ *
+ * Datagrama ({@link #PACKET_SIZE} bytes, big-endian):
+ *   [0..8) hash del tópico  [8..16) número del datagrama en el tópico  [16..24) seq del
+ *   {@link BoardFeed}  [24..32) {@link GameClock#nowNanos()} del envío  [32..52) trama BIN1
+ *
+ * El número del datagrama es del transporte: el receptor cuenta como perdidos los huecos
+ * y descarta lo que llega tarde o repetido. No recupera nada por sí mismo; la seq del
+ * tablero ya hace que {@link GameBoard} pida SYNC por el socket del jugador.
+ *
+ * Configuración del servidor: -Dmonsters.multicast.group (239.255.77.1),
+ * -Dmonsters.multicast.port (4446), -Dmonsters.multicast.ttl (1: no sale de la subred) y
+ * -Dmonsters.multicast.interface (interfaz de red; por defecto la del sistema). El cliente
+ * toma grupo y puerto de INFO y solo la interfaz de su propia configuración.
+ */
+public class MulticastSpawnTransport implements SpawnTransport {
+
+    static final int HEADER_SIZE = 32;
+    static final int PACKET_SIZE = HEADER_SIZE + WireProtocol.FRAME_SIZE;
+    // Un número de datagrama muy por detrás del último: el servidor volvió a empezar
+    private static final long RESTART_WINDOW = 4096;
+
+    private final DatagramChannel channel;
+    private final InetSocketAddress group;
+    private final Map<String, Stream> streams = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+
+    // Numeración y buffer de un tópico; se publica bajo su lock
+    private static final class Stream {
+        final long hash;
+        final ByteBuffer packet = ByteBuffer.allocate(PACKET_SIZE);
+        long next;
+
+        Stream(String topic) {
+            this.hash = ConsistentHashRing.hash(topic);
+        }
+    }
+
+    public MulticastSpawnTransport(InetSocketAddress group, int ttl, NetworkInterface networkInterface)
+            throws IOException {
+        this.group = group;
+        channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+        // Los clientes de la misma máquina también reciben
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+        if (networkInterface != null) channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+    }
+
+    static MulticastSpawnTransport fromConfig() throws IOException {
+        InetSocketAddress group = new InetSocketAddress(
+                InetAddress.getByName(GameConfig.string("monsters.multicast.group", "239.255.77.1")),
+                GameConfig.integer("monsters.multicast.port", 4446));
+        return new MulticastSpawnTransport(group, GameConfig.integer("monsters.multicast.ttl", 1),
+                interfaceFromConfig());
+    }
+
+    private static NetworkInterface interfaceFromConfig() throws SocketException {
+        String name = GameConfig.string("monsters.multicast.interface", "");
+        if (name.isEmpty()) return null;
+        NetworkInterface networkInterface = NetworkInterface.getByName(name);
+        if (networkInterface == null) throw new SocketException("Unknown network interface: " + name);
+        return networkInterface;
+    }
+
+    @Override
+    public boolean publish(String topic, byte type, int monsterId, int x, int y, int round, long timestamp, long seq) {
+        Stream stream = streams.computeIfAbsent(topic, Stream::new);
+        synchronized (stream) {
+            ByteBuffer packet = stream.packet;
+            packet.clear();
+            packet.putLong(stream.hash).putLong(++stream.next).putLong(seq).putLong(GameClock.nowNanos());
+            WireProtocol.encode(packet, type, monsterId, x, y, round, timestamp);
+            packet.flip();
+            try {
+                if (channel.send(packet, group) == PACKET_SIZE) return true;
+            } catch (IOException e) {
+                // Red caída o sin ruta al grupo: la delta se pierde como cualquier datagrama
+            }
+        }
+        dropped.increment();
+        return false;
+    }
+
+    @Override
+    public String infoFields() {
+        return "TRANSPORT=" + MULTICAST + " GROUP=" + group.getAddress().getHostAddress() + ":" + group.getPort();
+    }
+
+    @Override
+    public long droppedSpawns() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Se une a {@code group} ("dirección:puerto", de INFO) y entrega las deltas de {@code topic}. */
+    public static Subscription subscribe(String group, String topic, Receiver receiver) throws IOException {
+        if (group == null || group.lastIndexOf(':') < 0) throw new IOException("Bad multicast GROUP: " + group);
+        int colon = group.lastIndexOf(':');
+        InetAddress address = InetAddress.getByName(group.substring(0, colon));
+        int port = Integer.parseInt(group.substring(colon + 1));
+        return new Listener(address, port, topic, receiver);
+    }
+
+    /** Lado del cliente: un hilo que lee el grupo y filtra su tópico. */
+    private static final class Listener implements Subscription, Runnable {
+        private final MulticastSocket socket;
+        private final InetSocketAddress group;
+        private final NetworkInterface networkInterface;
+        private final long topicHash;
+        private final Receiver receiver;
+        // Solo del hilo del listener
+        private final byte[] bytes = new byte[PACKET_SIZE];
+        private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        private final WireProtocol.Frame frame = new WireProtocol.Frame();
+        private long last;
+        private volatile long lost;
+
+        Listener(InetAddress address, int port, String topic, Receiver receiver) throws IOException {
+            this.group = new InetSocketAddress(address, port);
+            this.networkInterface = interfaceFromConfig();
+            this.topicHash = ConsistentHashRing.hash(topic);
+            this.receiver = receiver;
+            // MulticastSocket activa SO_REUSEADDR: varios clientes en la misma máquina
+            socket = new MulticastSocket(port);
+            try {
+                socket.joinGroup(group, networkInterface);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            Thread thread = new Thread(this, "multicast-" + topic);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            DatagramPacket packet = new DatagramPacket(bytes, bytes.length);
+            while (!socket.isClosed()) {
+                try {
+                    packet.setLength(bytes.length);
+                    socket.receive(packet);
+                } catch (IOException e) {
+                    // close() desde otro hilo
+                    break;
+                }
+                if (packet.getLength() != PACKET_SIZE) continue;
+                buffer.clear();
+                if (buffer.getLong() != topicHash) continue;
+                long number = buffer.getLong();
+                long seq = buffer.getLong();
+                long sentNanos = buffer.getLong();
+                if (last > 0 && number <= last && last - number <= RESTART_WINDOW) {
+                    // Tarde o repetido: lo que traía ya se dio por perdido o se aplicó
+                    continue;
+                }
+                if (last > 0 && number > last + 1) lost += number - last - 1;
+                last = number;
+                WireProtocol.decode(buffer, frame);
+                try {
+                    receiver.onDelta(frame, seq, sentNanos);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        @Override
+        public long lost() {
+            return lost;
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.leaveGroup(group, networkInterface);
+            } catch (IOException ignored) {
+                // Ya cerrado o la interfaz desapareció: cerrar basta
+            }
+            socket.close();
+        }
+    }
+}
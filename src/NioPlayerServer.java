@@ -0,0 +1,466 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servidor TCP de jugadores sin hilo por conexión: unos pocos event loops sobre
+ * {@link Selector} hacen el accept, el framing por líneas y el despacho de golpes.
+ * Mantiene el mismo handshake de texto que el servidor clásico (saludo,
+ * "Enter your name:", nombre, líneas de bienvenida/INFO). Una conexión puede pasar
+ * después a tramas binarias de tamaño fijo con {@link Client#useFrames(int)}.
+ *
+ * La admisión la decide un {@link AdmissionControl}: las conexiones que no tienen
+ * permiso de handshake esperan en una cola (sin saludo todavía) y, si la cola está
+ * llena o se agota la espera, reciben "BUSY RETRY_AFTER=..." y se cierran. Cada loop
+ * repasa sus conexiones una vez por segundo y expulsa los handshakes lentos y los
+ * jugadores inactivos; los mensajes de un jugador pasan por su cubo de fichas.
+ */
+public class NioPlayerServer {
+
+    private static final int MAX_LINE = 1024;
+    private static final long SWEEP_MILLIS = 1000;
+    // Líneas pendientes de enviar a un jugador; si no lee y se llena, se le cierra
+    private static final int OUTBOX_CAPACITY = GameConfig.integer("monsters.socket.outbox", 256);
+
+    /**
+     * Lógica del juego enchufada al servidor. Se invoca siempre desde el event loop
+     * dueño de la conexión, así que no debe bloquearse.
+     */
+    public interface Handler {
+        /** Registra al jugador; devuelve las líneas a enviarle o null para rechazarlo. */
+        List<String> onRegister(Client client, String playerName);
+
+        /** Línea recibida de un jugador ya registrado (distinta de "exit"). */
+        void onLine(Client client, String line);
+
+        /**
+         * Trama binaria recibida tras {@link Client#useFrames(int)}. El buffer es una vista
+         * del buffer de lectura, válida solo durante la llamada.
+         */
+        default void onFrame(Client client, ByteBuffer frame) {
+        }
+
+        default void onClose(Client client) {
+        }
+    }
+
+    private final int port;
+    private final String greeting;
+    private final Handler handler;
+    private final AdmissionControl admission;
+    // Conexiones aceptadas que esperan permiso de handshake, la más antigua primero
+    private final ConcurrentLinkedDeque<Client> pending = new ConcurrentLinkedDeque<>();
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+
+    public NioPlayerServer(int port, int loopCount, String greeting, Handler handler) {
+        this(port, loopCount, greeting, AdmissionControl.fromConfig(), handler);
+    }
+
+    public NioPlayerServer(int port, int loopCount, String greeting, AdmissionControl admission, Handler handler) {
+        this.port = port;
+        this.greeting = greeting;
+        this.handler = handler;
+        this.admission = admission;
+        this.loops = new EventLoop[Math.max(1, loopCount)];
+    }
+
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(new InetSocketAddress(port), admission.backlog());
+        running = true;
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        // El primer loop también atiende los accept
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        System.out.println("NIO TCP Server started on port " + port + " with " + loops.length + " event loops");
+    }
+
+    public void close() {
+        running = false;
+        for (EventLoop loop : loops) {
+            if (loop != null) loop.selector.wakeup();
+        }
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void acceptAll() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                Client client = new Client(loop, channel);
+                if (admission.tryHandshake()) {
+                    client.admit();
+                } else if (admission.enqueue()) {
+                    pending.addLast(client);
+                } else {
+                    client.reject();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Da turno a las conexiones en espera mientras queden permisos; rechaza las que esperaron demasiado
+    private void admitPending() {
+        Client next;
+        while ((next = pending.pollFirst()) != null) {
+            if (System.nanoTime() - next.acceptedAtNanos > admission.queueNanos()) {
+                admission.dequeue();
+                next.reject();
+                continue;
+            }
+            if (!admission.tryHandshake()) {
+                pending.offerFirst(next);
+                return;
+            }
+            admission.dequeue();
+            next.admit();
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+        private long lastSweepNanos = System.nanoTime();
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "nio-loop-" + index);
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (Thread.currentThread() != thread) selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select(this::dispatch, SWEEP_MILLIS);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                long now = System.nanoTime();
+                if (now - lastSweepNanos >= SWEEP_MILLIS * 1_000_000L) {
+                    lastSweepNanos = now;
+                    sweep(now);
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Client) ((Client) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Expulsa handshakes lentos e inactivos; el primer loop además vence la cola de espera
+        private void sweep(long now) {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Client) ((Client) key.attachment()).checkTimeouts(now);
+            }
+            if (this == loops[0]) admitPending();
+        }
+
+        private void dispatch(SelectionKey key) {
+            if (!key.isValid()) return;
+            if (key.isAcceptable()) {
+                acceptAll();
+                return;
+            }
+            Client client = (Client) key.attachment();
+            if (key.isReadable()) client.onReadable();
+            if (key.isValid() && key.isWritable()) client.flush();
+        }
+    }
+
+    /**
+     * Estado de una conexión. Todo salvo {@link #send(String)} y {@link #close()}
+     * se ejecuta en el hilo de su event loop.
+     */
+    public final class Client {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final long acceptedAtNanos = System.nanoTime();
+        private long handshakeStartNanos;
+        private long lastReadNanos;
+        private volatile boolean holdsPermit;
+        private AdmissionControl.HitLimiter limiter;
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+        private final ByteBuffer frameView = in.duplicate();
+        private int frameSize;
+        private final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private SelectionKey key;
+        private boolean writeInterest;
+        private String playerName;
+        private Object attachment;
+        private volatile boolean closed;
+
+        private Client(EventLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+        public String playerName() {
+            return playerName;
+        }
+
+        /** Instante (System.nanoTime()) en que se aceptó la conexión, para medir el registro. */
+        public long acceptedAtNanos() {
+            return acceptedAtNanos;
+        }
+
+        /**
+         * Cuenta un golpe contra el límite del jugador; false si hay que descartarlo. Solo
+         * para los golpes, desde onLine u onFrame: el control (PROTO, SYNC, PING, CLOCK)
+         * no gasta fichas.
+         */
+        public boolean tryAcquireHit() {
+            return limiter.tryAcquire();
+        }
+
+        public Object attachment() {
+            return attachment;
+        }
+
+        public void attach(Object attachment) {
+            this.attachment = attachment;
+        }
+
+        /** A partir de ahora el jugador envía tramas de {@code size} bytes en vez de líneas. */
+        public void useFrames(int size) {
+            this.frameSize = size;
+        }
+
+        /**
+         * Encola una línea para el jugador; se puede llamar desde cualquier hilo. Con
+         * {@link #OUTBOX_CAPACITY} líneas sin enviar el jugador no está leyendo: se cierra
+         * la conexión en vez de seguir acumulando memoria.
+         */
+        public void send(String line) {
+            if (closed) return;
+            int pending = queued.incrementAndGet();
+            if (pending > OUTBOX_CAPACITY) {
+                // Solo el primero que la llena avisa; el cierre va al event loop
+                if (pending == OUTBOX_CAPACITY + 1) {
+                    System.out.println("Cola de salida llena, cerrando conexión de " + playerName);
+                    close();
+                }
+                return;
+            }
+            out.add(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)));
+            if (Thread.currentThread() == loop.thread) {
+                flush();
+            } else {
+                loop.execute(this::flush);
+            }
+        }
+
+        public void close() {
+            if (Thread.currentThread() != loop.thread) {
+                loop.execute(this::close);
+                return;
+            }
+            if (closed) return;
+            closed = true;
+            handshakeDone();
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (playerName != null) handler.onClose(this);
+        }
+
+        // Con permiso de handshake: desde aquí cuenta el tiempo para terminarlo
+        private void admit() {
+            holdsPermit = true;
+            handshakeStartNanos = System.nanoTime();
+            loop.execute(this::open);
+        }
+
+        // Sin permiso: una línea BUSY en lugar del saludo y fuera; aún no está en ningún selector
+        private void reject() {
+            closed = true;
+            try {
+                channel.write(ByteBuffer.wrap((admission.busyReply() + "\n").getBytes(StandardCharsets.UTF_8)));
+                channel.close();
+            } catch (IOException e) {
+                // El cliente ya se fue; no hay nada que avisar
+            }
+        }
+
+        private void handshakeDone() {
+            if (!holdsPermit) return;
+            holdsPermit = false;
+            admission.handshakeDone(handshakeStartNanos);
+            admitPending();
+        }
+
+        private void checkTimeouts(long now) {
+            if (closed) return;
+            boolean slowHandshake = playerName == null
+                    && now - handshakeStartNanos > admission.handshakeTimeoutMillis() * 1_000_000L;
+            boolean idle = playerName != null && admission.idleTimeoutMillis() > 0
+                    && now - lastReadNanos > admission.idleTimeoutMillis() * 1_000_000L;
+            if (slowHandshake || idle) {
+                admission.evicted();
+                close();
+            }
+        }
+
+        private void open() {
+            try {
+                key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+            } catch (IOException e) {
+                e.printStackTrace();
+                close();
+                return;
+            }
+            send(greeting);
+            send("Enter your name:");
+        }
+
+        private void onReadable() {
+            int read;
+            try {
+                read = channel.read(in);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (read < 0) {
+                close();
+                return;
+            }
+            lastReadNanos = System.nanoTime();
+
+            // Framing (líneas o tramas fijas) directamente sobre el buffer de lectura
+            byte[] data = in.array();
+            int end = in.position();
+            int pos = 0;
+            while (pos < end && !closed) {
+                if (frameSize > 0) {
+                    if (end - pos < frameSize) break;
+                    frameView.limit(pos + frameSize).position(pos);
+                    try {
+                        handler.onFrame(this, frameView);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                    pos += frameSize;
+                    continue;
+                }
+                int newline = -1;
+                for (int i = pos; i < end; i++) {
+                    if (data[i] == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline < 0) break;
+                int lineEnd = (newline > pos && data[newline - 1] == '\r') ? newline - 1 : newline;
+                handleLine(new String(data, pos, lineEnd - pos, StandardCharsets.UTF_8));
+                pos = newline + 1;
+            }
+            if (closed) return;
+            in.flip().position(pos);
+            in.compact();
+            if (!in.hasRemaining()) {
+                System.out.println("Línea demasiado larga, cerrando conexión de " + playerName);
+                close();
+            }
+        }
+
+        private void handleLine(String line) {
+            try {
+                if (playerName == null) {
+                    if (line.trim().isEmpty()) {
+                        close();
+                        return;
+                    }
+                    playerName = line;
+                    List<String> reply = handler.onRegister(this, line);
+                    handshakeDone();
+                    limiter = admission.newHitLimiter();
+                    if (reply == null) {
+                        close();
+                        return;
+                    }
+                    for (String replyLine : reply) {
+                        send(replyLine);
+                    }
+                } else if (line.equalsIgnoreCase("exit")) {
+                    close();
+                } else {
+                    handler.onLine(this, line);
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void flush() {
+            if (closed || key == null) return;
+            try {
+                ByteBuffer buffer;
+                while ((buffer = out.peek()) != null) {
+                    channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        // El socket está lleno: esperamos OP_WRITE
+                        if (!writeInterest) {
+                            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                            writeInterest = true;
+                        }
+                        return;
+                    }
+                    out.poll();
+                    queued.decrementAndGet();
+                }
+                if (writeInterest) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    writeInterest = false;
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Anillo acotado de registros de tamaño fijo (unos pocos longs) para muchos
+ * productores y un único consumidor, sin crear objetos.
+ *
+ * Mismo esquema de secuencias que {@link BoundedMpscQueue}: el productor reserva una
+ * ranura con {@link #claim()}, escribe sus campos en {@link #words} a partir de
+ * {@link #base(long)} y la publica con {@link #publish(long)}; la secuencia hace de
+ * barrera, así que el consumidor ve los campos ya escritos. Lo usan {@link EventLog}
+ * y {@link ScoreJournal}.
+ */
+final class RecordRing {
+
+    /** Lo que hace el consumidor con cada registro; no debe guardar el array. */
+    interface Reader {
+        void read(long[] words, int base);
+    }
+
+    static final long FULL = -1L;
+
+    final long[] words;
+    private final int wordsPerRecord;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // Solo del consumidor
+    private long head;
+
+    RecordRing(int capacity, int wordsPerRecord) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.mask = size - 1;
+        this.wordsPerRecord = wordsPerRecord;
+        this.words = new long[size * wordsPerRecord];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /** Reserva una ranura; devuelve su posición o {@link #FULL} si el anillo está lleno. */
+    long claim() {
+        while (true) {
+            long position = tail.get();
+            long available = sequences.get((int) position & mask) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) return position;
+            } else if (available < 0) {
+                return FULL;
+            }
+        }
+    }
+
+    int base(long position) {
+        return ((int) position & mask) * wordsPerRecord;
+    }
+
+    void publish(long position) {
+        sequences.lazySet((int) position & mask, position + 1);
+    }
+
+    /** Solo desde el consumidor: pasa al lector los registros publicados, en orden. */
+    int drain(Reader reader) {
+        int drained = 0;
+        while (true) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) return drained;
+            reader.read(words, index * wordsPerRecord);
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            drained++;
+        }
+    }
+}
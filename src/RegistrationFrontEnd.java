@@ -0,0 +1,59 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Punto de entrada de un clúster de MonsterSender: hace la primera parte del handshake
+ * (saludo, "Enter your name:", nombre) y contesta "REDIRECT <host> <puerto>" con el
+ * nodo dueño del jugador según el anillo de {@link ClusterMembers}. No guarda estado,
+ * así que se pueden poner varios detrás de un balanceador.
+ *
+ * Uso: java -Dmonsters.cluster=n1=localhost:50001,n2=localhost:50002 RegistrationFrontEnd [puerto]
+ */
+public class RegistrationFrontEnd {
+
+    private final ClusterMembers members;
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+
+    public RegistrationFrontEnd(ClusterMembers members) {
+        this.members = members;
+    }
+
+    public void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("Registration front end on port " + port + " for nodes " + members.nodeIds());
+            while (true) {
+                Socket socket = server.accept();
+                workers.execute(() -> redirect(socket));
+            }
+        }
+    }
+
+    private void redirect(Socket socket) {
+        try (socket; PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+            FrameReader in = new FrameReader(socket.getInputStream());
+            out.println("WELCOME TO MONSTERS");
+            out.println("Enter your name:");
+            String nameLine = in.readLine();
+            if (nameLine == null) return;
+            String playerName = RoomManager.playerName(nameLine);
+            if (playerName.isEmpty()) return;
+            out.println(members.redirectTo(members.ownerOf(playerName)));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        ClusterMembers members = ClusterMembers.fromConfig();
+        if (members == null) {
+            System.out.println("Falta -Dmonsters.cluster=<id>=<host>:<puerto>,...");
+            return;
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        new RegistrationFrontEnd(members).serve(port);
+    }
+}
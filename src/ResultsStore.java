@@ -0,0 +1,241 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Historial de ejecuciones de la prueba de estrés en un fichero binario de solo-añadir
+ * (stress_results.bin, o -Dmonsters.results.store).
+ *
+ * Cada ejecución se guarda con su id, hora, configuración (-Dmonsters.* y nº de
+ * clientes), entorno (JVM, SO, CPUs, memoria, host), contadores y los histogramas
+ * crudos de {@link LatencyRecorder}, así que después se pueden sacar percentiles de
+ * cualquier ejecución o juntar varias. Solo se guardan los buckets no vacíos: un
+ * registro ocupa unos pocos KB.
+ *
+ * Formato: cabecera "MRS1" y luego registros [longitud][datos][CRC32]. Cada registro
+ * se escribe de una vez; si el proceso muere a mitad, la lectura se detiene en el
+ * último registro completo y el siguiente append lo recorta y escribe a continuación.
+ */
+public class ResultsStore {
+
+    private static final int MAGIC = 0x4D525331; // "MRS1"
+    private static final int MAX_RECORD = 16 << 20;
+
+    private final Path path;
+
+    public ResultsStore(Path path) {
+        this.path = path;
+    }
+
+    public static ResultsStore fromConfig() {
+        return new ResultsStore(Paths.get(GameConfig.string("monsters.results.store", "stress_results.bin")));
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /** Añade una ejecución al final del fichero. */
+    public synchronized void append(Run run) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        run.writeTo(new DataOutputStream(bytes));
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        // Un registro a medias de un proceso que murió se descarta antes de añadir
+        long valid = scan(null);
+        boolean empty = valid == 0;
+        ByteBuffer record = ByteBuffer.allocate((empty ? 4 : 0) + 4 + payload.length + 4);
+        if (empty) record.putInt(MAGIC);
+        record.putInt(payload.length).put(payload).putInt((int) crc.getValue());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(valid);
+            channel.position(valid);
+            record.flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        }
+    }
+
+    /** Todas las ejecuciones guardadas, de la más antigua a la más reciente. */
+    public List<Run> readAll() throws IOException {
+        List<Run> runs = new ArrayList<>();
+        scan(runs);
+        return runs;
+    }
+
+    // Lee los registros completos y devuelve hasta dónde llega el último (0 si no hay cabecera)
+    private long scan(List<Run> runs) throws IOException {
+        if (!Files.exists(path) || Files.size(path) < 4) return 0;
+        long valid = 4;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) throw new IOException(path + " no es un historial de resultados");
+            while (true) {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD) break;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                int crcValue = in.readInt();
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != crcValue) break;
+                if (runs != null) runs.add(Run.readFrom(new DataInputStream(new ByteArrayInputStream(payload))));
+                valid += 4 + length + 4;
+            }
+        } catch (EOFException end) {
+            // Fin del fichero o registro a medias: nos quedamos con lo anterior
+        }
+        return valid;
+    }
+
+    /** Configuración de la ejecución actual: todas las -Dmonsters.* más lo que añada el llamante. */
+    public static Map<String, String> currentConfig() {
+        Map<String, String> config = new TreeMap<>();
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("monsters.")) config.put(key, System.getProperty(key));
+        }
+        return config;
+    }
+
+    /** Máquina y JVM en las que corre la ejecución actual. */
+    public static Map<String, String> currentEnvironment() {
+        Map<String, String> env = new TreeMap<>();
+        env.put("java.version", System.getProperty("java.version"));
+        env.put("java.vm", System.getProperty("java.vm.name"));
+        env.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version") + " "
+                + System.getProperty("os.arch"));
+        env.put("cpus", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        env.put("maxHeapMb", String.valueOf(Runtime.getRuntime().maxMemory() >> 20));
+        try {
+            env.put("host", InetAddress.getLocalHost().getHostName());
+        } catch (IOException e) {
+            env.put("host", "unknown");
+        }
+        return env;
+    }
+
+    /** Una ejecución guardada. */
+    public static final class Run {
+        public final String id;
+        public final long startMillis;
+        public final long endMillis;
+        public final int gameId;
+        public final String winner;
+        public final Map<String, String> config;
+        public final Map<String, String> environment;
+        public final Map<String, Double> metrics;
+        public final Map<String, LatencyRecorder.Snapshot> histograms;
+
+        public Run(String id, long startMillis, long endMillis, int gameId, String winner, Map<String, String> config,
+                   Map<String, String> environment, Map<String, Double> metrics,
+                   Map<String, LatencyRecorder.Snapshot> histograms) {
+            this.id = id;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.gameId = gameId;
+            this.winner = winner;
+            this.config = config;
+            this.environment = environment;
+            this.metrics = metrics;
+            this.histograms = histograms;
+        }
+
+        /** Id nuevo: instante de inicio en base 36 más un sufijo aleatorio, ordenable a simple vista. */
+        public static String newId(long startMillis) {
+            return Long.toString(startMillis, 36) + "-" + Integer.toString(new Random().nextInt(36 * 36 * 36), 36);
+        }
+
+        public double metric(String name) {
+            return metrics.getOrDefault(name, Double.NaN);
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            out.writeUTF(id);
+            out.writeLong(startMillis);
+            out.writeLong(endMillis);
+            out.writeInt(gameId);
+            out.writeUTF(winner);
+            writeStrings(out, config);
+            writeStrings(out, environment);
+            out.writeInt(metrics.size());
+            for (Map.Entry<String, Double> metric : metrics.entrySet()) {
+                out.writeUTF(metric.getKey());
+                out.writeDouble(metric.getValue());
+            }
+            out.writeInt(histograms.size());
+            for (Map.Entry<String, LatencyRecorder.Snapshot> histogram : histograms.entrySet()) {
+                LatencyRecorder.Snapshot snapshot = histogram.getValue();
+                out.writeUTF(histogram.getKey());
+                out.writeLong(snapshot.count());
+                out.writeLong(snapshot.sum());
+                out.writeDouble(snapshot.sumOfSquares());
+                out.writeLong(snapshot.max());
+                long[] counts = snapshot.counts();
+                int nonZero = 0;
+                for (long count : counts) {
+                    if (count != 0) nonZero++;
+                }
+                out.writeInt(nonZero);
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == 0) continue;
+                    out.writeShort(i);
+                    out.writeLong(counts[i]);
+                }
+            }
+            out.flush();
+        }
+
+        private static Run readFrom(DataInputStream in) throws IOException {
+            String id = in.readUTF();
+            long start = in.readLong();
+            long end = in.readLong();
+            int gameId = in.readInt();
+            String winner = in.readUTF();
+            Map<String, String> config = readStrings(in);
+            Map<String, String> environment = readStrings(in);
+            Map<String, Double> metrics = new LinkedHashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                metrics.put(in.readUTF(), in.readDouble());
+            }
+            Map<String, LatencyRecorder.Snapshot> histograms = new LinkedHashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                String name = in.readUTF();
+                long count = in.readLong();
+                long sum = in.readLong();
+                double sumOfSquares = in.readDouble();
+                long max = in.readLong();
+                long[] counts = new long[LatencyRecorder.BUCKETS];
+                for (int b = in.readInt(); b > 0; b--) {
+                    counts[in.readUnsignedShort()] = in.readLong();
+                }
+                histograms.put(name, new LatencyRecorder.Snapshot(counts, count, sum, sumOfSquares, max));
+            }
+            return new Run(id, start, end, gameId, winner, config, environment, metrics, histograms);
+        }
+
+        private static void writeStrings(DataOutputStream out, Map<String, String> values) throws IOException {
+            out.writeInt(values.size());
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue() == null ? "" : entry.getValue());
+            }
+        }
+
+        private static Map<String, String> readStrings(DataInputStream in) throws IOException {
+            Map<String, String> values = new TreeMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                values.put(in.readUTF(), in.readUTF());
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/**
+ * Una partida dentro del servidor: su marcador, su tópico y su ritmo de apariciones.
+ *
+ * Cada sala está fijada a un único event loop de {@link RoomManager}. Los golpes se
+ * encolan en ese loop y las apariciones las dispara el propio loop, así que el estado
+ * de la sala siempre lo escribe el mismo hilo y los golpes de una sala nunca compiten
+ * con los de otra.
+ *
+ * Los monstruos salen en los ticks de un {@link SpawnScheduler}, alineados al reloj de
+ * pared: el id es el número del monstruo en su tick y la celda sale de un hash de la
+ * sala, la semilla y ese número. La semilla es al azar en cada arranque (o
+ * -Dmonsters.seed), así que un cliente no puede precalcular las celdas. En un clúster
+ * la de la sala es la de su coordinador, que la anuncia en ROUND; con ella todos los
+ * nodos conocen los mismos monstruos, aunque solo el coordinador los publique (y solo
+ * él frene el ritmo), y cada nodo valida los golpes de sus jugadores contra su
+ * {@link LiveMonsterIndex}. Hasta recibirla, un nodo no conoce los monstruos de la sala
+ * y la pide cada {@link #SEED_REQUEST_NANOS}.
+ *
+ * El coordinador publica además, numeradas, las retiradas de los monstruos que se
+ * llevan los jugadores ({@link BoardFeed}), también los de otros nodos, que se las
+ * mandan por el tópico de control; los jugadores reciben la foto del tablero al entrar
+ * y cuando piden SYNC.
+ */
+public class Room {
+
+    public static final String DEFAULT_ID = "default";
+    private static final long SEED_REQUEST_NANOS = 1_000_000_000L;
+
+    private final String id;
+    private final String topic;
+    private final ScoreBoard scoreBoard;
+    private final RoomManager.Loop loop;
+    private final JmsPublisher publisher;
+    private final int winCondition;
+    // Semilla de este nodo, la que usa y anuncia si coordina la sala
+    private final long spawnSeed;
+    // null hasta conocer la semilla del coordinador; solo lo escribe el loop
+    private volatile SpawnGenerator spawns;
+    private long lastSeedRequest;
+    private final SpawnScheduler scheduler;
+    private final LiveMonsterIndex monsters = LiveMonsterIndex.fromConfig();
+    private final BoardFeed board;
+    // Cubos de puntuación y top-K; se publica desde tick()
+    private final Leaderboard leaderboard;
+    private final boolean validateHits = LiveMonsterIndex.validationEnabled();
+    // Nodo del clúster (null con un solo nodo) y si este nodo decide las rondas de la sala
+    private final ClusterNode cluster;
+    private final boolean coordinator;
+    // Número de la sala en el EventLog (los registros llevan 16 bits, no el id)
+    private final int number;
+    private final EventLog events;
+    // Registros, golpes y rondas al diario (no hace nada sin -Dmonsters.journal)
+    private final ScoreJournal.Board journal;
+    // Jugadores conectados; protegido por el lock de RoomManager
+    int connected;
+    private volatile boolean closed;
+
+    Room(String id, int number, String topic, int capacity, RoomManager.Loop loop, JmsPublisher publisher,
+         SpawnTransport transport, int winCondition, long spawnPeriodMillis, LatencyRecorder spawnJitter,
+         long spawnSeed, ClusterNode cluster, EventLog events, ScoreJournal journal) {
+        this.id = id;
+        this.number = number;
+        this.events = events;
+        this.topic = topic;
+        this.scoreBoard = new ScoreBoard(capacity);
+        // Si la sala existía antes de un reinicio, recupera aquí jugadores, puntos y ronda
+        this.journal = journal.attach(id, scoreBoard);
+        this.loop = loop;
+        this.publisher = publisher;
+        this.board = new BoardFeed(transport, topic, monsters);
+        this.winCondition = winCondition;
+        this.spawnSeed = spawnSeed;
+        this.cluster = cluster;
+        this.coordinator = cluster == null || cluster.coordinates(id);
+        // Con -Dmonsters.seed todos los nodos tienen ya la misma; si no, la del coordinador llega en ROUND
+        this.spawns = coordinator || SpawnGenerator.seedConfigured() ? generator(spawnSeed) : null;
+        this.leaderboard = Leaderboard.fromConfig(scoreBoard, winCondition, publisher, topic,
+                cluster == null ? "-" : cluster.selfId());
+        // Los demás nodos no frenan: deben conocer todos los monstruos que pueda publicar el coordinador
+        this.scheduler = SpawnScheduler.fromConfig(spawnPeriodMillis, coordinator ? transport::queueDepth : null,
+                spawnJitter);
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public String topic() {
+        return topic;
+    }
+
+    /** Devuelve el slot del jugador en esta sala o ScoreBoard.NO_SLOT si está llena. */
+    public int register(String playerName) {
+        int slot = scoreBoard.register(playerName);
+        if (slot != ScoreBoard.NO_SLOT) {
+            events.join(number, slot, playerName);
+            journal.registered(slot);
+        }
+        return slot;
+    }
+
+    public String name(int slot) {
+        return scoreBoard.name(slot);
+    }
+
+    public int score(int slot) {
+        return scoreBoard.score(slot);
+    }
+
+    public int playerCount() {
+        return scoreBoard.playerCount();
+    }
+
+    public int round() {
+        return scoreBoard.round();
+    }
+
+    /** Si este nodo lanza los monstruos y decide el ganador de la sala. */
+    public boolean isCoordinator() {
+        return coordinator;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    SpawnScheduler scheduler() {
+        return scheduler;
+    }
+
+    /** Línea "BOARD ..." con los monstruos vivos; se puede llamar desde cualquier hilo. */
+    public String boardLine() {
+        return board.snapshot(scoreBoard.round());
+    }
+
+    /** Semilla con la que este nodo lanza los monstruos de la sala si la coordina. */
+    long spawnSeed() {
+        return spawnSeed;
+    }
+
+    /** Resto de nodos: usa la semilla que anuncia el coordinador. Solo desde el hilo del loop. */
+    void useSeed(long seed) {
+        SpawnGenerator current = spawns;
+        if (coordinator || (current != null && current.seed() == generator(seed).seed())) return;
+        spawns = generator(seed);
+        System.out.println("[" + id + "] Spawn seed " + seed + " from the coordinator");
+    }
+
+    private SpawnGenerator generator(long seed) {
+        return new SpawnGenerator(ConsistentHashRing.hash(id) ^ seed);
+    }
+
+    /** Golpes descartados por no coincidir con un monstruo vivo. */
+    public long rejectedHits() {
+        return monsters.rejectedHits();
+    }
+
+    /**
+     * Entrega un golpe al loop de la sala; se puede llamar desde cualquier hilo.
+     * {@code y} e {@code id} son -1 si el cliente no los manda.
+     */
+    public void hit(int slot, int x, int y, int id, long clientMillis) {
+        loop.hit(this, slot, x, y, id, clientMillis);
+    }
+
+    RoomManager.Loop loop() {
+        return loop;
+    }
+
+    void close() {
+        closed = true;
+        journal.detach();
+    }
+
+    /**
+     * Retira los monstruos vencidos, lanza las apariciones del tick y publica la
+     * clasificación si ya toca; devuelve el instante (System.nanoTime()) en que hay
+     * que volver a llamar. Solo desde el hilo del loop.
+     */
+    long tick(long now) {
+        if (spawns == null && now - lastSeedRequest >= SEED_REQUEST_NANOS) {
+            lastSeedRequest = now;
+            cluster.requestSeed(this);
+        }
+        monsters.expire(now);
+        int count = scheduler.poll(now);
+        for (int k = 0; k < count; k++) {
+            if (scheduler.keeps(k)) spawn(scheduler.spawnNumber(k), now);
+        }
+        leaderboard.tick(now);
+        long next = scheduler.nextWakeUp();
+        long nextExpiry = monsters.nextExpiryNanos(next);
+        if (nextExpiry - next < 0) next = nextExpiry;
+        long nextBroadcast = leaderboard.nextBroadcastNanos(next);
+        return nextBroadcast - next < 0 ? nextBroadcast : next;
+    }
+
+    private void spawn(long spawnNumber, long now) {
+        SpawnGenerator generator = spawns;
+        // Sin la semilla del coordinador no se sabe dónde sale: sus golpes se rechazarán
+        if (generator == null) return;
+        int cell = generator.cell(spawnNumber);
+        // Sin signo: -1 significa "sin id" en los golpes
+        int monsterId = (int) (spawnNumber & Integer.MAX_VALUE);
+        int x = cell / LiveMonsterIndex.SIZE;
+        int y = cell % LiveMonsterIndex.SIZE;
+        monsters.add(monsterId, x, y, now);
+        // En un clúster solo el coordinador de la sala publica los monstruos
+        if (coordinator) sendMonster(monsterId, x, y);
+    }
+
+    private void sendMonster(int id, int x, int y) {
+        // Se encola y seguimos; el hilo del publicador hace el envío
+        long now = System.currentTimeMillis();
+        board.spawned(id, x, y, scoreBoard.round(), now);
+        events.spawn(number, id, x, y, scoreBoard.round(), now);
+    }
+
+    /** Solo desde el hilo del loop. */
+    void processHit(int slot, int x, int y, int monsterId, long clientMillis) {
+        // Un golpe que no acierta a un monstruo vivo ni llega al marcador
+        if (validateHits && !monsters.claim(x, y, monsterId)) {
+            events.miss(number, slot, monsterId, x, y, clientMillis);
+            return;
+        }
+        long ticket = scoreBoard.hit(slot);
+        // Ronda ya ganada: el monstruo queda reclamado pero no se borra de los tableros
+        if (ticket == ScoreBoard.ROUND_CLOSED) return;
+        // Sin columna no se sabe qué celda era: los clientes lo dejarán caducar
+        if (validateHits && y >= 0 && board.publishesClears()) {
+            if (coordinator) {
+                board.cleared(monsterId, x, y, scoreBoard.round());
+            } else {
+                cluster.cleared(this, monsterId, x, y);
+            }
+        }
+        journal.hit(slot, ticket);
+        leaderboard.scored(slot, ticket);
+        int newScore = ScoreBoard.scoreOf(ticket);
+        events.hit(number, slot, monsterId, x, y, newScore, clientMillis);
+
+        int round = ScoreBoard.roundOf(ticket);
+        if (newScore >= winCondition && scoreBoard.claimWin(round)) {
+            journal.roundChanged();
+            if (coordinator) {
+                sendWinner(scoreBoard.name(slot), round);
+            } else {
+                // La ronda local queda cerrada hasta que el coordinador anuncie la siguiente
+                cluster.claim(this, round, scoreBoard.name(slot));
+            }
+        }
+    }
+
+    /** Coordinador: un jugador de otro nodo reclama la ronda; gana el primero que llega. */
+    void decideClaim(int round, String player) {
+        // Si el que reclama va por delante (p.ej. este nodo se reinició) lo alcanzamos
+        scoreBoard.openRound(round);
+        if (scoreBoard.claimWin(round)) {
+            sendWinner(player, round);
+        } else {
+            cluster.announceRound(this);
+        }
+    }
+
+    /** Coordinador: un jugador de otro nodo se llevó el monstruo; se retira aquí y se publica. */
+    void clearedRemotely(int monsterId, int x, int y) {
+        if (monsters.removeClaimed(x, y, monsterId)) board.cleared(monsterId, x, y, scoreBoard.round());
+    }
+
+    /** Resto de nodos: abre la ronda que decidió el coordinador. */
+    void syncRound(int round) {
+        if (scoreBoard.openRound(round)) {
+            scheduler.roundStarted(System.nanoTime());
+            journal.roundChanged();
+            events.round(number, round);
+            System.out.println("[" + id + "] Round " + round + " started by the coordinator");
+        }
+    }
+
+    // Solo lo llama quien ganó el CAS de la ronda, así que hay un único ganador por ronda
+    private void sendWinner(String player, int round) {
+        publisher.publishText(topic, "WINNER " + player, null);
+        events.win(number, round, player);
+        System.out.println("[" + id + "] " + player + " won the game!");
+        if (cluster != null) cluster.announceWinner(this, round, player);
+        resetGame(round);
+    }
+
+    private void resetGame(int wonRound) {
+        scoreBoard.startNextRound(wonRound);
+        scheduler.roundStarted(System.nanoTime());
+        journal.roundChanged();
+        events.round(number, scoreBoard.round());
+        System.out.println("[" + id + "] Restarting game...");
+    }
+}
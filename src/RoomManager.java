@@ -0,0 +1,353 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Aloja muchas partidas ({@link Room}) en un mismo proceso.
+ *
+ * Las salas se reparten en round-robin entre un número fijo de event loops (uno por
+ * núcleo por defecto). Cada loop es el único que escribe en sus salas: procesa los
+ * golpes que se le encolan y dispara las apariciones de todas ellas (cada una con su
+ * {@link SpawnScheduler}), durmiendo hasta la siguiente que toque. Todas las salas comparten el mismo {@link JmsPublisher},
+ * cada una en su tópico ({@code Monsters.<sala>}; la sala por defecto usa el tópico base),
+ * y el mismo {@link SpawnTransport} para sus apariciones y retiradas.
+ *
+ * El jugador pide sala en el handshake con "nombre ROOM=<id>"; si no la pide se le
+ * asigna según monsters.room.assign:
+ *   default   todos a la sala por defecto (comportamiento original)
+ *   fill      se llena una sala de monsters.room.maxPlayers y se abre otra
+ * Las salas distintas de la de por defecto se cierran al irse su último jugador.
+ *
+ * En un clúster ({@link ClusterNode}) cada nodo tiene su copia de las salas de sus
+ * jugadores; el coordinador de una sala la mantiene abierta mientras algún otro nodo
+ * la tenga abierta, porque es quien lanza sus monstruos.
+ */
+public class RoomManager implements AutoCloseable {
+
+    private static final String ROOM_FIELD = " ROOM=";
+    private static final int MAX_ROOM_ID = 32;
+    private static final long MAX_PARK_NANOS = 100_000_000L;
+    // Golpes en espera por loop; si se llena, los golpes siguen por la cola de tareas
+    private static final int HIT_QUEUE_CAPACITY = GameConfig.integer("monsters.rooms.hitQueue", 16384);
+    // Tareas y golpes por pasada: con una avalancha de golpes las salas siguen con sus ticks
+    private static final int DRAIN_BATCH = 1024;
+
+    private final String baseTopic;
+    private final JmsPublisher publisher;
+    // Apariciones y retiradas de todas las salas (el mismo tópico JMS por defecto)
+    private final SpawnTransport transport;
+    private final int winCondition;
+    private final long spawnPeriodMillis;
+    // Semilla de las apariciones de las salas que coordina este nodo (-Dmonsters.seed o al azar)
+    private final long spawnSeed = SpawnGenerator.seedFromConfig();
+    private final boolean fillRooms;
+    private final int roomCapacity;
+    private final int maxRooms;
+    private final Loop[] loops;
+    private final Room defaultRoom;
+    private final ClusterNode cluster;
+    private final EventLog events;
+    private final ScoreJournal journal;
+    // Estado de las salas; protegido por el lock de this (solo en handshake y desconexión)
+    private final Map<String, Room> rooms = new HashMap<>();
+    private Room filling;
+    private int nextLoop;
+    private int nextAutoId;
+    private int nextNumber;
+    // Coordinador: nodos que tienen abierta cada sala
+    private final Map<String, Set<String>> remoteHolders = new HashMap<>();
+    private volatile boolean running = true;
+    // Retraso (µs) con el que los loops despiertan respecto a lo que pidieron: la deriva de las apariciones
+    private final LatencyRecorder loopDrift = new LatencyRecorder("loopDrift");
+    // Desvío (µs) de cada tick de apariciones sobre su hora en la línea de tiempo, ya corregido
+    private final LatencyRecorder spawnJitter = new LatencyRecorder("spawnJitter");
+
+    public RoomManager(String baseTopic, JmsPublisher publisher, int winCondition, long spawnPeriodMillis) {
+        this(baseTopic, publisher, new JmsSpawnTransport(publisher), winCondition, spawnPeriodMillis, null,
+                EventLog.disabled(), ScoreJournal.disabled());
+    }
+
+    public RoomManager(String baseTopic, JmsPublisher publisher, SpawnTransport transport, int winCondition,
+                       long spawnPeriodMillis, ClusterNode cluster, EventLog events, ScoreJournal journal) {
+        this.baseTopic = baseTopic;
+        this.cluster = cluster;
+        this.events = events;
+        this.journal = journal;
+        this.publisher = publisher;
+        this.transport = transport;
+        this.winCondition = winCondition;
+        this.spawnPeriodMillis = spawnPeriodMillis;
+        this.fillRooms = GameConfig.string("monsters.room.assign", "default").equalsIgnoreCase("fill");
+        this.roomCapacity = GameConfig.integer("monsters.room.maxPlayers", 64);
+        this.maxRooms = GameConfig.integer("monsters.rooms.max", 1024);
+        int loopCount = Math.max(1, GameConfig.integer("monsters.rooms.loops",
+                Runtime.getRuntime().availableProcessors()));
+        this.loops = new Loop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new Loop(i);
+        }
+        // En modo "default" la sala por defecto tiene la capacidad de todo el servidor
+        int defaultCapacity = fillRooms ? roomCapacity : GameConfig.integer("monsters.maxPlayers", 1 << 17);
+        synchronized (this) {
+            this.defaultRoom = createRoom(Room.DEFAULT_ID, defaultCapacity);
+            this.filling = defaultRoom;
+        }
+    }
+
+    /** Arranca los loops: desde aquí las salas empiezan a lanzar monstruos. */
+    public void start() {
+        for (Loop loop : loops) {
+            loop.thread.start();
+        }
+        System.out.println("Room manager started with " + loops.length + " loops (assign: "
+                + (fillRooms ? "fill" : "default") + ")");
+    }
+
+    /**
+     * Sala para un jugador nuevo: la pedida (se crea si no existe) o una asignada si
+     * {@code requestedId} es null. Devuelve null si se llegó al máximo de salas. Cada
+     * join debe ir seguido de un {@link #leave(Room)} al desconectarse.
+     */
+    public synchronized Room join(String requestedId) {
+        Room room;
+        if (requestedId != null) {
+            room = rooms.get(requestedId);
+            if (room == null) {
+                if (rooms.size() >= maxRooms) return null;
+                room = createRoom(requestedId, roomCapacity);
+            }
+        } else if (!fillRooms) {
+            room = defaultRoom;
+        } else {
+            // Los slots no se liberan, así que solo la última sala abierta puede tener sitio
+            if (filling.isClosed() || filling.playerCount() >= roomCapacity) {
+                if (rooms.size() >= maxRooms) return null;
+                String id;
+                do {
+                    id = "r" + (++nextAutoId);
+                } while (rooms.containsKey(id));
+                filling = createRoom(id, roomCapacity);
+            }
+            room = filling;
+        }
+        room.connected++;
+        return room;
+    }
+
+    public synchronized void leave(Room room) {
+        if (--room.connected > 0 || room == defaultRoom || room.isClosed()) return;
+        rooms.remove(room.id());
+        room.close();
+        if (cluster != null && !room.isCoordinator()) cluster.roomClosed(room);
+        Loop loop = room.loop();
+        loop.execute(() -> loop.rooms.remove(room));
+    }
+
+    public synchronized Room find(String roomId) {
+        return rooms.get(roomId);
+    }
+
+    /**
+     * Coordinador: otro nodo abrió la sala, así que la mantenemos abierta (y lanzando
+     * monstruos) aunque aquí no tenga jugadores. Devuelve null si no caben más salas.
+     */
+    public synchronized Room holdForNode(String roomId, String nodeId) {
+        Set<String> holders = remoteHolders.computeIfAbsent(roomId, id -> new HashSet<>());
+        if (holders.isEmpty()) {
+            Room room = join(roomId);
+            if (room == null) {
+                remoteHolders.remove(roomId);
+                return null;
+            }
+        }
+        holders.add(nodeId);
+        return rooms.get(roomId);
+    }
+
+    /** Coordinador: el nodo dado cerró su copia de la sala. */
+    public synchronized void releaseForNode(String roomId, String nodeId) {
+        Set<String> holders = remoteHolders.get(roomId);
+        if (holders == null || !holders.remove(nodeId) || !holders.isEmpty()) return;
+        remoteHolders.remove(roomId);
+        Room room = rooms.get(roomId);
+        if (room != null) leave(room);
+    }
+
+    public synchronized int roomCount() {
+        return rooms.size();
+    }
+
+    /** Jugadores conectados en todas las salas. */
+    public synchronized int connectedPlayers() {
+        int total = 0;
+        for (Room room : rooms.values()) {
+            total += room.connected;
+        }
+        return total;
+    }
+
+    /** Golpes descartados en las salas abiertas. */
+    public synchronized long rejectedHits() {
+        long total = 0;
+        for (Room room : rooms.values()) {
+            total += room.rejectedHits();
+        }
+        return total;
+    }
+
+    public LatencyRecorder loopDrift() {
+        return loopDrift;
+    }
+
+    public LatencyRecorder spawnJitter() {
+        return spawnJitter;
+    }
+
+    /** Veces que alguna sala abierta frenó sus apariciones. */
+    public synchronized long spawnBackoffs() {
+        long total = 0;
+        for (Room room : rooms.values()) {
+            total += room.scheduler().backoffs();
+        }
+        return total;
+    }
+
+    /** Menor fracción de apariciones publicadas entre las salas abiertas (1 si ninguna frena). */
+    public synchronized double spawnFactor() {
+        double min = 1;
+        for (Room room : rooms.values()) {
+            min = Math.min(min, room.scheduler().factor());
+        }
+        return min;
+    }
+
+    /** Para los loops; los golpes que queden en cola se descartan. */
+    @Override
+    public void close() {
+        running = false;
+        for (Loop loop : loops) {
+            LockSupport.unpark(loop.thread);
+        }
+        for (Loop loop : loops) {
+            try {
+                loop.thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Sala pedida en la línea del nombre ("ana ROOM=torneo"), o null si no pide ninguna o no es válida. */
+    public static String requestedRoom(String nameLine) {
+        int index = nameLine.lastIndexOf(ROOM_FIELD);
+        if (index < 0) return null;
+        String id = nameLine.substring(index + ROOM_FIELD.length()).trim();
+        if (id.isEmpty() || id.length() > MAX_ROOM_ID) return null;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') return null;
+        }
+        return id;
+    }
+
+    /** Nombre del jugador sin el campo ROOM=. */
+    public static String playerName(String nameLine) {
+        int index = nameLine.lastIndexOf(ROOM_FIELD);
+        return (index < 0 ? nameLine : nameLine.substring(0, index)).trim();
+    }
+
+    private Room createRoom(String id, int capacity) {
+        Loop loop = loops[nextLoop++ % loops.length];
+        String topic = id.equals(Room.DEFAULT_ID) ? baseTopic : baseTopic + "." + id;
+        int number = nextNumber++ & 0xFFFF;
+        Room room = new Room(id, number, topic, capacity, loop, publisher, transport, winCondition, spawnPeriodMillis,
+                spawnJitter, spawnSeed, cluster, events, journal);
+        events.room(number, capacity, id);
+        rooms.put(id, room);
+        loop.execute(() -> loop.rooms.add(room));
+        // La sala por defecto existe siempre en todos los nodos
+        if (cluster != null && !room.isCoordinator() && !id.equals(Room.DEFAULT_ID)) {
+            cluster.roomOpened(room);
+        }
+        // Los nodos que ya tienen la sala toman la semilla de este coordinador (p.ej. tras reiniciarse)
+        if (cluster != null && room.isCoordinator()) cluster.announceRound(room);
+        return room;
+    }
+
+    /** Event loop de un grupo de salas; todo su estado lo toca solo su hilo. */
+    final class Loop implements Runnable {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // Los golpes van aparte, en registros preasignados: sin lambda ni nodo por golpe
+        private final HitQueue hits = new HitQueue(HIT_QUEUE_CAPACITY);
+        private final HitQueue.Handler processHit = this::processHit;
+        private final List<Room> rooms = new ArrayList<>();
+        private final Thread thread;
+        private volatile boolean idle;
+
+        Loop(int index) {
+            this.thread = new Thread(this, "room-loop-" + index);
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (idle) LockSupport.unpark(thread);
+        }
+
+        void hit(Room room, int slot, int x, int y, int monsterId, long clientMillis) {
+            if (!hits.offer(room, slot, x, y, monsterId, clientMillis)) {
+                // Cola llena: el golpe no se pierde, va por la cola de tareas
+                execute(() -> room.processHit(slot, x, y, monsterId, clientMillis));
+                return;
+            }
+            if (idle) LockSupport.unpark(thread);
+        }
+
+        private void processHit(Room room, int slot, int x, int y, int monsterId, long clientMillis) {
+            try {
+                room.processHit(slot, x, y, monsterId, clientMillis);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public void run() {
+            long plannedWakeUp = System.nanoTime();
+            while (running) {
+                Runnable task;
+                for (int i = 0; i < DRAIN_BATCH && (task = tasks.poll()) != null; i++) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+                hits.drain(processHit, DRAIN_BATCH);
+                long now = System.nanoTime();
+                // Solo cuenta si ya pasó la hora pedida (un unpark por un golpe no es retraso)
+                if (now - plannedWakeUp >= 0) loopDrift.record((now - plannedWakeUp) / 1000);
+                long wakeUp = now + MAX_PARK_NANOS;
+                for (int i = 0; i < rooms.size(); i++) {
+                    try {
+                        long next = rooms.get(i).tick(now);
+                        if (next - wakeUp < 0) wakeUp = next;
+                    } catch (RuntimeException e) {
+                        // Un fallo en una sala no debe parar a las demás del loop
+                        e.printStackTrace();
+                    }
+                }
+                plannedWakeUp = wakeUp;
+                idle = true;
+                // Volvemos a mirar tras marcar idle para no perder un unpark
+                if (tasks.isEmpty() && hits.isEmpty() && running) LockSupport.parkNanos(wakeUp - System.nanoTime());
+                idle = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Informe sobre el historial de {@link ResultsStore}.
+ *
+ *   java RunReport list
+ *   java RunReport show <run>
+ *   java RunReport compare <base> <candidato>
+ *   java RunReport by <clave>
+ *
+ * Una ejecución se indica por su id (o un prefijo), por {@code last} / {@code last-N},
+ * o con un selector {@code clave=valor} (p. ej. {@code clients=500}) que junta los
+ * histogramas de todas las ejecuciones con esa configuración. {@code by clients} da
+ * una fila por número de clientes con los percentiles y la tasa de éxito.
+ *
+ * {@code compare} marca como regresión cualquier percentil de latencia que empeore más
+ * de -Dmonsters.report.threshold por ciento (10 por defecto) o una caída de la tasa
+ * de éxito de más de ese número de puntos, y en ese caso termina con código 2 para
+ * poder usarlo antes de desplegar.
+ */
+public class RunReport {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] LATENCIES = {"reaction", "registration", "publish"};
+
+    private final List<ResultsStore.Run> runs;
+    private final double threshold = GameConfig.integer("monsters.report.threshold", 10);
+
+    public RunReport(List<ResultsStore.Run> runs) {
+        this.runs = runs;
+    }
+
+    public static void main(String[] args) throws IOException {
+        ResultsStore store = ResultsStore.fromConfig();
+        RunReport report = new RunReport(store.readAll());
+        String command = args.length > 0 ? args[0] : "list";
+        try {
+            switch (command) {
+                case "list":
+                    report.list();
+                    break;
+                case "show":
+                    report.show(report.select(arg(args, 1)));
+                    break;
+                case "compare":
+                    boolean regressed = report.compare(report.select(arg(args, 1)), report.select(arg(args, 2)));
+                    if (regressed) System.exit(2);
+                    break;
+                case "by":
+                    report.by(arg(args, 1));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Comando desconocido: " + command);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Uso: java RunReport [list | show <run> | compare <base> <candidato> | by <clave>]"
+                    + " (historial: " + store.path() + ")");
+            System.exit(1);
+        }
+    }
+
+    private static String arg(String[] args, int index) {
+        if (args.length <= index) throw new IllegalArgumentException("Faltan argumentos");
+        return args[index];
+    }
+
+    public void list() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        System.out.printf("%-14s %-19s %8s %8s %12s %s%n", "RUN", "START", "CLIENTS", "SUCCESS%", "REACT_P99ms", "WINNER");
+        for (ResultsStore.Run run : runs) {
+            System.out.printf("%-14s %-19s %8s %8.1f %12.2f %s%n", run.id, format.format(new Date(run.startMillis)),
+                    run.config.getOrDefault("clients", "?"), run.metric("successRate"),
+                    percentileMillis(run.histograms.get("reaction"), 99), run.winner);
+        }
+    }
+
+    public void show(Selection selection) {
+        System.out.println(selection.label + " (" + selection.runs.size() + " ejecuciones)");
+        ResultsStore.Run last = selection.runs.get(selection.runs.size() - 1);
+        System.out.println("  config: " + last.config);
+        System.out.println("  entorno: " + last.environment);
+        for (Map.Entry<String, Double> metric : selection.metrics().entrySet()) {
+            System.out.printf("  %-22s %.2f%n", metric.getKey(), metric.getValue());
+        }
+        for (String name : LATENCIES) {
+            LatencyRecorder.Snapshot snapshot = selection.histogram(name);
+            if (snapshot == null) continue;
+            StringBuilder line = new StringBuilder(String.format("  %-12s n=%-8d", name, snapshot.count()));
+            for (double p : PERCENTILES) {
+                line.append(String.format(" p%s=%.2f", trim(p), percentileMillis(snapshot, p)));
+            }
+            line.append(String.format(" max=%.2f ms", snapshot.max() / 1000.0));
+            System.out.println(line);
+        }
+    }
+
+    /** Compara dos selecciones y devuelve true si hay alguna regresión. */
+    public boolean compare(Selection base, Selection candidate) {
+        System.out.println("Base:      " + base.label + " (" + base.runs.size() + " ejecuciones)");
+        System.out.println("Candidato: " + candidate.label + " (" + candidate.runs.size() + " ejecuciones)");
+        printConfigDiff(base.runs.get(base.runs.size() - 1), candidate.runs.get(candidate.runs.size() - 1));
+        System.out.printf("%-22s %12s %12s %9s%n", "METRIC", "BASE", "CANDIDATE", "CHANGE");
+
+        boolean regressed = false;
+        for (String name : LATENCIES) {
+            LatencyRecorder.Snapshot a = base.histogram(name);
+            LatencyRecorder.Snapshot b = candidate.histogram(name);
+            if (a == null || b == null || a.count() == 0 || b.count() == 0) continue;
+            for (double p : PERCENTILES) {
+                regressed |= row(name + " p" + trim(p) + " ms", percentileMillis(a, p), percentileMillis(b, p), true);
+            }
+        }
+        double baseSuccess = base.metrics().getOrDefault("successRate", Double.NaN);
+        double candidateSuccess = candidate.metrics().getOrDefault("successRate", Double.NaN);
+        if (!Double.isNaN(baseSuccess) && !Double.isNaN(candidateSuccess)) {
+            // La tasa de éxito ya es un porcentaje: se compara en puntos
+            boolean worse = baseSuccess - candidateSuccess > threshold;
+            System.out.printf("%-22s %12.2f %12.2f %+8.1fp%s%n", "successRate %", baseSuccess, candidateSuccess,
+                    candidateSuccess - baseSuccess, worse ? "  REGRESSION" : "");
+            regressed |= worse;
+        }
+        regressed |= row("droppedSpawns", base.metrics().getOrDefault("droppedSpawns", 0.0),
+                candidate.metrics().getOrDefault("droppedSpawns", 0.0), true);
+        System.out.println(regressed ? "Regresión por encima del " + trim(threshold) + "%" : "Sin regresiones");
+        return regressed;
+    }
+
+    /** Una fila por valor de la clave de configuración (p. ej. clients), juntando ejecuciones. */
+    public void by(String key) {
+        Map<String, List<ResultsStore.Run>> groups = new TreeMap<>(RunReport::compareValues);
+        for (ResultsStore.Run run : runs) {
+            groups.computeIfAbsent(run.config.getOrDefault(key, "-"), k -> new ArrayList<>()).add(run);
+        }
+        System.out.printf("%-12s %5s %9s %11s %11s %11s %11s%n", key.toUpperCase(), "RUNS", "SUCCESS%",
+                "REACT_P50", "REACT_P99", "REG_P99", "PUB_P99");
+        for (Map.Entry<String, List<ResultsStore.Run>> group : groups.entrySet()) {
+            Selection selection = new Selection(key + "=" + group.getKey(), group.getValue());
+            System.out.printf("%-12s %5d %9.1f %11.2f %11.2f %11.2f %11.2f%n", group.getKey(), selection.runs.size(),
+                    selection.metrics().getOrDefault("successRate", Double.NaN),
+                    percentileMillis(selection.histogram("reaction"), 50),
+                    percentileMillis(selection.histogram("reaction"), 99),
+                    percentileMillis(selection.histogram("registration"), 99),
+                    percentileMillis(selection.histogram("publish"), 99));
+        }
+    }
+
+    /** Resuelve un id, prefijo, last / last-N o selector clave=valor. */
+    public Selection select(String spec) {
+        if (runs.isEmpty()) throw new IllegalArgumentException("El historial está vacío");
+        if (spec.equals("last") || spec.startsWith("last-")) {
+            int back = spec.equals("last") ? 0 : Integer.parseInt(spec.substring(5));
+            if (back >= runs.size()) throw new IllegalArgumentException("Solo hay " + runs.size() + " ejecuciones");
+            ResultsStore.Run run = runs.get(runs.size() - 1 - back);
+            return new Selection(run.id, List.of(run));
+        }
+        List<ResultsStore.Run> matched = new ArrayList<>();
+        int eq = spec.indexOf('=');
+        for (ResultsStore.Run run : runs) {
+            if (eq > 0 ? spec.substring(eq + 1).equals(run.config.get(spec.substring(0, eq))) : run.id.startsWith(spec)) {
+                matched.add(run);
+            }
+        }
+        if (matched.isEmpty()) throw new IllegalArgumentException("Ninguna ejecución coincide con " + spec);
+        if (eq < 0 && matched.size() > 1) throw new IllegalArgumentException("Prefijo ambiguo: " + spec);
+        return new Selection(eq > 0 ? spec : matched.get(0).id, matched);
+    }
+
+    private boolean row(String metric, double base, double candidate, boolean higherIsWorse) {
+        double change = base == 0 ? (candidate == 0 ? 0 : 100) : (candidate - base) / base * 100;
+        boolean worse = higherIsWorse ? change > threshold : change < -threshold;
+        System.out.printf("%-22s %12.2f %12.2f %+8.1f%%%s%n", metric, base, candidate, change, worse ? "  REGRESSION" : "");
+        return worse;
+    }
+
+    private static void printConfigDiff(ResultsStore.Run a, ResultsStore.Run b) {
+        Set<String> keys = new TreeSet<>(a.config.keySet());
+        keys.addAll(b.config.keySet());
+        for (String key : keys) {
+            String left = a.config.get(key);
+            String right = b.config.get(key);
+            if (!Objects.equals(left, right)) System.out.println("  config " + key + ": " + left + " -> " + right);
+        }
+        if (!a.environment.equals(b.environment)) {
+            System.out.println("  entorno distinto: " + a.environment + " -> " + b.environment);
+        }
+    }
+
+    private static double percentileMillis(LatencyRecorder.Snapshot snapshot, double p) {
+        return snapshot == null ? Double.NaN : snapshot.percentile(p) / 1000.0;
+    }
+
+    private static String trim(double value) {
+        return value == (long) value ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    // Orden numérico cuando se puede (clients=50 antes que clients=500)
+    private static int compareValues(String a, String b) {
+        try {
+            return Double.compare(Double.parseDouble(a), Double.parseDouble(b));
+        } catch (NumberFormatException e) {
+            return a.compareTo(b);
+        }
+    }
+
+    /** Una o varias ejecuciones que se tratan como una: histogramas sumados, métricas promediadas. */
+    public static final class Selection {
+        final String label;
+        final List<ResultsStore.Run> runs;
+
+        Selection(String label, List<ResultsStore.Run> runs) {
+            this.label = label;
+            this.runs = runs;
+        }
+
+        LatencyRecorder.Snapshot histogram(String name) {
+            LatencyRecorder.Snapshot merged = null;
+            for (ResultsStore.Run run : runs) {
+                LatencyRecorder.Snapshot snapshot = run.histograms.get(name);
+                if (snapshot != null) merged = merged == null ? snapshot : merged.merge(snapshot);
+            }
+            return merged;
+        }
+
+        Map<String, Double> metrics() {
+            Map<String, Double> sums = new TreeMap<>();
+            Map<String, Integer> counts = new HashMap<>();
+            for (ResultsStore.Run run : runs) {
+                for (Map.Entry<String, Double> metric : run.metrics.entrySet()) {
+                    sums.merge(metric.getKey(), metric.getValue(), Double::sum);
+                    counts.merge(metric.getKey(), 1, Integer::sum);
+                }
+            }
+            sums.replaceAll((name, sum) -> sum / counts.get(name));
+            return sums;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Marcador sin bloqueos ni boxing en el camino de los golpes.
+ *
+ * Cada jugador recibe un slot entero denso al registrarse (el único acceso al mapa
+ * por nombre). El puntaje de cada slot vive en un long que empaqueta
+ * (ronda en los 32 bits altos | puntos en los 32 bajos): un puntaje de una ronda
+ * anterior cuenta como 0, así que reiniciar la partida es O(1) y no se cuela
+ * ningún golpe de la ronda vieja en la nueva.
+ *
+ * El estado de la ronda es (número de ronda << 1 | bit de "ya hay ganador"); el
+ * ganador se decide con un único CAS sobre ese valor, exactamente una vez por ronda.
+ */
+public class ScoreBoard {
+
+    public static final int NO_SLOT = -1;
+    /** Valor devuelto por {@link #hit(int)} cuando la ronda ya tiene ganador. */
+    public static final long ROUND_CLOSED = -1L;
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> names;
+    private final AtomicLongArray cells;
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final AtomicLong roundState = new AtomicLong();
+
+    public ScoreBoard(int capacity) {
+        this.capacity = capacity;
+        this.names = new AtomicReferenceArray<>(capacity);
+        this.cells = new AtomicLongArray(capacity);
+    }
+
+    /** Devuelve el slot del jugador (el mismo si ya estaba registrado) o NO_SLOT si no hay sitio. */
+    public int register(String playerName) {
+        Integer slot = slots.computeIfAbsent(playerName, name -> {
+            int next = nextSlot.getAndIncrement();
+            if (next >= capacity) return null;
+            names.set(next, name);
+            return next;
+        });
+        return slot == null ? NO_SLOT : slot;
+    }
+
+    public String name(int slot) {
+        return names.get(slot);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int playerCount() {
+        return Math.min(nextSlot.get(), capacity);
+    }
+
+    public int round() {
+        return (int) (roundState.get() >>> 1);
+    }
+
+    public boolean isRoundOpen() {
+        return (roundState.get() & 1) == 0;
+    }
+
+    /** Puntaje del jugador en la ronda actual. */
+    public int score(int slot) {
+        long cell = cells.get(slot);
+        return (cell >>> 32) == round() ? (int) cell : 0;
+    }
+
+    /**
+     * Suma un golpe al jugador. Devuelve un "ticket" con la ronda y el nuevo puntaje
+     * (ver {@link #scoreOf(long)} y {@link #roundOf(long)}), o ROUND_CLOSED si la
+     * ronda ya tiene ganador.
+     *
+     * La ronda se vuelve a leer en cada intento: si el CAS falla porque la celda ya es
+     * de una ronda posterior, la ronda leída se cerró entre medias y el golpe no pisa
+     * el punto de la nueva.
+     */
+    public long hit(int slot) {
+        while (true) {
+            long state = roundState.get();
+            if ((state & 1) != 0) return ROUND_CLOSED;
+            long round = state >>> 1;
+            long cell = cells.get(slot);
+            if ((cell >>> 32) > round) return ROUND_CLOSED;
+            long next = (cell >>> 32) == round ? cell + 1 : (round << 32) | 1;
+            if (cells.compareAndSet(slot, cell, next)) return next;
+        }
+    }
+
+    public static int scoreOf(long ticket) {
+        return (int) ticket;
+    }
+
+    public static int roundOf(long ticket) {
+        return (int) (ticket >>> 32);
+    }
+
+    /** Intenta declarar ganador de la ronda dada; solo un llamador por ronda recibe true. */
+    public boolean claimWin(int round) {
+        long open = (long) round << 1;
+        return roundState.compareAndSet(open, open | 1);
+    }
+
+    /** Abre la ronda siguiente a una ya ganada. Los puntajes quedan en 0 de forma perezosa. */
+    public boolean startNextRound(int wonRound) {
+        long won = ((long) wonRound << 1) | 1;
+        return roundState.compareAndSet(won, (long) (wonRound + 1) << 1);
+    }
+
+    /** Estado de la ronda tal cual (ronda << 1 | ganador), para el {@link ScoreJournal}. */
+    long roundState() {
+        return roundState.get();
+    }
+
+    /** Celda del slot tal cual (ronda << 32 | puntos), para el {@link ScoreJournal}. */
+    long cell(int slot) {
+        return cells.get(slot);
+    }
+
+    /**
+     * Recuperación: vuelve a poner un jugador en su slot con su celda. Solo antes de
+     * abrir el servidor; si se repite se queda con la celda más avanzada.
+     */
+    void restore(int slot, String playerName, long cell) {
+        if (slot < 0 || slot >= capacity) return;
+        slots.put(playerName, slot);
+        names.set(slot, playerName);
+        cells.accumulateAndGet(slot, cell, Math::max);
+        nextSlot.accumulateAndGet(slot + 1, Math::max);
+    }
+
+    /** Recuperación: avanza el estado de la ronda si el guardado es posterior. */
+    void restoreRound(long state) {
+        roundState.accumulateAndGet(state, Math::max);
+    }
+
+    /**
+     * Salta a la ronda dada, abierta, si es posterior a la actual. Lo usa un nodo que
+     * sigue las rondas que decide otro (el coordinador de la sala en un clúster).
+     */
+    public boolean openRound(int round) {
+        while (true) {
+            long state = roundState.get();
+            if ((state >>> 1) >= round) return false;
+            if (roundState.compareAndSet(state, (long) round << 1)) return true;
+        }
+    }
+}
@@ -0,0 +1,570 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Diario de puntuaciones opcional (-Dmonsters.journal=<directorio>) para que un
+ * reinicio del servidor no borre registros ni puntos.
+ *
+ * Se apuntan tres cosas por marcador: registro (slot y nombre), golpe (el ticket
+ * ronda|puntos que devolvió {@link ScoreBoard#hit}) y cambio de ronda (su estado). Los
+ * tres son idempotentes y monótonos: al reproducirlos basta con quedarse con el
+ * valor más avanzado de cada slot, así que no importa en qué orden los escribieron
+ * los hilos.
+ *
+ * Los golpes van por un {@link RecordRing} sin crear objetos; registros y rondas, que
+ * son raros, por una cola aparte. Un hilo escribe todo en segmentos mapeados en
+ * memoria (journal-N.log) y hace fsync en grupo cada monsters.journal.syncMillis: un
+ * golpe nunca espera a un fsync propio, y como mucho se pierden los de la última
+ * ventana si se cae la máquina. Cada monsters.journal.snapshotSeconds, o al llenarse
+ * un segmento, se pasa a un segmento nuevo, se guarda una foto compacta de todos los
+ * marcadores (snapshot-N.bin) y se borra lo anterior.
+ *
+ * Al arrancar se carga la última foto y se reproducen los segmentos posteriores:
+ * lectura secuencial de registros de 15 bytes, millones en unas decenas de ms.
+ */
+public class ScoreJournal implements AutoCloseable {
+
+    private static final int SEGMENT_MAGIC = 0x4D534A31;  // "MSJ1"
+    private static final int SNAPSHOT_MAGIC = 0x4D535331; // "MSS1"
+    private static final byte BOARD = 1;
+    private static final byte REGISTER = 2;
+    private static final byte HIT = 3;
+    private static final byte ROUND = 4;
+    private static final int HIT_BYTES = 1 + 2 + 4 + 8;
+    private static final int HEADER_BYTES = 4 + 8;
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+
+    private final Path dir;
+    private final long syncNanos;
+    private final long snapshotNanos;
+    private final long segmentBytes;
+    private final RecordRing hits;
+    private final RecordRing.Reader hitWriter = this::writeHit;
+    private final Queue<Control> controls = new ConcurrentLinkedQueue<>();
+    private final LongAdder stalls = new LongAdder();
+    // Marcadores enganchados y estado recuperado que aún no reclamó nadie; protegidos por this
+    private final List<Board> boards = new ArrayList<>();
+    private final Map<String, Recovered> recovered;
+    private int nextBoard;
+    // Solo del hilo escritor
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentSeq;
+    private int synced;
+    private long lastSync;
+    private long lastSnapshot;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private ScoreJournal(Path dir, int capacity, long syncMillis, long snapshotSeconds, long segmentMb)
+            throws IOException {
+        this.dir = dir;
+        this.syncNanos = TimeUnit.MILLISECONDS.toNanos(syncMillis);
+        this.snapshotNanos = TimeUnit.SECONDS.toNanos(snapshotSeconds);
+        this.segmentBytes = segmentMb << 20;
+        this.hits = new RecordRing(capacity, 2);
+        Files.createDirectories(dir);
+        long start = System.nanoTime();
+        this.recovered = new HashMap<>();
+        long nextSeq = recover();
+        int players = 0;
+        for (Recovered r : recovered.values()) {
+            players += r.players();
+        }
+        System.out.printf("Diario %s: %d marcadores, %d jugadores recuperados en %.1f ms%n", dir,
+                recovered.size(), players, (System.nanoTime() - start) / 1e6);
+        openSegment(nextSeq);
+        lastSync = lastSnapshot = System.nanoTime();
+        this.writer = new Thread(this::writeLoop, "score-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private ScoreJournal() {
+        this.dir = null;
+        this.syncNanos = 0;
+        this.snapshotNanos = 0;
+        this.segmentBytes = 0;
+        this.hits = null;
+        this.recovered = new HashMap<>();
+        this.writer = null;
+        this.running = false;
+    }
+
+    /** Diario sin fichero: los marcadores no se guardan (comportamiento original). */
+    public static ScoreJournal disabled() {
+        return new ScoreJournal();
+    }
+
+    /**
+     * -Dmonsters.journal=directorio (sin él no hay diario),
+     * -Dmonsters.journal.syncMillis (10), -Dmonsters.journal.snapshotSeconds (60),
+     * -Dmonsters.journal.segmentMb (64).
+     */
+    public static ScoreJournal fromConfig() {
+        String dir = GameConfig.string("monsters.journal", null);
+        if (dir == null) return disabled();
+        try {
+            return new ScoreJournal(Paths.get(dir), GameConfig.integer("monsters.journal.capacity", 1 << 16),
+                    GameConfig.integer("monsters.journal.syncMillis", 10),
+                    GameConfig.integer("monsters.journal.snapshotSeconds", 60),
+                    GameConfig.integer("monsters.journal.segmentMb", 64));
+        } catch (IOException e) {
+            System.out.println("No se pudo abrir el diario en " + dir + ": " + e.getMessage());
+            return disabled();
+        }
+    }
+
+    public boolean enabled() {
+        return hits != null;
+    }
+
+    /** Veces que un golpe tuvo que esperar porque el anillo del diario estaba lleno. */
+    public long stalls() {
+        return stalls.sum();
+    }
+
+    /**
+     * Engancha un marcador al diario. Si había estado guardado con ese id se restaura
+     * en el marcador antes de devolver, así que hay que llamarlo antes de aceptar
+     * jugadores en él.
+     */
+    public synchronized Board attach(String id, ScoreBoard scoreBoard) {
+        Board board = new Board(this, nextBoard++ & 0xFFFF, id, scoreBoard);
+        if (!enabled()) return board;
+        Recovered state = recovered.remove(id);
+        if (state != null) {
+            for (int slot = 0; slot < state.size; slot++) {
+                if (state.names[slot] != null) scoreBoard.restore(slot, state.names[slot], state.cells[slot]);
+            }
+            scoreBoard.restoreRound(state.roundState);
+            System.out.println("Marcador " + id + " restaurado: " + state.players() + " jugadores, ronda "
+                    + scoreBoard.round());
+        }
+        boards.add(board);
+        controls.add(new Control(BOARD, board, 0, id, 0));
+        return board;
+    }
+
+    private synchronized void detach(Board board) {
+        boards.remove(board);
+    }
+
+    private synchronized List<Board> attachedBoards() {
+        return new ArrayList<>(boards);
+    }
+
+    /** Un marcador enganchado al diario; sus métodos se llaman desde el juego. */
+    public static final class Board {
+        private final ScoreJournal journal;
+        private final int number;
+        private final String id;
+        private final ScoreBoard scoreBoard;
+
+        private Board(ScoreJournal journal, int number, String id, ScoreBoard scoreBoard) {
+            this.journal = journal;
+            this.number = number;
+            this.id = id;
+            this.scoreBoard = scoreBoard;
+        }
+
+        /** Jugador registrado (o reconectado) en el slot. */
+        public void registered(int slot) {
+            if (!journal.enabled()) return;
+            journal.controls.add(new Control(REGISTER, this, slot, scoreBoard.name(slot), 0));
+        }
+
+        /** Golpe que puntuó, con el ticket que devolvió el marcador. */
+        public void hit(int slot, long ticket) {
+            if (journal.enabled()) journal.appendHit(number, slot, ticket);
+        }
+
+        /** La ronda cambió (ganador o ronda nueva). */
+        public void roundChanged() {
+            if (!journal.enabled()) return;
+            journal.controls.add(new Control(ROUND, this, 0, null, scoreBoard.roundState()));
+        }
+
+        /** El marcador ya no importa (sala cerrada): no entra en las próximas fotos. */
+        public void detach() {
+            if (journal.enabled()) journal.detach(this);
+        }
+    }
+
+    private void appendHit(int board, int slot, long ticket) {
+        long position;
+        // Un golpe perdido sería un punto perdido: si el anillo está lleno esperamos al escritor
+        while ((position = hits.claim()) == RecordRing.FULL) {
+            stalls.increment();
+            Thread.yield();
+        }
+        long[] words = hits.words;
+        int base = hits.base(position);
+        words[base] = ((long) board << 32) | (slot & 0xFFFFFFFFL);
+        words[base + 1] = ticket;
+        hits.publish(position);
+    }
+
+    private void writeLoop() {
+        while (running) {
+            int written = writePending();
+            long now = System.nanoTime();
+            if (now - lastSync >= syncNanos) sync(now);
+            if (now - lastSnapshot >= snapshotNanos) rollAndSnapshot();
+            if (written == 0) LockSupport.parkNanos(Math.min(IDLE_PARK_NANOS, syncNanos));
+        }
+        writePending();
+        sync(System.nanoTime());
+    }
+
+    // Registros y rondas primero: así el registro de un slot nunca va detrás de sus golpes
+    private int writePending() {
+        int written = 0;
+        Control control;
+        while ((control = controls.poll()) != null) {
+            writeControl(control);
+            written++;
+        }
+        return written + hits.drain(hitWriter);
+    }
+
+    private void writeControl(Control control) {
+        switch (control.type) {
+            case BOARD:
+                writeBoard(control.board.number, control.name);
+                break;
+            case REGISTER:
+                byte[] name = control.name.getBytes(StandardCharsets.UTF_8);
+                ensureRoom(1 + 2 + 4 + 2 + name.length);
+                segment.put(REGISTER).putShort((short) control.board.number).putInt(control.slot)
+                        .putShort((short) name.length).put(name);
+                break;
+            default:
+                ensureRoom(1 + 2 + 8);
+                segment.put(ROUND).putShort((short) control.board.number).putLong(control.value);
+        }
+    }
+
+    private void writeBoard(int number, String id) {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        ensureRoom(1 + 2 + 2 + bytes.length);
+        segment.put(BOARD).putShort((short) number).putShort((short) bytes.length).put(bytes);
+    }
+
+    private void writeHit(long[] words, int base) {
+        ensureRoom(HIT_BYTES);
+        segment.put(HIT).putShort((short) (words[base] >>> 32)).putInt((int) words[base]).putLong(words[base + 1]);
+    }
+
+    private void ensureRoom(int bytes) {
+        if (segment.remaining() < bytes + 1) rollAndSnapshot();
+    }
+
+    private void sync(long now) {
+        int position = segment.position();
+        if (position > synced) {
+            segment.force(synced, position - synced);
+            synced = position;
+        }
+        lastSync = now;
+    }
+
+    /**
+     * Pasa a un segmento nuevo y guarda la foto de los marcadores. Todo lo escrito en
+     * los segmentos anteriores ya está en los marcadores vivos, así que tras la foto se
+     * pueden borrar; lo que llegue después va al segmento nuevo y se reproduce encima.
+     */
+    private void rollAndSnapshot() {
+        try {
+            sync(System.nanoTime());
+            closeSegment();
+            openSegment(segmentSeq + 1);
+            writeSnapshot(segmentSeq);
+            deleteBefore(segmentSeq);
+        } catch (IOException e) {
+            // Sin foto seguimos escribiendo en el segmento nuevo; se reintenta en el siguiente ciclo
+            e.printStackTrace();
+        }
+        lastSnapshot = System.nanoTime();
+    }
+
+    private void openSegment(long seq) throws IOException {
+        segmentSeq = seq;
+        channel = FileChannel.open(segmentPath(seq), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.putInt(SEGMENT_MAGIC).putLong(seq);
+        synced = 0;
+        // Cada segmento se lee solo: repetimos los números de los marcadores vivos
+        for (Board board : attachedBoards()) {
+            writeBoard(board.number, board.id);
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        int length = segment.position();
+        segment.force();
+        segment = null;
+        channel.truncate(length);
+        channel.close();
+    }
+
+    private void writeSnapshot(long seq) throws IOException {
+        Path tmp = dir.resolve("snapshot.tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(seq);
+            List<Board> live = attachedBoards();
+            List<Map.Entry<String, Recovered>> pending;
+            synchronized (this) {
+                pending = new ArrayList<>(recovered.entrySet());
+            }
+            out.writeInt(live.size() + pending.size());
+            for (Board board : live) {
+                ScoreBoard scoreBoard = board.scoreBoard;
+                out.writeUTF(board.id);
+                out.writeLong(scoreBoard.roundState());
+                int players = scoreBoard.playerCount();
+                for (int slot = 0; slot < players; slot++) {
+                    String name = scoreBoard.name(slot);
+                    if (name == null) continue;
+                    out.writeInt(slot);
+                    out.writeUTF(name);
+                    out.writeLong(scoreBoard.cell(slot));
+                }
+                out.writeInt(-1);
+            }
+            // Marcadores recuperados que todavía nadie abrió: se conservan tal cual
+            for (Map.Entry<String, Recovered> entry : pending) {
+                Recovered state = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(state.roundState);
+                for (int slot = 0; slot < state.size; slot++) {
+                    if (state.names[slot] == null) continue;
+                    out.writeInt(slot);
+                    out.writeUTF(state.names[slot]);
+                    out.writeLong(state.cells[slot]);
+                }
+                out.writeInt(-1);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(tmp, snapshotPath(seq), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void deleteBefore(long seq) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                long fileSeq = sequenceOf(file);
+                if (fileSeq >= 0 && fileSeq < seq) Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /** Carga la última foto válida y reproduce los segmentos posteriores; devuelve el siguiente número de segmento. */
+    private long recover() throws IOException {
+        List<Long> snapshots = new ArrayList<>();
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                long seq = sequenceOf(file);
+                if (seq < 0) continue;
+                (file.getFileName().toString().startsWith("snapshot-") ? snapshots : segments).add(seq);
+            }
+        }
+        snapshots.sort(Collections.reverseOrder());
+        long from = 0;
+        for (long seq : snapshots) {
+            try {
+                readSnapshot(snapshotPath(seq));
+                from = seq;
+                break;
+            } catch (IOException e) {
+                // Foto a medias: probamos la anterior
+                recovered.clear();
+            }
+        }
+        Collections.sort(segments);
+        long next = from;
+        for (long seq : segments) {
+            next = Math.max(next, seq + 1);
+            if (seq >= from) replaySegment(segmentPath(seq));
+        }
+        return next;
+    }
+
+    private void readSnapshot(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) throw new IOException("Foto inválida: " + path);
+            in.readLong();
+            for (int boards = in.readInt(); boards > 0; boards--) {
+                Recovered state = recovered.computeIfAbsent(in.readUTF(), id -> new Recovered());
+                state.round(in.readLong());
+                int slot;
+                while ((slot = in.readInt()) >= 0) {
+                    state.register(slot, in.readUTF());
+                    state.hit(slot, in.readLong());
+                }
+            }
+        }
+    }
+
+    private void replaySegment(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (file.size() < HEADER_BYTES) return;
+            ByteBuffer in = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            if (in.getInt() != SEGMENT_MAGIC) return;
+            in.getLong();
+            Map<Integer, Recovered> byNumber = new HashMap<>();
+            // Se para en el primer hueco (resto sin escribir del mapeo) o registro cortado
+            while (in.remaining() > 0) {
+                byte type = in.get();
+                if (type == HIT && in.remaining() >= HIT_BYTES - 1) {
+                    Recovered state = byNumber.get((int) in.getShort() & 0xFFFF);
+                    int slot = in.getInt();
+                    long ticket = in.getLong();
+                    if (state != null) state.hit(slot, ticket);
+                } else if (type == REGISTER && in.remaining() >= 8) {
+                    Recovered state = byNumber.get((int) in.getShort() & 0xFFFF);
+                    int slot = in.getInt();
+                    String name = readString(in);
+                    if (name == null) break;
+                    if (state != null) state.register(slot, name);
+                } else if (type == ROUND && in.remaining() >= 10) {
+                    Recovered state = byNumber.get((int) in.getShort() & 0xFFFF);
+                    long roundState = in.getLong();
+                    if (state != null) state.round(roundState);
+                } else if (type == BOARD && in.remaining() >= 4) {
+                    int number = in.getShort() & 0xFFFF;
+                    String id = readString(in);
+                    if (id == null) break;
+                    byNumber.put(number, recovered.computeIfAbsent(id, k -> new Recovered()));
+                } else {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        if (in.remaining() < 2) return null;
+        int length = in.getShort() & 0xFFFF;
+        if (in.remaining() < length) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Path segmentPath(long seq) {
+        return dir.resolve(String.format("journal-%010d.log", seq));
+    }
+
+    private Path snapshotPath(long seq) {
+        return dir.resolve(String.format("snapshot-%010d.bin", seq));
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        int dash = name.indexOf('-');
+        int dot = name.lastIndexOf('.');
+        if (dash < 0 || dot < dash || !(name.startsWith("journal-") || name.startsWith("snapshot-"))) return -1;
+        try {
+            return Long.parseLong(name.substring(dash + 1, dot));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Escribe lo pendiente, hace fsync y cierra el segmento. Después de parar a los
+     * jugadores. Espera al escritor sin plazo: el segmento solo se recorta cuando ya no
+     * escribe en él.
+     */
+    @Override
+    public void close() {
+        if (!enabled() || !running) return;
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            // Sigue escribiendo: el segmento se queda como esté y la recuperación lo lee igual
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Registro raro (marcador, jugador o ronda) camino del escritor. */
+    private static final class Control {
+        final byte type;
+        final Board board;
+        final int slot;
+        final String name;
+        final long value;
+
+        Control(byte type, Board board, int slot, String name, long value) {
+            this.type = type;
+            this.board = board;
+            this.slot = slot;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    /** Estado leído del disco para un marcador, a la espera de que alguien lo enganche. */
+    private static final class Recovered {
+        String[] names = new String[16];
+        long[] cells = new long[16];
+        int size;
+        long roundState;
+
+        void register(int slot, String name) {
+            if (slot < 0) return;
+            grow(slot);
+            names[slot] = name;
+        }
+
+        void hit(int slot, long ticket) {
+            if (slot < 0) return;
+            grow(slot);
+            if (ticket > cells[slot]) cells[slot] = ticket;
+        }
+
+        void round(long state) {
+            roundState = Math.max(roundState, state);
+        }
+
+        int players() {
+            int players = 0;
+            for (int i = 0; i < size; i++) {
+                if (names[i] != null) players++;
+            }
+            return players;
+        }
+
+        private void grow(int slot) {
+            if (slot >= names.length) {
+                int length = Math.max(slot + 1, names.length * 2);
+                names = Arrays.copyOf(names, length);
+                cells = Arrays.copyOf(cells, length);
+            }
+            size = Math.max(size, slot + 1);
+        }
+    }
+}
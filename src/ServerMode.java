@@ -0,0 +1,36 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Modo de atención de las conexiones TCP de los jugadores.
+ * Se elige con -Dmonsters.server=threads|virtual|nio (por defecto threads).
+ */
+public enum ServerMode {
+    /** Un hilo de plataforma por socket, leyendo con BufferedReader (comportamiento original). */
+    THREADS,
+    /** Un hilo virtual por socket: mismo código bloqueante, sin el coste de un hilo del SO. */
+    VIRTUAL,
+    /** Pocos event loops sobre java.nio.channels.Selector, sin hilo por jugador. */
+    NIO;
+
+    /**
+     * Ejecutor para el accept loop, el bucle de monstruos y los PlayerHandler.
+     * Un hilo por tarea en ambos casos; solo cambia si es virtual o de plataforma.
+     */
+    public ExecutorService newExecutor() {
+        if (this == VIRTUAL) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newThreadPerTaskExecutor(Thread.ofPlatform().factory());
+    }
+
+    public static ServerMode fromConfig() {
+        String mode = GameConfig.string("monsters.server", "threads");
+        try {
+            return valueOf(mode.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Modo de servidor desconocido: " + mode + ", usando THREADS");
+            return THREADS;
+        }
+    }
+}
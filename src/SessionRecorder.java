@@ -0,0 +1,175 @@
+import java.io.*;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Graba una sesión de StressSender (-Dmonsters.record=fichero) para reproducirla con
+ * {@link SessionReplay}: cada aparición, cada registro y cada golpe que entra, con el
+ * instante (ns desde el inicio) en que lo vio el servidor.
+ *
+ * Los golpes y apariciones van por un {@link RecordRing} sin crear objetos; los
+ * registros, que llevan nombre, por una cola. Un hilo los escribe en un fichero
+ * binario compacto. Si el anillo se llena el productor espera: una grabación con
+ * huecos no se podría reproducir.
+ *
+ * Formato: cabecera "MSR1", semilla (8), hora de inicio en ms (8); después registros
+ *   SPAWN    tipo, t (8), id (4), ronda (4), x (1), y (1)
+ *   REGISTER tipo, t (8), slot (4), nombre (UTF)
+ *   HIT      tipo, t (8), slot (4), id (4), ronda (4), x (1), y (1), timestamp del cliente (8)
+ */
+public class SessionRecorder implements AutoCloseable {
+
+    static final int MAGIC = 0x4D535231; // "MSR1"
+    static final byte SPAWN = 1;
+    static final byte REGISTER = 2;
+    static final byte HIT = 3;
+
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+
+    private final String file;
+    private final long startNanos = System.nanoTime();
+    private final RecordRing ring;
+    private final RecordRing.Reader writer = this::write;
+    private final Queue<Registration> registrations = new ConcurrentLinkedQueue<>();
+    private final DataOutputStream out;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long records;
+
+    private SessionRecorder(String file, long seed) throws IOException {
+        this.file = file;
+        this.ring = new RecordRing(1 << 16, 4);
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeLong(seed);
+        out.writeLong(System.currentTimeMillis());
+        this.thread = new Thread(this::writeLoop, "session-recorder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private SessionRecorder() {
+        this.file = null;
+        this.ring = null;
+        this.out = null;
+        this.thread = null;
+        this.running = false;
+    }
+
+    /** Grabador de -Dmonsters.record, o uno que no hace nada si no está. */
+    public static SessionRecorder fromConfig(long seed) {
+        String file = GameConfig.string("monsters.record", null);
+        if (file == null) return new SessionRecorder();
+        try {
+            System.out.println("Grabando la sesión en " + file);
+            return new SessionRecorder(file, seed);
+        } catch (IOException e) {
+            System.out.println("No se pudo grabar la sesión en " + file + ": " + e.getMessage());
+            return new SessionRecorder();
+        }
+    }
+
+    public boolean enabled() {
+        return ring != null;
+    }
+
+    public void spawn(int monsterId, int x, int y, int round) {
+        if (ring == null) return;
+        append(SPAWN, 0, monsterId, round, x, y, 0);
+    }
+
+    public void hit(int slot, WireProtocol.Frame hit) {
+        if (ring == null) return;
+        append(HIT, slot, hit.monsterId, hit.round, hit.x, hit.y, hit.timestamp);
+    }
+
+    public void register(int slot, String playerName) {
+        if (ring == null) return;
+        registrations.add(new Registration(System.nanoTime() - startNanos, slot, playerName));
+    }
+
+    private void append(byte type, int slot, int monsterId, int round, int x, int y, long clientMillis) {
+        long position;
+        while ((position = ring.claim()) == RecordRing.FULL) {
+            Thread.yield();
+        }
+        long[] words = ring.words;
+        int base = ring.base(position);
+        words[base] = ((long) type << 56) | ((long) (x & 0xFF) << 48) | ((long) (y & 0xFF) << 40) | (slot & 0xFFFFFFFFL);
+        words[base + 1] = System.nanoTime() - startNanos;
+        words[base + 2] = ((long) monsterId << 32) | (round & 0xFFFFFFFFL);
+        words[base + 3] = clientMillis;
+        ring.publish(position);
+    }
+
+    private void writeLoop() {
+        while (running) {
+            if (writePending() == 0) LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        writePending();
+    }
+
+    // Registros primero: el de un jugador siempre va antes que sus golpes
+    private int writePending() {
+        int written = 0;
+        try {
+            Registration registration;
+            while ((registration = registrations.poll()) != null) {
+                out.writeByte(REGISTER);
+                out.writeLong(registration.nanos);
+                out.writeInt(registration.slot);
+                out.writeUTF(registration.name);
+                written++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return written + ring.drain(writer);
+    }
+
+    private void write(long[] words, int base) {
+        try {
+            long header = words[base];
+            byte type = (byte) (header >>> 56);
+            out.writeByte(type);
+            out.writeLong(words[base + 1]);
+            if (type == HIT) out.writeInt((int) header);
+            out.writeLong(words[base + 2]);
+            out.writeByte((int) (header >>> 48));
+            out.writeByte((int) (header >>> 40));
+            if (type == HIT) out.writeLong(words[base + 3]);
+            records++;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ring == null || !running) return;
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(5000);
+            out.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        System.out.println("Sesión grabada en " + file + " (" + records + " apariciones y golpes)");
+    }
+
+    private static final class Registration {
+        final long nanos;
+        final int slot;
+        final String name;
+
+        Registration(long nanos, int slot, String name) {
+            this.nanos = nanos;
+            this.slot = slot;
+            this.name = name;
+        }
+    }
+}
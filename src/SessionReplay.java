@@ -0,0 +1,159 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reproduce una sesión grabada con -Dmonsters.record contra un StressSender nuevo,
+ * sin sockets ni clientes: los registros, apariciones y golpes entran en el mismo
+ * orden y, con velocidad 1, al mismo ritmo que en la grabación.
+ *
+ * Uso: java SessionReplay sesion.bin [velocidad]
+ *   velocidad: 1 (tiempo real, por defecto), N (N veces más rápido) o "max" (sin esperas)
+ *
+ * La caducidad de los monstruos se calcula con el reloj de la grabación, no con el
+ * de la reproducción, así que los mismos golpes aciertan o fallan a cualquier
+ * velocidad. Los tiempos de reacción se reconstruyen a partir de los grabados. Con
+ * -Dmonsters.results.store la ejecución queda en el histórico como cualquier otra,
+ * con el fichero reproducido en su configuración (monsters.replay.file).
+ */
+public class SessionReplay {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Uso: java SessionReplay sesion.bin [velocidad|max]");
+            return;
+        }
+        String file = args[0];
+        String speedArg = args.length > 1 ? args[1] : "1";
+        double speed = speedArg.equalsIgnoreCase("max") ? 0 : Double.parseDouble(speedArg);
+
+        Session session = Session.read(file);
+        System.out.println("Sesión " + file + ": " + session.records.size() + " registros, "
+                + session.players + " jugadores, semilla " + session.seed
+                + ", velocidad " + (speed > 0 ? speed + "x" : "max"));
+
+        // El histórico guarda las propiedades monsters.*: así se sabe qué se reprodujo
+        System.setProperty("monsters.replay.file", file);
+        System.setProperty("monsters.replay.speed", speed > 0 ? String.valueOf(speed) : "max");
+        if (System.getProperty("monsters.seed") == null) {
+            System.setProperty("monsters.seed", String.valueOf(session.seed));
+        }
+
+        StressSender sender = new StressSender(session.players);
+        long replayed = replay(session, sender, speed);
+
+        System.out.println("Reproducidos " + replayed + " de " + session.records.size() + " registros.");
+        // Si la grabación acabó con el último ganador, el servidor ya se está cerrando solo
+        if (sender.isRunning()) {
+            System.out.println("Fin de la grabación sin ganador final; deteniendo el servidor.");
+            sender.stop();
+        }
+    }
+
+    private static long replay(Session session, StressSender sender, double speed) throws InterruptedException {
+        Map<Integer, Integer> slots = new HashMap<>();
+        WireProtocol.Frame hit = new WireProtocol.Frame();
+        // El reloj de la grabación empieza ahora; solo lo usa la caducidad
+        long startNanos = System.nanoTime();
+        long replayed = 0;
+        for (Record record : session.records) {
+            if (!sender.isRunning()) break;
+            if (speed > 0) {
+                long due = startNanos + (long) (record.nanos / speed);
+                long wait = due - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            long sessionNanos = startNanos + record.nanos;
+            switch (record.type) {
+                case SessionRecorder.REGISTER -> slots.put(record.slot, sender.replayRegister(record.name));
+                case SessionRecorder.SPAWN -> sender.replaySpawn(record.monsterId, record.x, record.y, sessionNanos);
+                case SessionRecorder.HIT -> {
+                    Integer slot = slots.get(record.slot);
+                    if (slot == null || slot == ScoreBoard.NO_SLOT) continue;
+                    hit.clear(WireProtocol.HIT);
+                    hit.monsterId = record.monsterId;
+                    hit.round = record.round;
+                    hit.x = record.x;
+                    hit.y = record.y;
+                    // Misma reacción que en la grabación, medida desde ahora
+                    long reactionMillis = session.startMillis + record.nanos / 1_000_000 - record.clientMillis;
+                    hit.timestamp = System.currentTimeMillis() - reactionMillis;
+                    sender.replayHit(slot, hit, sessionNanos);
+                }
+            }
+            replayed++;
+        }
+        return replayed;
+    }
+
+    /** Una sesión grabada, ya ordenada por instante. */
+    static final class Session {
+        long seed;
+        long startMillis;
+        int players;
+        final List<Record> records = new ArrayList<>();
+
+        static Session read(String file) throws IOException {
+            Session session = new Session();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+                if (in.readInt() != SessionRecorder.MAGIC) throw new IOException(file + " no es una sesión grabada");
+                session.seed = in.readLong();
+                session.startMillis = in.readLong();
+                while (true) {
+                    int type = in.read();
+                    if (type < 0) break;
+                    try {
+                        session.records.add(readRecord((byte) type, in));
+                    } catch (EOFException e) {
+                        // Cola cortada (proceso muerto a mitad de escritura): se ignora
+                        break;
+                    }
+                }
+            }
+            // Los registros de jugador se escriben antes que los golpes pendientes: el
+            // orden estable por instante recupera el de llegada
+            session.records.sort((a, b) -> Long.compare(a.nanos, b.nanos));
+            for (Record record : session.records) {
+                if (record.type == SessionRecorder.REGISTER) session.players++;
+            }
+            return session;
+        }
+
+        private static Record readRecord(byte type, DataInputStream in) throws IOException {
+            Record record = new Record();
+            record.type = type;
+            record.nanos = in.readLong();
+            if (type == SessionRecorder.REGISTER) {
+                record.slot = in.readInt();
+                record.name = in.readUTF();
+                return record;
+            }
+            if (type != SessionRecorder.SPAWN && type != SessionRecorder.HIT) {
+                throw new IOException("Tipo de registro desconocido: " + type);
+            }
+            if (type == SessionRecorder.HIT) record.slot = in.readInt();
+            long idAndRound = in.readLong();
+            record.monsterId = (int) (idAndRound >>> 32);
+            record.round = (int) idAndRound;
+            record.x = in.readByte();
+            record.y = in.readByte();
+            if (type == SessionRecorder.HIT) record.clientMillis = in.readLong();
+            return record;
+        }
+    }
+
+    static final class Record {
+        byte type;
+        long nanos;
+        int slot;
+        String name;
+        int monsterId;
+        int round;
+        int x;
+        int y;
+        long clientMillis;
+    }
+}
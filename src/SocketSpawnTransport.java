@@ -0,0 +1,209 @@
+import java.lang.invoke.VarHandle;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Deltas por el socket de cada jugador, sin broker: la línea
+ * "DELTA seq enviado &lt;aparición o retirada&gt;" ({@link WireProtocol#deltaText}) se
+ * escribe a todos los jugadores del tópico. Va en texto también en conexiones binarias,
+ * como la foto y los PONG: el cliente ya lee líneas.
+ *
+ * Las salas solo encolan (una cola acotada sin bloqueos, como {@link JmsPublisher}); un
+ * hilo propio formatea cada delta una vez y la reparte. En modo NIO el envío solo encola
+ * en la conexión, que ya está acotada (cierra al jugador que no lee). Con un hilo por jugador el envío es un println que bloquea si el
+ * jugador no lee, así que cada uno tiene su buzón acotado ({@code -Dmonsters.socket.outbox},
+ * 256 líneas) que vacía un hilo virtual suyo: con el buzón lleno sus deltas se descartan
+ * (el hueco le hace pedir SYNC) y el resto de jugadores no se entera.
+ *
+ * Solo llega a los jugadores de este servidor: en un clúster las salas con jugadores en
+ * otros nodos necesitan jms o multicast.
+ */
+public class SocketSpawnTransport implements SpawnTransport {
+
+    // Sin deltas el hilo duerme hasta que lo despierte publish(); el plazo es solo de seguridad
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+    // El unpark de un buzón no se pierde (ver Outbox.accept); este plazo es solo de seguridad
+    private static final long OUTBOX_PARK_NANOS = 1_000_000_000L;
+    private static final int OUTBOX_CAPACITY = GameConfig.integer("monsters.socket.outbox", 256);
+
+    private final Map<String, Map<Object, Consumer<String>>> players = new ConcurrentHashMap<>();
+    private final BoundedMpscQueue<Delta> queue;
+    // Deltas descartadas con la cola llena, más copias descartadas con el buzón de un jugador lleno
+    private final LongAdder dropped = new LongAdder();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean idle;
+
+    private static final class Delta {
+        final String topic;
+        final byte type;
+        final int monsterId;
+        final int x;
+        final int y;
+        final int round;
+        final long timestamp;
+        final long seq;
+
+        Delta(String topic, byte type, int monsterId, int x, int y, int round, long timestamp, long seq) {
+            this.topic = topic;
+            this.type = type;
+            this.monsterId = monsterId;
+            this.x = x;
+            this.y = y;
+            this.round = round;
+            this.timestamp = timestamp;
+            this.seq = seq;
+        }
+    }
+
+    public SocketSpawnTransport(int queueCapacity) {
+        queue = new BoundedMpscQueue<>(queueCapacity);
+        thread = new Thread(this::run, "socket-push");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public boolean publish(String topic, byte type, int monsterId, int x, int y, int round, long timestamp, long seq) {
+        // Sin jugadores en el tópico no hay nada que encolar
+        Map<Object, Consumer<String>> subscribers = players.get(topic);
+        if (subscribers == null || subscribers.isEmpty()) return true;
+        if (!queue.offer(new Delta(topic, type, monsterId, x, y, round, timestamp, seq))) {
+            dropped.increment();
+            return false;
+        }
+        if (idle) LockSupport.unpark(thread);
+        return true;
+    }
+
+    @Override
+    public void join(String topic, Object player, Consumer<String> send, boolean blocking) {
+        if (blocking) {
+            Outbox outbox = new Outbox(send);
+            outbox.writer.start();
+            send = outbox;
+        }
+        players.computeIfAbsent(topic, t -> new ConcurrentHashMap<>()).put(player, send);
+    }
+
+    @Override
+    public void leave(String topic, Object player) {
+        Map<Object, Consumer<String>> subscribers = players.get(topic);
+        if (subscribers == null) return;
+        Consumer<String> send = subscribers.remove(player);
+        if (send instanceof Outbox) ((Outbox) send).close();
+    }
+
+    @Override
+    public String infoFields() {
+        return "TRANSPORT=" + SOCKET;
+    }
+
+    @Override
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public long droppedSpawns() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Map<Object, Consumer<String>> subscribers : players.values()) {
+            for (Consumer<String> send : subscribers.values()) {
+                if (send instanceof Outbox) ((Outbox) send).close();
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Delta delta = queue.poll();
+            if (delta == null) {
+                if (!running) break;
+                idle = true;
+                // Volvemos a mirar tras marcar idle para no perder un unpark
+                if (queue.peek() == null) LockSupport.parkNanos(IDLE_PARK_NANOS);
+                idle = false;
+                continue;
+            }
+            Map<Object, Consumer<String>> subscribers = players.get(delta.topic);
+            if (subscribers == null) continue;
+            String body = delta.type == WireProtocol.CLEAR
+                    ? WireProtocol.clearText(delta.monsterId, delta.x, delta.y, delta.round)
+                    : WireProtocol.spawnText(delta.monsterId, delta.x, delta.y, delta.round, delta.timestamp);
+            String line = WireProtocol.deltaText(delta.seq, GameClock.nowNanos(), body);
+            for (Consumer<String> send : subscribers.values()) {
+                try {
+                    send.accept(line);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Buzón de un jugador con envío bloqueante: el hilo del transporte encola sin esperar
+     * y un hilo virtual del jugador escribe. Un solo productor y un solo consumidor.
+     */
+    private final class Outbox implements Consumer<String>, Runnable {
+        final BoundedMpscQueue<String> lines = new BoundedMpscQueue<>(OUTBOX_CAPACITY);
+        final Consumer<String> send;
+        final Thread writer;
+        volatile boolean open = true;
+        volatile boolean idle;
+
+        Outbox(Consumer<String> send) {
+            this.send = send;
+            this.writer = Thread.ofVirtual().name("socket-outbox").unstarted(this);
+        }
+
+        // Hilo del transporte
+        @Override
+        public void accept(String line) {
+            if (!lines.offer(line)) {
+                dropped.increment();
+                return;
+            }
+            // offer publica con lazySet: la barrera evita leer un idle viejo y dejar al escritor dormido
+            VarHandle.fullFence();
+            if (idle) LockSupport.unpark(writer);
+        }
+
+        @Override
+        public void run() {
+            while (open) {
+                String line = lines.poll();
+                if (line == null) {
+                    idle = true;
+                    if (lines.peek() == null && open) LockSupport.parkNanos(OUTBOX_PARK_NANOS);
+                    idle = false;
+                    continue;
+                }
+                try {
+                    send.accept(line);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        void close() {
+            open = false;
+            LockSupport.unpark(writer);
+        }
+    }
+}
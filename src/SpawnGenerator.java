@@ -0,0 +1,51 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Celdas de las apariciones a partir de una semilla: la celda del monstruo n es un
+ * hash de (semilla, n), sin estado. Con la misma semilla dos ejecuciones (o dos nodos
+ * de un clúster) lanzan exactamente los mismos monstruos, en el orden que sea.
+ *
+ * La semilla sale de -Dmonsters.seed; si no se da, se elige una al azar y se imprime
+ * para poder repetir la ejecución.
+ */
+public class SpawnGenerator {
+
+    private final long seed;
+
+    public SpawnGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /** -Dmonsters.seed, o {@code defaultSeed} si no está. */
+    public static long seedFromConfig(long defaultSeed) {
+        String value = GameConfig.string("monsters.seed", null);
+        if (value == null) return defaultSeed;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            // Cualquier texto vale como semilla
+            return ConsistentHashRing.hash(value);
+        }
+    }
+
+    /** Si se dio -Dmonsters.seed. */
+    public static boolean seedConfigured() {
+        return GameConfig.string("monsters.seed", null) != null;
+    }
+
+    /** -Dmonsters.seed, o una al azar que se imprime. */
+    public static long seedFromConfig() {
+        long seed = seedFromConfig(ThreadLocalRandom.current().nextLong());
+        System.out.println("Spawn seed: " + seed + " (repetir con -Dmonsters.seed=" + seed + ")");
+        return seed;
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    /** Celda (x * 9 + y) del monstruo número {@code n}. */
+    public int cell(long n) {
+        return (int) Long.remainderUnsigned(ConsistentHashRing.mix(seed ^ n), LiveMonsterIndex.CELLS);
+    }
+}
@@ -0,0 +1,242 @@
+import java.util.function.IntSupplier;
+
+/**
+ * Ritmo de las apariciones: ticks a intervalo fijo sobre una línea de tiempo que no
+ * deriva, con varios monstruos por tick, una curva a lo largo de la ronda y un freno
+ * automático cuando el servidor no da abasto.
+ *
+ * El tick n cae en el instante de pared n * periodo, así que todos los nodos de un
+ * clúster numeran igual los ticks y los monstruos ({@link #spawnNumber(int)}). El
+ * siguiente tick se calcula sumando un periodo al anterior, nunca a "ahora": lo que
+ * tarde el envío no se acumula. Si el hilo llega tarde más de un periodo se saltan
+ * los ticks perdidos en vez de lanzarlos de golpe. El retraso con el que despierta el
+ * hilo se mide (jitter) y se corrige despertando antes en su media.
+ *
+ * Cuántos monstruos salen en un tick: monsters.spawn.perTick por el multiplicador de la
+ * curve, redondeado con un hash del tick (igual en todos los nodos), hasta
+ * {@link #MAX_PER_TICK}. Curvas (-Dmonsters.spawn.curve):
+ *   constant                        siempre el mismo ritmo
+ *   accelerate:<factor>:<segundos>  de 1 a factor a lo largo de los primeros segundos de la ronda
+ *   burst:<cada>:<dura>:<factor>    factor durante "dura" segundos de cada "cada" (alineado al reloj)
+ *
+ * Freno (solo si se le da la profundidad de la cola de publicación): si la cola pasa de
+ * monsters.spawn.backoff.queue o un tick sale más de monsters.spawn.backoff.lagMillis
+ * tarde, la fracción de monstruos que se publican se reduce a la mitad (como mucho cada
+ * 100 ms, nunca por debajo de monsters.spawn.backoff.min) y se recupera poco a poco
+ * cuando la presión desaparece. Qué monstruos se omiten también sale de un hash, así
+ * que los publicados son siempre un subconjunto de los que esperan los demás nodos.
+ *
+ * No es seguro entre hilos: lo usa solo el hilo que lanza las apariciones, salvo
+ * {@link #roundStarted(long)} y las lecturas para métricas.
+ */
+public class SpawnScheduler {
+
+    /** Apariciones como máximo en un tick; los números de un tick son tick * MAX_PER_TICK + k. */
+    public static final int MAX_PER_TICK = 16;
+
+    private static final long BACKOFF_HOLD_NANOS = 100_000_000L;
+    private static final double RECOVERY_PER_SECOND = 0.5;
+    private static final long KEEP_SALT = 0x5DEECE66DL;
+
+    private final long periodNanos;
+    private final double perTick;
+    private final Curve curve;
+    // null: sin freno (p.ej. nodos que no publican)
+    private final IntSupplier queueDepth;
+    private final int queueThreshold;
+    private final long lagThresholdNanos;
+    private final double minFactor;
+    private final LatencyRecorder jitter;
+
+    // Solo del hilo de las apariciones
+    private long nextTick;
+    private long dueNanos;
+    private long firedTick;
+    private long wakeUpLateNanos;
+    private long lastBackoffNanos;
+    private volatile double factor = 1;
+    private volatile long skippedTicks;
+    private volatile long backoffs;
+    private volatile long roundStartNanos;
+
+    public SpawnScheduler(double ticksPerSecond, double perTick, Curve curve, IntSupplier queueDepth,
+                          int queueThreshold, long lagThresholdMillis, double minFactor, LatencyRecorder jitter) {
+        this.periodNanos = Math.max(1_000_000L, (long) (1e9 / ticksPerSecond));
+        this.perTick = perTick;
+        this.curve = curve;
+        this.queueDepth = queueDepth;
+        this.queueThreshold = queueThreshold;
+        this.lagThresholdNanos = lagThresholdMillis * 1_000_000L;
+        this.minFactor = minFactor;
+        this.jitter = jitter;
+        long now = System.nanoTime();
+        long wallNanos = System.currentTimeMillis() * 1_000_000L;
+        this.nextTick = Math.floorDiv(wallNanos, periodNanos) + 1;
+        this.dueNanos = now + (nextTick * periodNanos - wallNanos);
+        this.roundStartNanos = now;
+    }
+
+    /**
+     * -Dmonsters.spawn.rate=ticks por segundo (1000 / defaultPeriodMillis),
+     * -Dmonsters.spawn.perTick=monstruos por tick (1), -Dmonsters.spawn.curve (constant),
+     * -Dmonsters.spawn.backoff.queue (la mitad de monsters.publish.queue),
+     * -Dmonsters.spawn.backoff.lagMillis (50), -Dmonsters.spawn.backoff.min (0.1).
+     * Con {@code queueDepth} null no hay freno.
+     */
+    public static SpawnScheduler fromConfig(long defaultPeriodMillis, IntSupplier queueDepth, LatencyRecorder jitter) {
+        return new SpawnScheduler(
+                GameConfig.decimal("monsters.spawn.rate", 1000.0 / defaultPeriodMillis),
+                GameConfig.decimal("monsters.spawn.perTick", 1),
+                Curve.parse(GameConfig.string("monsters.spawn.curve", "constant")),
+                queueDepth,
+                GameConfig.integer("monsters.spawn.backoff.queue", GameConfig.integer("monsters.publish.queue", 4096) / 2),
+                GameConfig.integer("monsters.spawn.backoff.lagMillis", 50),
+                GameConfig.decimal("monsters.spawn.backoff.min", 0.1),
+                jitter);
+    }
+
+    /** Instante (System.nanoTime()) en que hay que volver a llamar a {@link #poll(long)}. */
+    public long nextWakeUp() {
+        return dueNanos - wakeUpLateNanos;
+    }
+
+    /**
+     * Si ya toca un tick, lo consume y devuelve cuántos monstruos salen en él (puede ser
+     * 0); si no, devuelve 0 sin avanzar. Los números de esos monstruos los da
+     * {@link #spawnNumber(int)} y si se publican, {@link #keeps(int)}.
+     */
+    public int poll(long now) {
+        long wakeUp = dueNanos - wakeUpLateNanos;
+        if (now - wakeUp < 0) return 0;
+        long late = now - dueNanos;
+        jitter.record(Math.abs(late) / 1000);
+        // Media móvil del retraso al despertar; despertar antes la compensa
+        wakeUpLateNanos = Math.min(periodNanos / 4, Math.max(0, wakeUpLateNanos + ((now - wakeUp) - wakeUpLateNanos) / 8));
+        if (queueDepth != null) adapt(now, late);
+
+        if (late >= periodNanos) {
+            long missed = late / periodNanos;
+            nextTick += missed;
+            dueNanos += missed * periodNanos;
+            skippedTicks += missed;
+        }
+        firedTick = nextTick++;
+        dueNanos += periodNanos;
+
+        double expected = perTick * curve.multiplier(firedTick * periodNanos, now - roundStartNanos);
+        int count = (int) expected;
+        if (unit(ConsistentHashRing.mix(firedTick)) < expected - count) count++;
+        return Math.min(MAX_PER_TICK, count);
+    }
+
+    /** Número global del monstruo k del último tick. */
+    public long spawnNumber(int k) {
+        return firedTick * MAX_PER_TICK + k;
+    }
+
+    /** Si el monstruo k del último tick se publica con el freno actual. */
+    public boolean keeps(int k) {
+        double current = factor;
+        return current >= 1 || unit(ConsistentHashRing.mix(spawnNumber(k) ^ KEEP_SALT)) < current;
+    }
+
+    /** La curva cuenta desde aquí; se puede llamar desde cualquier hilo. */
+    public void roundStarted(long now) {
+        roundStartNanos = now;
+    }
+
+    /** Fracción de monstruos que se publican (1 sin freno). */
+    public double factor() {
+        return factor;
+    }
+
+    public long skippedTicks() {
+        return skippedTicks;
+    }
+
+    public long backoffs() {
+        return backoffs;
+    }
+
+    public double nominalRate() {
+        return perTick * 1e9 / periodNanos;
+    }
+
+    private void adapt(long now, long late) {
+        if (queueDepth.getAsInt() >= queueThreshold || late >= lagThresholdNanos) {
+            if (now - lastBackoffNanos >= BACKOFF_HOLD_NANOS) {
+                lastBackoffNanos = now;
+                factor = Math.max(minFactor, factor / 2);
+                backoffs++;
+            }
+        } else if (factor < 1) {
+            factor = Math.min(1, factor + RECOVERY_PER_SECOND * periodNanos / 1e9);
+        }
+    }
+
+    private static double unit(long hash) {
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public String toString() {
+        return nominalRate() + " spawns/s (" + 1e9 / periodNanos + " ticks/s x " + perTick + ", " + curve + ")";
+    }
+
+    /** Multiplicador del número de monstruos por tick. */
+    public static final class Curve {
+        private final String kind;
+        private final double a;
+        private final double b;
+        private final double c;
+
+        private Curve(String kind, double a, double b, double c) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+        }
+
+        static Curve parse(String spec) {
+            String[] parts = spec.split(":");
+            double a = parts.length > 1 ? Double.parseDouble(parts[1]) : 0;
+            double b = parts.length > 2 ? Double.parseDouble(parts[2]) : 0;
+            double c = parts.length > 3 ? Double.parseDouble(parts[3]) : 0;
+            switch (parts[0]) {
+                case "constant":
+                case "accelerate":
+                case "burst":
+                    return new Curve(parts[0], a, b, c);
+                default:
+                    throw new IllegalArgumentException("Curva de apariciones desconocida: " + spec);
+            }
+        }
+
+        double multiplier(long tickWallNanos, long roundNanos) {
+            switch (kind) {
+                case "accelerate":
+                    // a: factor final, b: segundos hasta alcanzarlo
+                    double progress = b <= 0 ? 1 : Math.min(1, roundNanos / (b * 1e9));
+                    return 1 + (a - 1) * progress;
+                case "burst":
+                    // a: cada cuántos segundos, b: cuánto dura, c: factor durante la ráfaga
+                    long every = (long) (a * 1e9);
+                    return every > 0 && Math.floorMod(tickWallNanos, every) < b * 1e9 ? c : 1;
+                default:
+                    return 1;
+            }
+        }
+
+        @Override
+        public String toString() {
+            switch (kind) {
+                case "accelerate":
+                    return kind + ":" + a + ":" + b;
+                case "burst":
+                    return kind + ":" + a + ":" + b + ":" + c;
+                default:
+                    return kind;
+            }
+        }
+    }
+}
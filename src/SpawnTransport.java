@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Transporte de las deltas del tablero (apariciones y retiradas) del servidor a los
+ * jugadores. Son mensajes pequeños, urgentes y que se pueden perder: una delta que no
+ * llega deja un hueco en la secuencia y el cliente pide SYNC ({@link GameBoard}).
+ *
+ * Lo demás (WINNER, clasificación, control del clúster) sigue por el tópico JMS del
+ * {@link JmsPublisher}, que no pierde mensajes de control.
+ *
+ * Implementaciones (-Dmonsters.transport):
+ *   jms        {@link JmsSpawnTransport}: el tópico de la sala, como siempre (por defecto)
+ *   multicast  {@link MulticastSpawnTransport}: UDP multicast en la LAN, sin broker
+ *   socket     {@link SocketSpawnTransport}: líneas "DELTA ..." por el socket de cada jugador
+ *   inproc     {@link InProcessSpawnTransport}: llamadas directas dentro de la JVM (pruebas y benchmarks)
+ *
+ * El servidor anuncia el suyo en la línea INFO ({@link #infoFields()}, p.ej.
+ * "TRANSPORT=multicast GROUP=239.255.77.1:4446") y el cliente abre el lado que le toca con
+ * {@link #subscribe(String, String, Receiver)}. Un INFO sin TRANSPORT= es jms: los
+ * clientes viejos solo entienden ese.
+ */
+public interface SpawnTransport extends AutoCloseable {
+
+    String JMS = "jms";
+    String MULTICAST = "multicast";
+    String SOCKET = "socket";
+    String IN_PROCESS = "inproc";
+
+    /** Lado del cliente: recibe cada delta con su secuencia (0 si no la trae) y su hora de envío (0 si no la trae). */
+    interface Receiver {
+        void onDelta(WireProtocol.Frame delta, long seq, long sentNanos);
+    }
+
+    /** Suscripción del cliente a las deltas de un tópico. */
+    interface Subscription extends AutoCloseable {
+        /** Deltas que el transporte sabe que se perdieron (huecos en su propia numeración). */
+        default long lost() {
+            return 0;
+        }
+
+        @Override
+        void close();
+    }
+
+    /**
+     * Publica una aparición o retirada; {@code timestamp} son milisegundos de pared y
+     * {@code seq} el número del {@link BoardFeed}. {@link BoardFeed} llama bajo su lock,
+     * así que las deltas de un tópico llegan en orden. Devuelve false si se descartó.
+     */
+    boolean publish(String topic, byte type, int monsterId, int x, int y, int round, long timestamp, long seq);
+
+    /** Campos de la línea INFO que anuncian el transporte. */
+    String infoFields();
+
+    /** Deltas encoladas sin enviar; el {@link SpawnScheduler} frena cuando crece. */
+    default int queueDepth() {
+        return 0;
+    }
+
+    /**
+     * Si las retiradas (CLEAR) pueden ir por este transporte. Un tópico JMS en texto
+     * también lo leen los clientes viejos, que toman cada línea por una aparición y
+     * fallan con "CLEAR ..."; los demás transportes solo los abren clientes nuevos.
+     */
+    default boolean carriesClears() {
+        return true;
+    }
+
+    /** Deltas que el servidor no llegó a enviar. */
+    long droppedSpawns();
+
+    /**
+     * Empieza a mandar a un jugador las deltas de {@code topic} por su propio socket, después
+     * de su handshake. Solo lo usa {@link SocketSpawnTransport}; {@code player} identifica
+     * la conexión en {@link #leave(String, Object)}. {@code blocking} dice si {@code send}
+     * puede bloquear (un PrintWriter con un hilo por jugador) o solo encola (NIO).
+     */
+    default void join(String topic, Object player, Consumer<String> send, boolean blocking) {
+    }
+
+    default void leave(String topic, Object player) {
+    }
+
+    @Override
+    default void close() {
+    }
+
+    /** Transporte del servidor según -Dmonsters.transport (jms por defecto). */
+    static SpawnTransport fromConfig(JmsPublisher publisher) throws IOException {
+        String name = GameConfig.string("monsters.transport", JMS).toLowerCase();
+        switch (name) {
+            case JMS:
+                return new JmsSpawnTransport(publisher);
+            case MULTICAST:
+                return MulticastSpawnTransport.fromConfig();
+            case SOCKET:
+                return new SocketSpawnTransport(GameConfig.integer("monsters.publish.queue", 4096));
+            case IN_PROCESS:
+                return new InProcessSpawnTransport();
+            default:
+                throw new IllegalArgumentException("Unknown monsters.transport: " + name);
+        }
+    }
+
+    /** Transporte que anuncia una línea INFO. */
+    static String name(String info) {
+        return info == null ? JMS : GameClient.infoField(info, "TRANSPORT", JMS);
+    }
+
+    /**
+     * Abre en el cliente el lado del transporte que anuncia {@code info}. Devuelve null con
+     * jms y socket: sus deltas llegan por la suscripción JMS de {@link TopicFeed} y por
+     * {@link GameClient}, respectivamente.
+     */
+    static Subscription subscribe(String info, String topic, Receiver receiver) throws IOException {
+        switch (name(info)) {
+            case MULTICAST:
+                return MulticastSpawnTransport.subscribe(GameClient.infoField(info, "GROUP", null), topic, receiver);
+            case IN_PROCESS:
+                return InProcessSpawnTransport.subscribe(topic, receiver);
+            default:
+                return null;
+        }
+    }
+}
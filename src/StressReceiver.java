@@ -1,57 +1,353 @@
-import java.io.*;
-import java.net.Socket;
+import jakarta.jms.JMSException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Generador de carga en lazo abierto para StressSender (o MonsterSender), guiado por
+ * un {@link LoadScenario}.
+ *
+ * - Los jugadores llegan según un horario fijo (rampa + ritmo objetivo), cada uno en
+ *   su hilo virtual, y hacen el handshake completo de {@link GameClient} (saludo, nombre,
+ *   bienvenida, INFO, REDIRECT si hay clúster, PROTO BIN1 si se negocia). Ante un "BUSY RETRY_AFTER=ms"
+ *   esperan lo que pide el servidor y lo reintentan, sin salirse de su hora prevista.
+ * - Una sola suscripción JMS por tópico ({@link TopicFeed}) recibe las apariciones
+ *   reales para todos los jugadores; cada aparición programa golpes de jugadores al
+ *   azar tras un tiempo de reacción sacado de la distribución del escenario, hasta
+ *   sumar el hitRate pedido. Para jugadores que miran el tablero, ver {@link BotEngine}.
+ * - Corrección de coordinated omission: el registro se mide desde la hora prevista de
+ *   llegada y cada golpe lleva como timestamp su hora prevista, no la real. Si el
+ *   generador o el servidor se atascan, el atasco aparece en las latencias.
+ * - Si el servidor anuncia CLOCK=NANOS, cada jugador estima su desfase con PING/PONG
+ *   ({@link GameClock}) al conectar y cada {@link #CLOCK_PERIOD_SECONDS} s, se lo informa
+ *   al servidor y marca sus golpes en nanosegundos. La entrega de las apariciones se
+ *   mide entonces con la propiedad "sent" y el desfase del jugador de menor rtt del
+ *   tópico, no con relojes de pared de dos máquinas.
+ *
+ * Uso: java StressReceiver [escenario.properties]
+ */
 public class StressReceiver {
-    private static final String SERVER_IP = "localhost";
-    private static final int SERVER_PORT = 5000;
-    private static final int NUM_CLIENTS = 500; // 🔹 Número de clientes a simular
 
-    public static void main(String[] args) {
-        for (int i = 0; i < NUM_CLIENTS; i++) {
-            final int clientId = i;
-            new Thread(() -> simulateClient(clientId)).start();
+    private static final long REPORT_PERIOD_SECONDS = 5;
+    private static final int MAX_BUSY_RETRIES = 5;
+    private static final long CLOCK_PERIOD_SECONDS = 10;
+    private static final int DISPLAY_MILLIS = 1000;
+
+    private final LoadScenario scenario;
+    private final ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, TopicGroup> groups = new ConcurrentHashMap<>();
+    // Crear un grupo conecta con el broker: ReentrantLock para no fijar el hilo virtual que entra
+    private final ReentrantLock groupsLock = new ReentrantLock();
+    private final List<SimulatedClient> clients = new CopyOnWriteArrayList<>();
+
+    // Métricas (µs)
+    private final LatencyRecorder registration = new LatencyRecorder("registration");
+    private final LatencyRecorder hitLag = new LatencyRecorder("hitLag");
+    private final LatencyRecorder spawnDelivery = new LatencyRecorder("spawnDelivery");
+    private final LatencyRecorder clockRtt = new LatencyRecorder("clockRtt");
+    private final AtomicInteger attempted = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final LongAdder busyReplies = new LongAdder();
+    private final LongAdder spawnsSeen = new LongAdder();
+    private final LongAdder hitsSent = new LongAdder();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean running = true;
+    private long startNanos;
+
+    public StressReceiver(LoadScenario scenario) {
+        this.scenario = scenario;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadScenario scenario = LoadScenario.load(args.length > 0 ? args[0] : null);
+        new StressReceiver(scenario).run();
+    }
+
+    public void run() throws InterruptedException {
+        System.out.println("Scenario: " + scenario);
+        startNanos = System.nanoTime();
+        scheduler.scheduleAtFixedRate(this::printProgress, REPORT_PERIOD_SECONDS, REPORT_PERIOD_SECONDS, TimeUnit.SECONDS);
+        scheduler.schedule(this::finish, scenario.durationSeconds, TimeUnit.SECONDS);
+
+        // Llegadas en lazo abierto: cada conexión sale a su hora prevista, haya terminado o no la anterior
+        for (int i = 0; i < scenario.clients && running; i++) {
+            long intended = startNanos + scenario.arrivalOffsetNanos(i);
+            long wait = intended - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            int clientId = i;
+            clientThreads.execute(() -> connect(clientId, intended));
         }
+        finished.await();
+        stop();
     }
 
-    private static void simulateClient(int clientId) {
+    private void connect(int clientId, long intendedNanos) {
+        attempted.incrementAndGet();
+        GameClient connection;
+        TopicGroup group;
+        try {
+            connection = GameClient.connect(scenario.host, scenario.port, "Player_" + clientId, scenario.protocol,
+                    MAX_BUSY_RETRIES);
+        } catch (IOException e) {
+            if (running) failed.incrementAndGet();
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
         try {
-            long startTime = System.currentTimeMillis();
-            Socket socket = new Socket(SERVER_IP, SERVER_PORT);
-            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            group = group(connection);
+        } catch (JMSException | IOException e) {
+            e.printStackTrace();
+            failed.incrementAndGet();
+            connection.close();
+            return;
+        }
+        registration.recordSince(intendedNanos);
+        busyReplies.add(connection.busyReplies());
+        SimulatedClient client = new SimulatedClient(connection);
+        clients.add(client);
+        group.clients.add(client);
+        group.syncClient = connection;
+        client.startClock();
+
+        // Del resto de lo que mande el servidor por TCP solo nos interesan la foto del tablero, los PONG
+        // y, con TRANSPORT=socket, las deltas
+        connection.readLoop(new GameClient.Listener() {
+            @Override
+            public void onSnapshot(BoardSnapshot snapshot) {
+                group.feed.board().applySnapshot(snapshot);
+            }
+
+            @Override
+            public void onDelta(WireProtocol.Frame delta, long seq, long sentNanos) {
+                group.feed.onDelta(delta, seq, sentNanos);
+            }
+
+            @Override
+            public void onClock(GameClock.Sync clock, long rttNanos) {
+                clockRtt.record(TimeUnit.NANOSECONDS.toMicros(rttNanos));
+                group.clockSample(clock.offsetNanos(), clock.rttNanos());
+            }
+        });
+        client.close();
+    }
 
-            String playerName = "Player_" + clientId;
-            out.println(playerName);
+    // Un grupo (y una suscripción) por tópico anunciado en INFO
+    private TopicGroup group(GameClient connection) throws JMSException, IOException {
+        TopicGroup group = groups.get(connection.topic());
+        if (group != null) return group;
+        groupsLock.lock();
+        try {
+            group = groups.get(connection.topic());
+            if (group == null) {
+                group = new TopicGroup(connection.brokerUrl(), connection.topic(), connection.info());
+                groups.put(connection.topic(), group);
+            }
+            return group;
+        } finally {
+            groupsLock.unlock();
+        }
+    }
 
-            long endTime = System.currentTimeMillis();
-            System.out.println(playerName + " registered in " + (endTime - startTime) + "ms");
+    /** Jugadores de un mismo tópico, con una única suscripción compartida. */
+    private final class TopicGroup implements TopicFeed.Listener {
+        final String topic;
+        final List<SimulatedClient> clients = new CopyOnWriteArrayList<>();
+        final TopicFeed feed;
+        // Socket por el que se pide SYNC al perder deltas: el del último jugador que entró
+        volatile GameClient syncClient;
+        private long lastSpawnNanos;
+        private double spawnIntervalSeconds = 1.0;
+        // Desfase con el servidor del jugador de menor rtt del tópico (ver clockSample)
+        private long bestRttNanos = Long.MAX_VALUE;
+        private volatile long offsetNanos;
+        private volatile boolean synced;
+        // Solo desde el hilo del listener; con la misma semilla, las mismas decisiones por aparición
+        private final Random random;
 
-            Random random = new Random();
-            boolean gameOver = false;
+        TopicGroup(String brokerUrl, String topic, String info) throws JMSException, IOException {
+            this.topic = topic;
+            random = new Random(scenario.seed ^ ConsistentHashRing.hash(topic));
+            feed = new TopicFeed(brokerUrl, topic, info,
+                    new GameBoard(new BoardBuffer(DISPLAY_MILLIS), this::requestSync), false);
+            feed.add(this);
+            System.out.println("Subscribed to " + topic + " on " + brokerUrl + " (deltas: "
+                    + SpawnTransport.name(info) + ")");
+        }
 
-            while (!gameOver) {
-                int x = random.nextInt(9);
-                long reactionTime = System.currentTimeMillis();
-                out.println("hit " + x + " " + reactionTime);
+        // Lo llama el tablero desde el hilo que entrega las deltas y con su lock: el SYNC se escribe en otro hilo
+        private void requestSync() {
+            GameClient client = syncClient;
+            if (client == null) return;
+            try {
+                clientThreads.execute(client::requestSync);
+            } catch (RejectedExecutionException e) {
+                // Parando: ya no hace falta la foto
+            }
+        }
 
-                // 🔹 Verifica si el servidor envió un mensaje de "WINNER"
-                if (in.ready()) {
-                    String response = in.readLine();
-                    if (response.startsWith("WINNER")) {
-                        System.out.println("Game over! " + response);
-                        gameOver = true;
-                    }
-                }
+        @Override
+        public void onWinner(String player) {
+            System.out.println("Game over! WINNER " + player);
+            if (scenario.stopOnWinner) finished.countDown();
+        }
 
-                Thread.sleep(random.nextInt(500)); // 🔹 Simula tiempo de reacción
+        // Hilo del listener (uno por grupo): programa golpes; las escrituras van en hilos de clientThreads
+        @Override
+        public void onSpawn(WireProtocol.Frame frame, long sentNanos) {
+            long now = System.nanoTime();
+            long clockNow = GameClock.nowNanos();
+            spawnsSeen.increment();
+            if (synced && sentNanos != 0) {
+                spawnDelivery.record(Math.max(0, TimeUnit.NANOSECONDS.toMicros(clockNow + offsetNanos - sentNanos)));
+            } else if (frame.timestamp > 0) {
+                // Sin reloj sincronizado, milisegundos de pared de los dos lados
+                spawnDelivery.record((System.currentTimeMillis() - frame.timestamp) * 1000);
             }
+            if (lastSpawnNanos != 0) {
+                // Media móvil del intervalo entre apariciones, para repartir el hitRate
+                spawnIntervalSeconds = 0.8 * spawnIntervalSeconds + 0.2 * ((now - lastSpawnNanos) / 1e9);
+            }
+            lastSpawnNanos = now;
 
-            socket.close();
-            System.out.println("🔹 " + playerName + " finished and is exiting.");
+            int size = clients.size();
+            int total = StressReceiver.this.clients.size();
+            if (size == 0 || total == 0) return;
+            double expected = scenario.hitRate * spawnIntervalSeconds * size / total;
+            int hits = (int) expected + (random.nextDouble() < expected - (int) expected ? 1 : 0);
+            for (int i = 0; i < hits; i++) {
+                SimulatedClient client = clients.get(random.nextInt(size));
+                double reactionMillis = scenario.reaction.sampleMillis(random);
+                long intended = now + (long) (reactionMillis * 1e6);
+                long intendedClock = clockNow + (long) (reactionMillis * 1e6);
+                int x = frame.x;
+                int y = frame.y;
+                if (random.nextDouble() < scenario.missRatio) y = (y + 1 + random.nextInt(8)) % 9;
+                int id = frame.monsterId;
+                int round = frame.round;
+                int hitY = y;
+                scheduler.schedule(() -> clientThreads.execute(
+                                () -> client.hit(x, hitY, id, round, intended, intendedClock)),
+                        intended - now, TimeUnit.NANOSECONDS);
+            }
+        }
 
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
+        /** Un jugador del tópico midió su reloj; se queda la muestra de menor rtt. */
+        synchronized void clockSample(long offset, long rtt) {
+            if (rtt > bestRttNanos) return;
+            bestRttNanos = rtt;
+            offsetNanos = offset;
+            synced = true;
         }
+
+        long offsetNanos() {
+            return offsetNanos;
+        }
+
+        boolean synced() {
+            return synced;
+        }
+
+        void close() {
+            feed.close();
+        }
+    }
+
+    /** Conexión TCP de un jugador simulado; los golpes pueden llegar desde varios hilos. */
+    private final class SimulatedClient {
+        private final GameClient connection;
+        private volatile ScheduledFuture<?> pings;
+
+        SimulatedClient(GameClient connection) {
+            this.connection = connection;
+        }
+
+        // PING periódicos, repartidos para no llegar todos a la vez (los del handshake los hace GameClient)
+        void startClock() {
+            if (connection.clock() == null) return;
+            long periodMillis = TimeUnit.SECONDS.toMillis(CLOCK_PERIOD_SECONDS);
+            long firstMillis = ThreadLocalRandom.current().nextLong(periodMillis) + periodMillis;
+            pings = scheduler.scheduleAtFixedRate(() -> clientThreads.execute(connection::ping), firstMillis,
+                    periodMillis, TimeUnit.MILLISECONDS);
+        }
+
+        void hit(int x, int y, int monsterId, int round, long intendedNanos, long intendedClock) {
+            if (!running) return;
+            // Timestamp = hora prevista: el servidor ve como reacción cualquier retraso del generador
+            if (connection.hit(x, y, monsterId, round, intendedClock)) {
+                hitLag.recordSince(intendedNanos);
+                hitsSent.increment();
+            }
+        }
+
+        void close() {
+            ScheduledFuture<?> scheduled = pings;
+            if (scheduled != null) scheduled.cancel(false);
+            connection.close();
+        }
+    }
+
+    private void finish() {
+        finished.countDown();
+    }
+
+    private void stop() {
+        running = false;
+        scheduler.shutdownNow();
+        for (TopicGroup group : groups.values()) {
+            group.close();
+        }
+        for (SimulatedClient client : clients) {
+            client.close();
+        }
+        clientThreads.shutdownNow();
+        printReport();
+    }
+
+    private void printProgress() {
+        double elapsed = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("[%5.1f s] connected=%d failed=%d busy=%d spawns=%d hits=%d (%.1f/s)%n", elapsed,
+                clients.size(), failed.get(), busyReplies.sum(), spawnsSeen.sum(), hitsSent.sum(),
+                hitsSent.sum() / elapsed);
+    }
+
+    private void printReport() {
+        double elapsed = (System.nanoTime() - startNanos) / 1e9;
+        System.out.println("=== Load test report (latencies corrected for coordinated omission) ===");
+        System.out.printf("Duration: %.1f s%n", elapsed);
+        System.out.println("Connections: " + clients.size() + " ok / " + attempted.get() + " attempted, "
+                + failed.get() + " failed, " + busyReplies.sum() + " BUSY replies retried");
+        System.out.printf("Hits sent: %d (%.1f/s, target %.1f/s), spawns seen: %d%n", hitsSent.sum(),
+                hitsSent.sum() / elapsed, scenario.hitRate, spawnsSeen.sum());
+        long lost = 0;
+        for (TopicGroup group : groups.values()) {
+            lost += group.feed.lostDeltas();
+        }
+        if (lost > 0) System.out.println("Deltas lost in transport: " + lost);
+        printPercentiles(registration);
+        printPercentiles(spawnDelivery);
+        printPercentiles(hitLag);
+        printPercentiles(clockRtt);
+        for (TopicGroup group : groups.values()) {
+            if (group.synced()) {
+                System.out.printf("Clock offset to %s: %.3f ms (server - client)%n", group.topic,
+                        group.offsetNanos() / 1e6);
+            }
+        }
+    }
+
+    static void printPercentiles(LatencyRecorder recorder) {
+        LatencyRecorder.Snapshot s = recorder.snapshot();
+        System.out.printf("%-14s n=%-8d p50=%.2f ms p90=%.2f ms p99=%.2f ms p99.9=%.2f ms max=%.2f ms%n",
+                recorder.name(), s.count(), s.percentile(50) / 1000.0, s.percentile(90) / 1000.0,
+                s.percentile(99) / 1000.0, s.percentile(99.9) / 1000.0, s.max() / 1000.0);
     }
 }
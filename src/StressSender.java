@@ -1,124 +1,347 @@
-import jakarta.jms.*;
-import org.apache.activemq.ActiveMQConnectionFactory;
+import jakarta.jms.JMSException;
 
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 public class StressSender {
-    private static final String url = "tcp://localhost:61616";
+    // IP y puerto del broker JMS externo (se ignora si el broker es embebido)
+    private static final String url = GameConfig.string("monsters.broker.url", "tcp://localhost:61616");
     private static final String subject = "Monsters";
     private static final int WIN_CONDITION = 20;
     private static final int MAX_GAMES = 1; // Ejecuta 1 partida por run
-
-    private ConcurrentHashMap<String, Integer> playerScore = new ConcurrentHashMap<>();
-    private List<Long> responseTimes = Collections.synchronizedList(new ArrayList<>());
-    private List<Long> registrationTimes = Collections.synchronizedList(new ArrayList<>());
-    private int successfulConnections = 0; // Conexiones que se registran correctamente
-
-    private MessageProducer producer;
-    private Session session;
-    private boolean gameRunning = true;
-    private boolean gameWon = false;
+    private static final long SHUTDOWN_GRACE_MS = 2000;
+    private static final long SPAWN_PERIOD_MS = 1000; // Por defecto; -Dmonsters.spawn.rate lo cambia
+
+    private final ScoreBoard scoreBoard = new ScoreBoard(GameConfig.integer("monsters.maxPlayers", 1 << 17));
+    // Monstruos vivos: solo puntúa el primer golpe a un monstruo que exista
+    private final LiveMonsterIndex liveMonsters = LiveMonsterIndex.fromConfig();
+    private final boolean validateHits = LiveMonsterIndex.validationEnabled();
+    private static final String RESULTS_HEADER = "GameID,Winner,NumClients,AvgReactionTime,StdReactionTime,AvgRegistrationTime,StdRegistrationTime,SuccessRate"
+            + ",ReactionP50,ReactionP90,ReactionP99,ReactionP999,ReactionMax"
+            + ",RegistrationP50,RegistrationP90,RegistrationP99,RegistrationP999,RegistrationMax"
+            + ",PublishP50,PublishP90,PublishP99,PublishP999,PublishMax,PublishQueuePeak,DroppedSpawns,RunId";
+    // Historial binario con configuración, entorno e histogramas completos (ver RunReport)
+    private final ResultsStore resultsStore = ResultsStore.fromConfig();
+    private final long startMillis = System.currentTimeMillis();
+    private final String runId = ResultsStore.Run.newId(startMillis);
+
+    // Histogramas sin bloqueos (µs); sustituyen a las listas sincronizadas. La de publicación la lleva el JmsPublisher
+    private final LatencyRecorder reactionTimes = new LatencyRecorder("reaction");
+    private final LatencyRecorder registrationTimes = new LatencyRecorder("registration");
+    // Desde que se lanza el monstruo hasta que llega el golpe que se lo lleva (mismo reloj, el del servidor)
+    private final LatencyRecorder endToEndTimes = new LatencyRecorder("endToEnd");
+    // RTT que informa cada cliente con CLOCK (ver GameClock)
+    private final LatencyRecorder clockRtt = new LatencyRecorder("clockRtt");
+    // Desfase de reloj por jugador (CLOCK); la reacción lo descuenta si el cliente marca en nanosegundos
+    private final AtomicReferenceArray<GameClock.Peer> peers = new AtomicReferenceArray<>(scoreBoard.capacity());
+    private final AtomicInteger successfulConnections = new AtomicInteger(); // Conexiones que se registran correctamente
+    // Apariciones y golpes van al registro binario, no a stdout (todo en la sala 0)
+    private final EventLog events = EventLog.fromConfig("stress_events.log");
+    // Diario de puntuaciones (-Dmonsters.journal): un reinicio recupera jugadores, puntos y ronda
+    private final ScoreJournal journal = ScoreJournal.fromConfig();
+    private final ScoreJournal.Board journalBoard = journal.attach("stress", scoreBoard);
+    // Cubos de puntuación y top-K, publicados en Monsters.leaderboard desde el hilo de las apariciones
+    private Leaderboard leaderboard;
+    // JMX y /metrics durante la prueba; el juego solo incrementa contadores
+    private final GameMetrics metrics = GameMetrics.fromConfig("StressSender");
+    private final LongAdder hitsScored = metrics.counter("hits_scored_total", "Golpes que puntuaron");
+    private final LongAdder spawnsSent = metrics.counter("spawns_total", "Monstruos lanzados");
+    // Desvío (µs) de cada tick de apariciones sobre su hora en la línea de tiempo
+    private final LatencyRecorder spawnDrift = new LatencyRecorder("spawnDrift");
+
+    // Dueño de la sesión JMS: todos los envíos pasan por su hilo
+    private JmsPublisher publisher;
+    // Apariciones y retiradas (-Dmonsters.transport; por el mismo publicador por defecto)
+    private SpawnTransport transport;
+    // Apariciones y retiradas numeradas, y la foto del tablero para el handshake y SYNC
+    private BoardFeed board;
+    // Broker dentro del proceso (-Dmonsters.broker=embedded); null si se usa uno externo
+    private final EmbeddedBroker broker = EmbeddedBroker.startIfConfigured();
+    // URL que se anuncia a los jugadores en la línea INFO
+    private final String advertisedUrl = broker != null ? broker.advertisedUrl() : url;
+    private volatile boolean gameRunning = true;
     private int gameCount = 0;           // Contador de partidas finalizadas
+    private final ServerMode serverMode = ServerMode.fromConfig();
+    // Backlog, turnos de handshake, cubo de fichas de golpes y expulsión de inactivos
+    private final AdmissionControl admission = AdmissionControl.fromConfig();
+    private final ExecutorService workers = serverMode.newExecutor();
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private volatile ServerSocket serverSocket;
+    private volatile NioPlayerServer nioServer;
+    // Trama reutilizada por cada event loop NIO (un hilo de plataforma por loop)
+    private final ThreadLocal<WireProtocol.Frame> loopFrames = ThreadLocal.withInitial(WireProtocol.Frame::new);
 
     // 🔹 Nuevo: número de clientes que esperas en esta ejecución
     private int expectedClients;
+    // Apariciones reproducibles (-Dmonsters.seed) y grabación de la sesión (-Dmonsters.record)
+    private final SpawnGenerator spawns = new SpawnGenerator(SpawnGenerator.seedFromConfig());
+    private final SessionRecorder recorder = SessionRecorder.fromConfig(spawns.seed());
+    // Línea de tiempo de las apariciones (-Dmonsters.spawn.*); frena con la cola de publicación llena
+    private final SpawnScheduler spawnScheduler =
+            SpawnScheduler.fromConfig(SPAWN_PERIOD_MS, () -> transport.queueDepth(), spawnDrift);
 
     public StressSender(int expectedClients) {
         this.expectedClients = expectedClients;  // Guarda cuántos clientes esperas
         try {
-            ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(url);
-            Connection connection = connectionFactory.createConnection();
-            connection.start();
-            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-            Destination destination = session.createTopic(subject);
-            producer = session.createProducer(destination);
-        } catch (JMSException e) {
+            // Con broker embebido publicamos por vm://, sin salto de red
+            String publishUrl = broker != null ? broker.internalUrl() : url;
+            publisher = new JmsPublisher(publishUrl, subject, WireProtocol.binarySpawns());
+            transport = SpawnTransport.fromConfig(publisher);
+            board = new BoardFeed(transport, subject, liveMonsters);
+            leaderboard = Leaderboard.fromConfig(scoreBoard, WIN_CONDITION, publisher, subject, "-");
+            registerMetrics();
+        } catch (JMSException | IOException e) {
             e.printStackTrace();
         }
     }
 
-    // Hilo que envía monstruos mientras no se acabe la partida
+    private void registerMetrics() {
+        metrics.gauge("players_connected", "Jugadores registrados en la partida", successfulConnections::get);
+        metrics.gauge("players_expected", "Jugadores esperados en esta ejecución", () -> expectedClients);
+        metrics.gauge("handshakes_active", "Handshakes en curso", admission::activeHandshakes);
+        metrics.gauge("handshakes_waiting", "Conexiones esperando turno de handshake", admission::waiting);
+        metrics.counter("connections_rejected_total", "Conexiones rechazadas con BUSY", admission::rejectedConnections);
+        metrics.counter("hits_throttled_total", "Golpes descartados por el límite por jugador", admission::throttledHits);
+        metrics.counter("clients_evicted_total", "Clientes expulsados por handshake lento o inactividad",
+                admission::evictedClients);
+        metrics.gauge("open_sockets", "Sockets de jugadores abiertos (un handler por socket en modo threads/virtual)",
+                openSockets::size);
+        metrics.counter("hits_rejected_total", "Golpes que no coinciden con un monstruo vivo", liveMonsters::rejectedHits);
+        metrics.gauge("live_monsters", "Monstruos vivos en el tablero", liveMonsters::liveCount);
+        metrics.gauge("publish_queue_depth", "Envíos JMS encolados", publisher::queueDepth);
+        metrics.counter("spawns_dropped_total", "Apariciones y retiradas que el transporte no llegó a enviar",
+                transport::droppedSpawns);
+        metrics.counter("events_dropped_total", "Eventos descartados por el registro de eventos", events::droppedEvents);
+        metrics.counter("journal_stalls_total", "Golpes que esperaron con el anillo del diario lleno", journal::stalls);
+        metrics.histogram("reaction_seconds", "Tiempo de reacción de los golpes que puntúan", reactionTimes);
+        metrics.histogram("registration_seconds", "Tiempo de registro de los jugadores", registrationTimes);
+        metrics.histogram("end_to_end_seconds", "Desde la aparición hasta el golpe que se lleva el monstruo",
+                endToEndTimes);
+        metrics.histogram("clock_rtt_seconds", "RTT de PING/PONG que informan los clientes", clockRtt);
+        metrics.histogram("publish_latency_seconds", "Latencia de publicación JMS", publisher.latency());
+        metrics.histogram("spawn_drift_seconds", "Desvío de cada tick de apariciones sobre la línea de tiempo", spawnDrift);
+        metrics.counter("spawn_backoffs_total", "Veces que se frenaron las apariciones", spawnScheduler::backoffs);
+        metrics.gauge("spawn_publish_percent", "Porcentaje de apariciones que se publican",
+                () -> Math.round(spawnScheduler.factor() * 100));
+    }
+
+    // Hilo que envía monstruos mientras no se acabe la partida; también vence los que caducan
     public void startGame() {
-        new Thread(() -> {
-            int id = 0;
+        System.out.println("Spawning " + spawnScheduler);
+        workers.execute(() -> {
             while (gameRunning) {
                 try {
-                    if (!gameWon) {
-                        int x = (int) (Math.random() * 9);
-                        int y = (int) (Math.random() * 9);
-                        sendMonster(id, x, y);
-                        id++;
+                    long now = System.nanoTime();
+                    liveMonsters.expire(now);
+                    // Con la ronda cerrada el tick pasa sin monstruos
+                    int count = spawnScheduler.poll(now);
+                    for (int k = 0; k < count && scoreBoard.isRoundOpen(); k++) {
+                        if (!spawnScheduler.keeps(k)) continue;
+                        long number = spawnScheduler.spawnNumber(k);
+                        int cell = spawns.cell(number);
+                        spawnMonster((int) (number & Integer.MAX_VALUE), cell / LiveMonsterIndex.SIZE,
+                                cell % LiveMonsterIndex.SIZE, now);
                     }
-                    Thread.sleep(1000);
-                } catch (InterruptedException | JMSException e) {
-                    e.printStackTrace();
+                    leaderboard.tick(now);
+                    long nextSpawn = spawnScheduler.nextWakeUp();
+                    long wakeUp = liveMonsters.nextExpiryNanos(nextSpawn);
+                    if (nextSpawn - wakeUp < 0) wakeUp = nextSpawn;
+                    long nextBroadcast = leaderboard.nextBroadcastNanos(wakeUp);
+                    if (nextBroadcast - wakeUp < 0) wakeUp = nextBroadcast;
+                    TimeUnit.NANOSECONDS.sleep(wakeUp - System.nanoTime());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
                 }
             }
             System.out.println("No se enviarán más monstruos. Experimento finalizado.");
-        }).start();
+        });
     }
 
-    private void sendMonster(int id, int x, int y) throws JMSException {
-        TextMessage message = session.createTextMessage(id + " " + x + " " + y);
-        producer.send(message);
-        System.out.println("Sending monster ID: " + id + " at position: " + x + ", " + y);
+    private void spawnMonster(int id, int x, int y, long now) {
+        liveMonsters.add(id, x, y, now);
+        recorder.spawn(id, x, y, scoreBoard.round());
+        sendMonster(id, x, y);
+        spawnsSent.increment();
     }
 
-    // Cuando alguien llega a WIN_CONDITION, se declara ganador
-    private synchronized void sendWinner(String player) throws JMSException {
-        if (!gameWon) {
-            gameWon = true;
-            TextMessage message = session.createTextMessage("WINNER " + player);
-            producer.send(message);
-            System.out.println(player + " won the game!");
-
-            // Guardar métricas en el CSV
-            saveResults(player);
+    private void sendMonster(int id, int x, int y) {
+        // Se encola y seguimos; el hilo del publicador hace el envío
+        long now = System.currentTimeMillis();
+        board.spawned(id, x, y, scoreBoard.round(), now);
+        events.spawn(0, id, x, y, scoreBoard.round(), now);
+    }
 
-            gameCount++;
-            if (gameCount < MAX_GAMES) {
-                resetGame();
-            } else {
-                gameRunning = false;
-                System.out.println("Se han completado " + MAX_GAMES + " partidas. Fin del experimento.");
-            }
+    // Cuando alguien llega a WIN_CONDITION, se declara ganador.
+    // Solo lo llama el hilo que ganó el CAS de la ronda, así que no hace falta synchronized.
+    private void sendWinner(int slot, int round) {
+        String player = scoreBoard.name(slot);
+
+        publisher.publishText("WINNER " + player, null);
+        events.win(0, round, player);
+        System.out.println(player + " won the game!");
+
+        // Guardar métricas en el CSV
+        saveResults(player);
+
+        gameCount++;
+        if (gameCount < MAX_GAMES) {
+            resetGame(round);
+        } else {
+            System.out.println("Se han completado " + MAX_GAMES + " partidas. Fin del experimento.");
+            // El cierre espera a los handlers, y este es uno de ellos: lo hacemos en otro hilo
+            new Thread(this::stop, "shutdown").start();
         }
     }
 
     // Inicia el servidor TCP para el registro de jugadores
     public void startTCPServer(int port) {
-        new Thread(() -> {
-            try (ServerSocket serverSocket = new ServerSocket(port)) {
-                System.out.println("Stress Test TCP Server started on port " + port);
+        if (serverMode == ServerMode.NIO) {
+            startNioServer(port);
+            return;
+        }
+        workers.execute(() -> {
+            try (ServerSocket server = new ServerSocket(port, admission.backlog())) {
+                serverSocket = server;
+                System.out.println("Stress Test TCP Server started on port " + port + " (" + serverMode + ")");
                 while (gameRunning) {
-                    Socket clientSocket = serverSocket.accept();
-                    new Thread(new PlayerHandler(clientSocket)).start();
+                    Socket clientSocket = server.accept();
+                    try {
+                        workers.execute(new PlayerHandler(clientSocket));
+                    } catch (RejectedExecutionException e) {
+                        clientSocket.close();
+                    }
                 }
             } catch (IOException e) {
-                e.printStackTrace();
+                // Al cerrar el ServerSocket en stop() el accept() termina con excepción
+                if (gameRunning) e.printStackTrace();
+            }
+        });
+    }
+
+    // Variante con event loops NIO: mismo handshake, sin un hilo por jugador
+    private void startNioServer(int port) {
+        int loops = GameConfig.integer("monsters.nio.loops", Runtime.getRuntime().availableProcessors());
+        nioServer = new NioPlayerServer(port, loops, "WELCOME TO THE STRESS TEST", admission, new NioPlayerServer.Handler() {
+            @Override
+            public List<String> onRegister(NioPlayerServer.Client client, String playerName) {
+                int slot = scoreBoard.register(playerName);
+                if (slot == ScoreBoard.NO_SLOT) {
+                    client.send("SERVER FULL");
+                    return null;
+                }
+                client.attach(slot);
+                // Las líneas del handshake salen antes que cualquier delta empujada por el socket
+                for (String line : registerPlayer(slot, client.acceptedAtNanos())) {
+                    client.send(line);
+                }
+                transport.join(subject, client, client::send, false);
+                return List.of();
+            }
+
+            @Override
+            public void onClose(NioPlayerServer.Client client) {
+                transport.leave(subject, client);
+            }
+
+            @Override
+            public void onLine(NioPlayerServer.Client client, String line) {
+                if (line.equals(WireProtocol.NEGOTIATE_BINARY)) {
+                    client.useFrames(WireProtocol.FRAME_SIZE);
+                    return;
+                }
+                if (line.equals(WireProtocol.SYNC_LINE)) {
+                    client.send(board.snapshot(scoreBoard.round()));
+                    return;
+                }
+                int slot = (Integer) client.attachment();
+                WireProtocol.Frame hit = loopFrames.get();
+                if (WireProtocol.parseTextHit(line, hit)) {
+                    if (client.tryAcquireHit()) processHit(slot, hit);
+                } else {
+                    clockLine(slot, clock(slot).onLine(line, GameClock.nowNanos()), client::send);
+                }
+            }
+
+            @Override
+            public void onFrame(NioPlayerServer.Client client, ByteBuffer frame) {
+                WireProtocol.Frame hit = loopFrames.get();
+                WireProtocol.decode(frame, hit);
+                int slot = (Integer) client.attachment();
+                if (hit.type == WireProtocol.HIT) {
+                    if (client.tryAcquireHit()) processHit(slot, hit);
+                } else if (hit.type == WireProtocol.SYNC) {
+                    client.send(board.snapshot(scoreBoard.round()));
+                } else {
+                    clockLine(slot, clock(slot).onFrame(hit, GameClock.nowNanos()), client::send);
+                }
             }
-        }).start();
+        });
+        try {
+            nioServer.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Registra al jugador (tiempo de registro + puntaje inicial) y devuelve la respuesta del handshake
+    private List<String> registerPlayer(int slot, long startNanos) {
+        registrationTimes.recordSince(startNanos);
+        successfulConnections.incrementAndGet();
+        events.join(0, slot, scoreBoard.name(slot));
+        recorder.register(slot, scoreBoard.name(slot));
+        journalBoard.registered(slot);
+        // Un jugador que vuelve a entrar con el mismo nombre empieza sin desfase conocido
+        peers.set(slot, new GameClock.Peer());
+
+        return List.of(
+                "Welcome " + scoreBoard.name(slot) + "! Your current score: " + scoreBoard.score(slot),
+                "INFO BROKER_URL=" + advertisedUrl + " TOPIC=" + subject + " " + WireProtocol.infoFields() + " "
+                        + transport.infoFields(),
+                board.snapshot(scoreBoard.round()));
     }
 
     // Clase interna que maneja cada conexión de jugador
     private class PlayerHandler implements Runnable {
         private Socket socket;
         private String playerName;
-        private long startTime;
+        private long startNanos;
 
         public PlayerHandler(Socket clientSocket) {
             this.socket = clientSocket;
-            this.startTime = System.currentTimeMillis();
+            this.startNanos = System.nanoTime();
         }
 
         @Override
         public void run() {
-            try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+            openSockets.add(socket);
+            long handshakeStart = 0;
+            boolean holdsPermit = false;
+            try (PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+                FrameReader in = new FrameReader(socket.getInputStream());
+
+                // Turno de handshake; sin él, "BUSY RETRY_AFTER=..." en lugar del saludo
+                holdsPermit = admission.awaitHandshake();
+                if (!holdsPermit) {
+                    out.println(admission.busyReply());
+                    socket.close();
+                    return;
+                }
+                handshakeStart = System.nanoTime();
+                socket.setSoTimeout(admission.handshakeTimeoutMillis());
 
                 out.println("WELCOME TO THE STRESS TEST");
                 out.println("Enter your name:");
@@ -129,71 +352,152 @@ public class StressSender {
                     return;
                 }
 
-                // Calcula tiempo de registro
-                long endTime = System.currentTimeMillis();
-                long registrationTime = endTime - startTime;
-                registrationTimes.add(registrationTime);
-
-                successfulConnections++;
-
-                // Registra puntaje inicial
-                playerScore.putIfAbsent(playerName, 0);
-                out.println("Welcome " + playerName + "! Your current score: " + playerScore.get(playerName));
-
-                // Esperar golpes
+                // Calcula tiempo de registro y registra puntaje inicial
+                int slot = scoreBoard.register(playerName);
+                if (slot == ScoreBoard.NO_SLOT) {
+                    out.println("SERVER FULL");
+                    socket.close();
+                    return;
+                }
+                for (String line : registerPlayer(slot, startNanos)) {
+                    out.println(line);
+                }
+                transport.join(subject, socket, out::println, true);
+                admission.handshakeDone(handshakeStart);
+                holdsPermit = false;
+                socket.setSoTimeout(admission.idleTimeoutMillis());
+
+                // Esperar golpes (texto, o tramas binarias si el cliente lo negocia)
+                AdmissionControl.HitLimiter limiter = admission.newHitLimiter();
+                WireProtocol.Frame hit = new WireProtocol.Frame();
                 String input;
-                while ((input = in.readLine()) != null) {
+                while (gameRunning && (input = in.readLine()) != null) {
                     if (input.equalsIgnoreCase("exit")) break;
-                    if (input.startsWith("hit")) {
-                        processHit(playerName, input);
+                    if (input.equals(WireProtocol.NEGOTIATE_BINARY)) {
+                        processBinaryHits(in, out, slot, hit, limiter);
+                        break;
+                    }
+                    // Solo los golpes gastan fichas: el control no se pierde por golpear al límite
+                    if (input.equals(WireProtocol.SYNC_LINE)) {
+                        out.println(board.snapshot(scoreBoard.round()));
+                    } else if (WireProtocol.parseTextHit(input, hit)) {
+                        if (limiter.tryAcquire()) processHit(slot, hit);
+                    } else {
+                        clockLine(slot, clock(slot).onLine(input, GameClock.nowNanos()), out::println);
                     }
                 }
                 socket.close();
-            } catch (IOException | JMSException e) {
-                e.printStackTrace();
+            } catch (SocketTimeoutException e) {
+                // Handshake demasiado lento o jugador inactivo; el try cierra el socket
+                admission.evicted();
+            } catch (IOException e) {
+                if (gameRunning) e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (holdsPermit) admission.handshakeDone(handshakeStart);
+                openSockets.remove(socket);
+                transport.leave(subject, socket);
             }
         }
     }
 
-    private void processHit(String playerName, String input) throws JMSException {
-        if (gameWon) return;
+    // Tramas de tamaño fijo decodificadas sobre el buffer del lector, sin crear objetos
+    private void processBinaryHits(FrameReader in, PrintWriter out, int slot, WireProtocol.Frame hit,
+                                   AdmissionControl.HitLimiter limiter) throws IOException {
+        ByteBuffer frame;
+        while (gameRunning && (frame = in.nextFrame(WireProtocol.FRAME_SIZE)) != null) {
+            WireProtocol.decode(frame, hit);
+            if (hit.type == WireProtocol.HIT) {
+                if (limiter.tryAcquire()) processHit(slot, hit);
+            } else if (hit.type == WireProtocol.SYNC) {
+                // La foto va como línea de texto también en conexiones binarias
+                out.println(board.snapshot(scoreBoard.round()));
+            } else {
+                clockLine(slot, clock(slot).onFrame(hit, GameClock.nowNanos()), out::println);
+            }
+        }
+    }
 
-        String[] tokens = input.split(" ");
-        if (tokens.length == 3) {
-            int newScore = playerScore.compute(playerName, (key, value) -> (value == null ? 1 : value + 1));
-            long reactionTime = System.currentTimeMillis() - Long.parseLong(tokens[2]);
-            responseTimes.add(reactionTime);
-            System.out.println(playerName + " hit a monster. Score: " + newScore + " | Reaction time: " + reactionTime + "ms");
+    private GameClock.Peer clock(int slot) {
+        return peers.get(slot);
+    }
 
-            if (newScore >= WIN_CONDITION) {
-                sendWinner(playerName);
-            }
+    // Contesta el PONG de un PING; tras un CLOCK anota el rtt que informó el cliente
+    private void clockLine(int slot, String reply, Consumer<String> send) {
+        if (reply == null) return;
+        if (!reply.isEmpty()) {
+            send.accept(reply);
+            return;
         }
+        GameClock.Peer peer = clock(slot);
+        if (peer.synced()) clockRtt.record(TimeUnit.NANOSECONDS.toMicros(peer.rttNanos()));
     }
 
-    // Guarda las métricas en un CSV
-    private void saveResults(String winner) {
-        // Copiamos listas para evitar problemas de concurrencia
-        List<Long> responseCopy;
-        List<Long> registrationCopy;
-        synchronized (this) {
-            responseCopy = new ArrayList<>(responseTimes);
-            registrationCopy = new ArrayList<>(registrationTimes);
+    private void processHit(int slot, WireProtocol.Frame hit) {
+        long receivedNanos = GameClock.nowNanos();
+        long receivedAt = System.nanoTime();
+        recorder.hit(slot, hit);
+        // Un golpe que no acierta a un monstruo vivo ni llega al marcador
+        if (validateHits && !liveMonsters.claim(hit.x, hit.y, hit.monsterId)) {
+            events.miss(0, slot, hit.monsterId, hit.x, hit.y, hit.timestamp);
+            return;
         }
+        long ticket = scoreBoard.hit(slot);
+        // Ronda ya ganada: el monstruo queda reclamado pero no se borra de los tableros
+        if (ticket == ScoreBoard.ROUND_CLOSED) return;
+        // Los demás jugadores lo quitan de su tablero (sin columna no se sabe qué celda era)
+        if (validateHits && hit.y >= 0) board.cleared(hit.monsterId, hit.x, hit.y, scoreBoard.round());
+        journalBoard.hit(slot, ticket);
+        leaderboard.scored(slot, ticket);
+        int newScore = ScoreBoard.scoreOf(ticket);
+        reactionTimes.record(reactionMicros(slot, hit, receivedNanos));
+        if (validateHits && hit.y >= 0) {
+            long spawnedAt = liveMonsters.spawnedAt(hit.x * LiveMonsterIndex.SIZE + hit.y);
+            long elapsed = receivedAt - spawnedAt;
+            if (elapsed >= 0) endToEndTimes.record(TimeUnit.NANOSECONDS.toMicros(elapsed));
+        }
+        hitsScored.increment();
+        events.hit(0, slot, hit.monsterId, hit.x, hit.y, newScore, hit.timestamp);
 
-        double avgResponseTime = responseCopy.stream().mapToDouble(val -> val).average().orElse(0.0);
-        double stdResponseTime = calculateStdDev(responseCopy, avgResponseTime);
+        int round = ScoreBoard.roundOf(ticket);
+        if (newScore >= WIN_CONDITION && scoreBoard.claimWin(round)) {
+            journalBoard.roundChanged();
+            sendWinner(slot, round);
+        }
+    }
 
-        double avgRegistrationTime = registrationCopy.stream().mapToDouble(val -> val).average().orElse(0.0);
-        double stdRegistrationTime = calculateStdDev(registrationCopy, avgRegistrationTime);
+    /**
+     * Desde que el cliente manda el golpe hasta que llega, en µs. Con marca en nanosegundos
+     * y desfase conocido se corrige con el reloj del cliente; si no, milisegundos de pared
+     * de los dos lados, como antes.
+     */
+    private long reactionMicros(int slot, WireProtocol.Frame hit, long receivedNanos) {
+        GameClock.Peer peer = clock(slot);
+        if (hit.sentNanos != 0 && peer != null && peer.synced()) {
+            return Math.max(0, TimeUnit.NANOSECONDS.toMicros(receivedNanos - peer.toServer(hit.sentNanos)));
+        }
+        return (System.currentTimeMillis() - hit.timestamp) * 1000;
+    }
 
-        int numClients = successfulConnections;
+    // Guarda las métricas en un CSV (tiempos en ms)
+    private void saveResults(String winner) {
+        LatencyRecorder.Snapshot reaction = reactionTimes.snapshot();
+        LatencyRecorder.Snapshot registration = registrationTimes.snapshot();
+        LatencyRecorder.Snapshot publish = publisher.latency().snapshot();
+
+        int numClients = successfulConnections.get();
         // Calculamos successRate en función de expectedClients
         double successRate = (expectedClients > 0)
-                ? (successfulConnections / (double) expectedClients) * 100.0
+                ? (numClients / (double) expectedClients) * 100.0
                 : 100.0; // Si no se especificó, dejamos 100%
 
         File file = new File("stress_results.csv");
+        try {
+            migrateResultsHeader(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         boolean writeHeader = !file.exists() || file.length() == 0;
 
         try (FileWriter writer = new FileWriter(file, true);
@@ -201,32 +505,159 @@ public class StressSender {
 
             // Si el archivo está vacío o no existe, escribimos el encabezado
             if (writeHeader) {
-                bw.write("GameID,Winner,NumClients,AvgReactionTime,StdReactionTime,AvgRegistrationTime,StdRegistrationTime,SuccessRate");
+                bw.write(RESULTS_HEADER);
                 bw.newLine();
             }
 
             int gameId = gameCount + 1;
-            bw.write(gameId + "," + winner + "," + numClients + "," + avgResponseTime + ","
-                    + stdResponseTime + "," + avgRegistrationTime + "," + stdRegistrationTime + "," + successRate);
+            bw.write(gameId + "," + winner + "," + numClients + "," + reaction.mean() / 1000.0 + ","
+                    + reaction.stdDev() / 1000.0 + "," + registration.mean() / 1000.0 + ","
+                    + registration.stdDev() / 1000.0 + "," + successRate
+                    + percentileColumns(reaction) + percentileColumns(registration) + percentileColumns(publish)
+                    + "," + publisher.peakQueueDepth() + "," + transport.droppedSpawns() + "," + runId);
             bw.newLine();
 
             System.out.println("Resultados guardados en CSV para la partida " + gameId);
         } catch (IOException e) {
             e.printStackTrace();
         }
+        storeRun(winner, numClients, successRate, reaction, registration, publish);
+    }
+
+    private void storeRun(String winner, int numClients, double successRate, LatencyRecorder.Snapshot reaction,
+                          LatencyRecorder.Snapshot registration, LatencyRecorder.Snapshot publish) {
+        Map<String, String> config = ResultsStore.currentConfig();
+        config.put("clients", String.valueOf(expectedClients));
+        config.put("serverMode", serverMode.toString());
+        config.put("seed", String.valueOf(spawns.seed()));
+
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        metrics.put("connections", (double) numClients);
+        metrics.put("successRate", successRate);
+        metrics.put("publishQueuePeak", (double) publisher.peakQueueDepth());
+        metrics.put("droppedSpawns", (double) transport.droppedSpawns());
+        metrics.put("rejectedHits", (double) liveMonsters.rejectedHits());
+        metrics.put("busyRejections", (double) admission.rejectedConnections());
+        metrics.put("throttledHits", (double) admission.throttledHits());
+        metrics.put("evictedClients", (double) admission.evictedClients());
+        metrics.put("droppedEvents", (double) events.droppedEvents());
+        metrics.put("durationSeconds", (System.currentTimeMillis() - startMillis) / 1000.0);
+
+        Map<String, LatencyRecorder.Snapshot> histograms = new LinkedHashMap<>();
+        histograms.put("reaction", reaction);
+        histograms.put("registration", registration);
+        histograms.put("publish", publish);
+        histograms.put("endToEnd", endToEndTimes.snapshot());
+        histograms.put("clockRtt", clockRtt.snapshot());
+
+        ResultsStore.Run run = new ResultsStore.Run(runId, startMillis, System.currentTimeMillis(), gameCount + 1,
+                winner, config, ResultsStore.currentEnvironment(), metrics, histograms);
+        try {
+            resultsStore.append(run);
+            System.out.println("Ejecución " + runId + " guardada en " + resultsStore.path());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
-    private double calculateStdDev(List<Long> values, double mean) {
-        return Math.sqrt(values.stream().mapToDouble(val -> Math.pow(val - mean, 2)).average().orElse(0.0));
+    // ",p50,p90,p99,p99.9,max" en ms
+    private String percentileColumns(LatencyRecorder.Snapshot snapshot) {
+        return "," + snapshot.percentile(50) / 1000.0
+                + "," + snapshot.percentile(90) / 1000.0
+                + "," + snapshot.percentile(99) / 1000.0
+                + "," + snapshot.percentile(99.9) / 1000.0
+                + "," + snapshot.max() / 1000.0;
     }
 
-    private void resetGame() {
+    // Si el CSV tiene el encabezado viejo, lo reescribe con las columnas nuevas (filas viejas quedan vacías ahí)
+    private void migrateResultsHeader(File file) throws IOException {
+        if (!file.exists() || file.length() == 0) return;
+        List<String> lines = Files.readAllLines(file.toPath());
+        if (lines.get(0).equals(RESULTS_HEADER)) return;
+
+        int newColumns = RESULTS_HEADER.split(",").length - lines.get(0).split(",").length;
+        String padding = ",".repeat(Math.max(0, newColumns));
+        List<String> migrated = new ArrayList<>(lines.size());
+        migrated.add(RESULTS_HEADER);
+        for (int i = 1; i < lines.size(); i++) {
+            migrated.add(lines.get(i).isEmpty() ? lines.get(i) : lines.get(i) + padding);
+        }
+        Files.write(file.toPath(), migrated);
+    }
+
+    private void resetGame(int wonRound) {
         System.out.println("Restarting game...");
-        playerScore.clear();
-        responseTimes.clear();
-        registrationTimes.clear();
-        successfulConnections = 0;
-        gameWon = false;
+        reactionTimes.reset();
+        registrationTimes.reset();
+        endToEndTimes.reset();
+        clockRtt.reset();
+        publisher.resetStats();
+        successfulConnections.set(0);
+        scoreBoard.startNextRound(wonRound);
+        spawnScheduler.roundStarted(System.nanoTime());
+        journalBoard.roundChanged();
+        events.round(0, scoreBoard.round());
+    }
+
+    // Entradas de SessionReplay: la misma lógica que con sockets, con el reloj de la grabación
+
+    boolean isRunning() {
+        return gameRunning;
+    }
+
+    int replayRegister(String playerName) {
+        int slot = scoreBoard.register(playerName);
+        if (slot != ScoreBoard.NO_SLOT) registerPlayer(slot, System.nanoTime());
+        return slot;
+    }
+
+    void replaySpawn(int id, int x, int y, long sessionNanos) {
+        liveMonsters.expire(sessionNanos);
+        if (scoreBoard.isRoundOpen()) spawnMonster(id, x, y, sessionNanos);
+    }
+
+    void replayHit(int slot, WireProtocol.Frame hit, long sessionNanos) {
+        liveMonsters.expire(sessionNanos);
+        processHit(slot, hit);
+    }
+
+    /**
+     * Cierre ordenado al terminar el experimento: deja de aceptar, da un margen
+     * a los handlers para terminar y después corta los sockets que sigan abiertos.
+     */
+    public void stop() {
+        gameRunning = false;
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (nioServer != null) nioServer.close();
+        if (transport != null) transport.close();
+        if (publisher != null) publisher.close();
+        if (broker != null) broker.close();
+        events.close();
+        metrics.close();
+
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(SHUTDOWN_GRACE_MS, TimeUnit.MILLISECONDS)) {
+                for (Socket socket : openSockets) {
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                workers.shutdownNow();
+                workers.awaitTermination(SHUTDOWN_GRACE_MS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Al final, cuando ya no quedan golpes en vuelo
+        recorder.close();
+        journal.close();
+        System.out.println("Servidor detenido.");
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,234 @@
+import jakarta.jms.*;
+import org.apache.activemq.ActiveMQConnectionFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Una única suscripción JMS a un tópico de juego, repartida dentro del proceso entre
+ * todos los jugadores que lo siguen.
+ *
+ * El listener JMS (un hilo por sesión) decodifica cada mensaje una sola vez sobre
+ * buffers reutilizados, lo aplica al {@link GameBoard} del tópico y avisa a los
+ * {@link Listener} registrados: la ventana de {@link MonsterReceiver} es uno, y en
+ * {@link BotEngine} lo son miles de bots que comparten conexión, sesión y
+ * decodificación. Las deltas repetidas o ya cubiertas por una foto no se reparten.
+ *
+ * Las deltas llegan por el transporte que anuncia INFO ({@link SpawnTransport}): por este
+ * mismo tópico con jms, por un hilo propio con multicast o inproc, y con socket por cada
+ * {@link GameClient}, que las pasa a {@link #onDelta}. El tópico JMS se sigue leyendo
+ * siempre: por él llegan WINNER y la clasificación. Vengan de donde vengan, las deltas se
+ * aplican y reparten bajo el lock del feed, de una en una. Con socket la misma delta
+ * llega por el socket de cada jugador: las copias de una secuencia ya repartida se
+ * descartan con una lectura volátil, sin tocar el lock, y el lock es un ReentrantLock
+ * porque esas copias llegan por hilos virtuales, que un monitor fijaría.
+ *
+ * Los listeners se añaden pero no se quitan (un bot desconectado simplemente deja de
+ * golpear): el reparto lee un array publicado con un contador volátil, sin locks ni
+ * copias por mensaje.
+ */
+public final class TopicFeed implements AutoCloseable, SpawnTransport.Receiver {
+
+    /**
+     * Avisos del tópico, en el hilo del listener JMS: deben ser breves. La trama se
+     * reutiliza en el siguiente aviso; quien la necesite después copia sus campos.
+     */
+    public interface Listener {
+        /** Aparición nueva; {@code sentNanos} es el {@link GameClock} del envío, o 0 si no lo trae. */
+        default void onSpawn(WireProtocol.Frame spawn, long sentNanos) {
+        }
+
+        default void onClear(WireProtocol.Frame clear) {
+        }
+
+        /** Fin de ronda; {@code player} es null con el aviso viejo "The game is over!". */
+        default void onWinner(String player) {
+        }
+
+        /** Mensaje de {@code <tópico>.leaderboard} (ver {@link Leaderboard}). */
+        default void onLeaderboard(String text) {
+        }
+    }
+
+    private final String topic;
+    private final GameBoard board;
+    private final Connection connection;
+    // Deltas de multicast o inproc; null si llegan por el tópico o por los sockets
+    private final SpawnTransport.Subscription deltas;
+    // Solo del hilo del listener
+    private final byte[] frameBytes = new byte[WireProtocol.FRAME_SIZE];
+    private final ByteBuffer frameBuffer = ByteBuffer.wrap(frameBytes);
+    private final WireProtocol.Frame frame = new WireProtocol.Frame();
+    private final ReentrantLock deltaLock = new ReentrantLock();
+    // Última secuencia repartida; se escribe con deltaLock y se lee sin él
+    private volatile long deliveredSeq;
+    private volatile Listener[] listeners = new Listener[16];
+    private volatile int listenerCount;
+
+    /**
+     * Se suscribe a {@code topic} y, si {@code leaderboard}, también a su clasificación; las
+     * deltas, por el transporte que anuncia la línea {@code info} del servidor (null: jms).
+     * Lanza IOException si no puede abrirlo (p.ej. sin ruta multicast).
+     */
+    public TopicFeed(String brokerUrl, String topic, String info, GameBoard board, boolean leaderboard)
+            throws JMSException, IOException {
+        this.topic = topic;
+        this.board = board;
+        connection = new ActiveMQConnectionFactory(brokerUrl).createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session.createConsumer(session.createTopic(topic)).setMessageListener(this::onMessage);
+            if (leaderboard) {
+                // La misma sesión: el mismo hilo de listener
+                session.createConsumer(session.createTopic(topic + Leaderboard.TOPIC_SUFFIX))
+                        .setMessageListener(this::onLeaderboard);
+            }
+            connection.start();
+        } catch (JMSException e) {
+            connection.close();
+            throw e;
+        }
+        try {
+            deltas = SpawnTransport.subscribe(info, topic, this);
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    public String topic() {
+        return topic;
+    }
+
+    public GameBoard board() {
+        return board;
+    }
+
+    public int listenerCount() {
+        return listenerCount;
+    }
+
+    /** Deltas que el transporte sabe que perdió (solo multicast numera sus datagramas). */
+    public long lostDeltas() {
+        return deltas == null ? 0 : deltas.lost();
+    }
+
+    /** Registra un listener; desde cualquier hilo. */
+    public synchronized void add(Listener listener) {
+        int count = listenerCount;
+        Listener[] current = listeners;
+        if (count == current.length) current = Arrays.copyOf(current, count * 2);
+        current[count] = listener;
+        // Primero el array y después el contador: quien lea el contador ve el array con el nuevo
+        listeners = current;
+        listenerCount = count + 1;
+    }
+
+    private void onMessage(Message message) {
+        try {
+            long seq = message.propertyExists(WireProtocol.SEQ_PROPERTY)
+                    ? message.getLongProperty(WireProtocol.SEQ_PROPERTY) : 0;
+            long sentNanos = message.propertyExists(WireProtocol.SENT_PROPERTY)
+                    ? message.getLongProperty(WireProtocol.SENT_PROPERTY) : 0;
+            if (message instanceof BytesMessage) {
+                // Puede traer varias tramas, con secuencias seguidas
+                BytesMessage bytes = (BytesMessage) message;
+                while (bytes.readBytes(frameBytes) == WireProtocol.FRAME_SIZE) {
+                    frameBuffer.clear();
+                    WireProtocol.decode(frameBuffer, frame);
+                    if (frame.type == WireProtocol.SPAWN || frame.type == WireProtocol.CLEAR) {
+                        onDelta(frame, seq, sentNanos);
+                        if (seq > 0) seq++;
+                    }
+                }
+            } else if (message instanceof TextMessage) {
+                // Bajo carga el servidor junta varias entradas en un mensaje, una por línea
+                String text = ((TextMessage) message).getText();
+                int start = 0;
+                while (start <= text.length()) {
+                    int end = text.indexOf('\n', start);
+                    if (end < 0) end = text.length();
+                    if (line(text.substring(start, end), seq, sentNanos) && seq > 0) seq++;
+                    start = end + 1;
+                }
+            }
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Devuelve true si la línea era una delta (y por tanto consume un número de secuencia)
+    private boolean line(String line, long seq, long sentNanos) {
+        if (line.startsWith("WINNER ") || line.equals("The game is over!")) {
+            board.clear();
+            String player = line.startsWith("WINNER ") ? line.substring("WINNER ".length()) : null;
+            int n = listenerCount;
+            Listener[] current = listeners;
+            for (int i = 0; i < n; i++) {
+                current[i].onWinner(player);
+            }
+            return false;
+        }
+        if (WireProtocol.parseTextClear(line, frame) || WireProtocol.parseTextSpawn(line, frame)) {
+            onDelta(frame, seq, sentNanos);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Aplica una delta al tablero y, si era nueva, la reparte. Desde el hilo de cualquier
+     * transporte; la trama solo se usa durante la llamada.
+     */
+    @Override
+    public void onDelta(WireProtocol.Frame delta, long seq, long sentNanos) {
+        if (seq > 0) {
+            long delivered = deliveredSeq;
+            // Ya repartida; una secuencia muy por detrás es un reinicio y va al tablero
+            if (seq <= delivered && delivered - seq <= GameBoard.STALE_WINDOW) return;
+        }
+        deltaLock.lock();
+        try {
+            if (!board.apply(delta, seq)) return;
+            if (seq > 0) deliveredSeq = seq;
+            int n = listenerCount;
+            Listener[] current = listeners;
+            boolean spawn = delta.type == WireProtocol.SPAWN;
+            for (int i = 0; i < n; i++) {
+                if (spawn) {
+                    current[i].onSpawn(delta, sentNanos);
+                } else {
+                    current[i].onClear(delta);
+                }
+            }
+        } finally {
+            deltaLock.unlock();
+        }
+    }
+
+    private void onLeaderboard(Message message) {
+        try {
+            if (!(message instanceof TextMessage)) return;
+            String text = ((TextMessage) message).getText();
+            int n = listenerCount;
+            Listener[] current = listeners;
+            for (int i = 0; i < n; i++) {
+                current[i].onLeaderboard(text);
+            }
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (deltas != null) deltas.close();
+        try {
+            connection.close();
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Formatos de mensaje del juego.
+ *
+ * Texto (por defecto, compatible con clientes viejos):
+ *   aparición: "id x y [ronda] [timestamp]"   (los clientes viejos solo leen los 3 primeros)
+ *   retirada:  "CLEAR id x y ronda"            (un jugador se llevó el monstruo; nunca en el
+ *                                               tópico JMS en texto, que los clientes viejos
+ *                                               parsearían como aparición: solo en DELTA)
+ *   golpe:     "hit x timestamp [y] [id] [ronda] [enviado]"   (enviado: {@link GameClock#nowNanos()} del cliente)
+ *   resync:    "SYNC" (cliente -> servidor), que contesta con una línea "BOARD ..." ({@link BoardSnapshot})
+ *   reloj:     "PING t0" y "CLOCK desfase rtt" (cliente -> servidor), "PONG t0 t1 t2" (servidor -> cliente)
+ *   delta:     "DELTA seq enviado <aparición o retirada>" (servidor -> cliente, con TRANSPORT=socket)
+ *
+ * Binario "BIN1": tramas de tamaño fijo, big-endian, en el socket TCP y en BytesMessage del tópico:
+ *   [0] tipo  [1] x  [2] y  [3] banderas  [4..8) id del monstruo  [8..12) ronda  [12..20) timestamp
+ * Con la bandera {@link #FLAG_NANOS} el timestamp va en nanosegundos de {@link GameClock}.
+ *
+ * El servidor anuncia el binario en la línea INFO (PROTOCOLS=TEXT,BIN1); el cliente que lo
+ * soporte manda la línea "PROTO BIN1" y a partir de ahí sus golpes van en tramas (y su
+ * SYNC, en una trama de tipo SYNC). Las apariciones van en binario solo si el servidor
+ * arranca con -Dmonsters.protocol=binary.
+ *
+ * Cada mensaje de apariciones y retiradas del tópico lleva la propiedad JMS "seq": el
+ * número de secuencia de su primera entrada; las demás van seguidas. Un salto en la
+ * secuencia indica que el cliente perdió algo y debe pedir SYNC. La propiedad "sent"
+ * lleva el {@link GameClock#nowNanos()} del envío, para medir la entrega en un solo sentido.
+ *
+ * Con CLOCK=NANOS en INFO el servidor contesta PING (texto o trama) con una línea PONG y
+ * acepta golpes con marca en nanosegundos; ver {@link GameClock}. Los PONG van siempre
+ * en texto, también en binario: son pocos y el cliente ya lee líneas.
+ *
+ * Las deltas pueden no ir por el tópico: INFO anuncia TRANSPORT=jms, multicast, socket o
+ * inproc (ver {@link SpawnTransport}).
+ */
+public final class WireProtocol {
+
+    public static final String BINARY = "BIN1";
+    public static final String NEGOTIATE_BINARY = "PROTO " + BINARY;
+    public static final int FRAME_SIZE = 20;
+
+    public static final byte SPAWN = 1;
+    public static final byte HIT = 2;
+    public static final byte CLEAR = 3;
+    public static final byte SYNC = 4;
+    public static final byte PING = 5;
+    public static final byte CLOCK = 6;
+
+    /** Bandera del byte [3]: el timestamp de la trama son nanosegundos de {@link GameClock}. */
+    public static final byte FLAG_NANOS = 1;
+
+    public static final String SYNC_LINE = "SYNC";
+    public static final String SEQ_PROPERTY = "seq";
+    public static final String SENT_PROPERTY = "sent";
+    public static final String PING_PREFIX = "PING ";
+    public static final String PONG_PREFIX = "PONG ";
+    public static final String CLOCK_PREFIX = "CLOCK ";
+    public static final String DELTA_PREFIX = "DELTA ";
+    private static final String CLEAR_PREFIX = "CLEAR ";
+
+    private WireProtocol() {
+    }
+
+    /** Trama decodificada. Se reutiliza: una por conexión o por listener, nunca por mensaje. */
+    public static final class Frame {
+        public byte type;
+        public int x;
+        public int y;
+        public int monsterId;
+        public int round;
+        public long timestamp;
+        /** {@link GameClock#nowNanos()} del emisor, o 0 si no la manda. */
+        public long sentNanos;
+
+        void clear(byte type) {
+            this.type = type;
+            x = -1;
+            y = -1;
+            monsterId = -1;
+            round = -1;
+            timestamp = 0;
+            sentNanos = 0;
+        }
+    }
+
+    /** Indica si el servidor publica las apariciones en binario (-Dmonsters.protocol=binary). */
+    public static boolean binarySpawns() {
+        return GameConfig.string("monsters.protocol", "text").equalsIgnoreCase("binary");
+    }
+
+    /** Campos de la línea INFO que anuncian los protocolos del servidor. */
+    public static String infoFields() {
+        return "PROTOCOLS=TEXT," + BINARY + " SPAWNS=" + (binarySpawns() ? BINARY : "TEXT") + " CLOCK=NANOS";
+    }
+
+    /** Si la línea INFO del servidor anuncia PING/PONG y marcas en nanosegundos. */
+    public static boolean supportsClock(String info) {
+        return info.contains(" CLOCK=NANOS");
+    }
+
+    // ---------------------------------------------------------------- binario
+
+    /** Escribe una trama en la posición actual del buffer. */
+    public static void encode(ByteBuffer buffer, byte type, int monsterId, int x, int y, int round, long timestamp) {
+        encode(buffer, type, (byte) 0, monsterId, x, y, round, timestamp);
+    }
+
+    /** Como {@link #encode(ByteBuffer, byte, int, int, int, int, long)}, con banderas ({@link #FLAG_NANOS}). */
+    public static void encode(ByteBuffer buffer, byte type, byte flags, int monsterId, int x, int y, int round,
+                              long timestamp) {
+        buffer.put(type).put((byte) x).put((byte) y).put(flags)
+                .putInt(monsterId).putInt(round).putLong(timestamp);
+    }
+
+    /** Lee una trama desde la posición actual del buffer, sin crear objetos. */
+    public static void decode(ByteBuffer buffer, Frame into) {
+        into.type = buffer.get();
+        into.x = buffer.get();
+        into.y = buffer.get();
+        byte flags = buffer.get();
+        into.monsterId = buffer.getInt();
+        into.round = buffer.getInt();
+        into.timestamp = buffer.getLong();
+        into.sentNanos = 0;
+        // Los que solo entienden milisegundos siguen leyendo el timestamp igual
+        if ((flags & FLAG_NANOS) != 0 && into.type != CLOCK) {
+            into.sentNanos = into.timestamp;
+            into.timestamp = into.timestamp / 1_000_000;
+        }
+    }
+
+    // ---------------------------------------------------------------- texto
+
+    public static String spawnText(int monsterId, int x, int y, int round, long timestamp) {
+        return monsterId + " " + x + " " + y + " " + round + " " + timestamp;
+    }
+
+    public static String clearText(int monsterId, int x, int y, int round) {
+        return CLEAR_PREFIX + monsterId + " " + x + " " + y + " " + round;
+    }
+
+    public static String hitText(int x, long timestamp, int y, int monsterId, int round) {
+        return "hit " + x + " " + timestamp + " " + y + " " + monsterId + " " + round;
+    }
+
+    public static String hitText(int x, long timestamp, int y, int monsterId, int round, long sentNanos) {
+        return hitText(x, timestamp, y, monsterId, round) + " " + sentNanos;
+    }
+
+    /** Línea "DELTA seq enviado <texto>" de una aparición o retirada empujada por el socket. */
+    public static String deltaText(long seq, long sentNanos, String text) {
+        return DELTA_PREFIX + seq + " " + sentNanos + " " + text;
+    }
+
+    /** Parsea "id x y [ronda] [timestamp]" sin split ni parseInt. */
+    public static boolean parseTextSpawn(String text, Frame into) {
+        into.clear(SPAWN);
+        Cursor c = new Cursor(text);
+        if (!c.hasNumber()) return false;
+        into.monsterId = (int) c.nextNumber();
+        if (!c.hasNumber()) return false;
+        into.x = (int) c.nextNumber();
+        if (!c.hasNumber()) return false;
+        into.y = (int) c.nextNumber();
+        if (c.hasNumber()) into.round = (int) c.nextNumber();
+        if (c.hasNumber()) into.timestamp = c.nextNumber();
+        return true;
+    }
+
+    /** Parsea "CLEAR id x y ronda". */
+    public static boolean parseTextClear(String text, Frame into) {
+        if (!text.startsWith(CLEAR_PREFIX)) return false;
+        into.clear(CLEAR);
+        Cursor c = new Cursor(text, CLEAR_PREFIX.length());
+        if (!c.hasNumber()) return false;
+        into.monsterId = (int) c.nextNumber();
+        if (!c.hasNumber()) return false;
+        into.x = (int) c.nextNumber();
+        if (!c.hasNumber()) return false;
+        into.y = (int) c.nextNumber();
+        if (c.hasNumber()) into.round = (int) c.nextNumber();
+        return true;
+    }
+
+    /** Parsea "hit x timestamp [y] [id] [ronda] [enviado]" sin split ni parseInt. */
+    public static boolean parseTextHit(String line, Frame into) {
+        if (!line.startsWith("hit ")) return false;
+        into.clear(HIT);
+        Cursor c = new Cursor(line, 4);
+        if (!c.hasNumber()) return false;
+        into.x = (int) c.nextNumber();
+        if (!c.hasNumber()) return false;
+        into.timestamp = c.nextNumber();
+        if (c.hasNumber()) into.y = (int) c.nextNumber();
+        if (c.hasNumber()) into.monsterId = (int) c.nextNumber();
+        if (c.hasNumber()) into.round = (int) c.nextNumber();
+        if (c.hasNumber()) into.sentNanos = c.nextNumber();
+        return true;
+    }
+
+    /**
+     * Parsea "DELTA seq enviado <aparición o retirada>"; deja el envío en
+     * {@code into.sentNanos} y devuelve la seq, o -1 si la línea no es una delta.
+     */
+    public static long parseTextDelta(String line, Frame into) {
+        if (!line.startsWith(DELTA_PREFIX)) return -1;
+        Cursor c = new Cursor(line, DELTA_PREFIX.length());
+        if (!c.hasNumber()) return -1;
+        long seq = c.nextNumber();
+        if (!c.hasNumber()) return -1;
+        long sentNanos = c.nextNumber();
+        if (c.pos + 1 >= line.length()) return -1;
+        String text = line.substring(c.pos + 1);
+        if (!parseTextClear(text, into) && !parseTextSpawn(text, into)) return -1;
+        into.sentNanos = sentNanos;
+        return seq;
+    }
+
+    /**
+     * Lee hasta {@code into.length} números desde {@code from} (p.ej. los de "PONG t0 t1 t2"
+     * o "CLOCK desfase rtt"); devuelve cuántos leyó.
+     */
+    public static int parseNumbers(String text, int from, long[] into) {
+        Cursor c = new Cursor(text, from);
+        int count = 0;
+        while (count < into.length && c.hasNumber()) into[count++] = c.nextNumber();
+        return count;
+    }
+
+    /**
+     * Recorre números enteros separados por espacios. Es un objeto pequeño que no
+     * escapa del método, así que el JIT lo elimina por escape analysis.
+     */
+    private static final class Cursor {
+        private final String text;
+        private int pos;
+
+        Cursor(String text) {
+            this(text, 0);
+        }
+
+        Cursor(String text, int pos) {
+            this.text = text;
+            this.pos = pos;
+        }
+
+        boolean hasNumber() {
+            while (pos < text.length() && text.charAt(pos) == ' ') pos++;
+            if (pos >= text.length()) return false;
+            char ch = text.charAt(pos);
+            if (ch == '-' && pos + 1 < text.length()) ch = text.charAt(pos + 1);
+            return ch >= '0' && ch <= '9';
+        }
+
+        long nextNumber() {
+            boolean negative = text.charAt(pos) == '-';
+            if (negative) pos++;
+            long value = 0;
+            while (pos < text.length()) {
+                char ch = text.charAt(pos);
+                if (ch < '0' || ch > '9') break;
+                value = value * 10 + (ch - '0');
+                pos++;
+            }
+            return negative ? -value : value;
+        }
+    }
+}